@@ -0,0 +1,98 @@
+package dev.hemang.cameramulticapture;
+
+/**
+ * Global cap on concurrent upload requests that follows measured throughput.
+ *
+ * Completed bytes are summed over windows of {@link #WINDOW_MS}. When every slot
+ * was in use during a window and throughput improved on the previous one, the
+ * limit grows by one; when throughput fell noticeably it shrinks by one, and
+ * throttling, server errors or timeouts halve it. Windows in which the queue
+ * didn't fill the limit say nothing about capacity and leave it unchanged.
+ */
+final class AdaptiveConcurrencyLimit {
+    static final int MIN_LIMIT = 1;
+    static final int MAX_LIMIT = 8;
+    static final int INITIAL_LIMIT = 3;
+    static final long WINDOW_MS = 5000;
+
+    /** Relative throughput change treated as real rather than noise */
+    private static final double GAIN = 1.05;
+    private static final double LOSS = 0.8;
+
+    /** Reports limit changes */
+    interface Listener {
+        void onLimitChanged(int oldLimit, int newLimit, long bytesPerSecond);
+    }
+
+    private final Listener listener;
+    private int limit = INITIAL_LIMIT;
+    private int active = 0;
+    private boolean saturated = false;
+    private boolean congested = false;
+    private long windowStart = -1;
+    private long windowBytes = 0;
+    private double lastThroughput = -1;
+
+    AdaptiveConcurrencyLimit(Listener listener) {
+        this.listener = listener;
+    }
+
+    synchronized int getLimit() {
+        return limit;
+    }
+
+    synchronized void acquire(long now) throws InterruptedException {
+        if (windowStart < 0) {
+            windowStart = now;
+        }
+        while (active >= limit) {
+            saturated = true;
+            wait();
+        }
+        active++;
+        if (active >= limit) {
+            saturated = true;
+        }
+    }
+
+    /**
+     * @param bytes Request body size
+     * @param congestion The server throttled or failed, or the request timed out
+     */
+    synchronized void release(long bytes, boolean congestion, long now) {
+        active--;
+        windowBytes += Math.max(0, bytes);
+        congested |= congestion;
+        if (now - windowStart >= WINDOW_MS) {
+            adapt(now);
+        }
+        notifyAll();
+    }
+
+    private void adapt(long now) {
+        double throughput = windowBytes * 1000.0 / Math.max(1, now - windowStart);
+        int previous = limit;
+        if (congested) {
+            limit = Math.max(MIN_LIMIT, limit / 2);
+        } else if (saturated) {
+            if (lastThroughput < 0 || throughput >= lastThroughput * GAIN) {
+                limit = Math.min(MAX_LIMIT, limit + 1);
+            } else if (throughput < lastThroughput * LOSS) {
+                limit = Math.max(MIN_LIMIT, limit - 1);
+            }
+        }
+        if (congested) {
+            // Throughput before the cut is no baseline for the reduced limit
+            lastThroughput = -1;
+        } else if (saturated) {
+            lastThroughput = throughput;
+        }
+        if (limit != previous && listener != null) {
+            listener.onLimitChanged(previous, limit, (long) throughput);
+        }
+        windowStart = now;
+        windowBytes = 0;
+        saturated = active >= limit;
+        congested = false;
+    }
+}
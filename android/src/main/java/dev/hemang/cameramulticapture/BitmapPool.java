@@ -0,0 +1,202 @@
+package dev.hemang.cameramulticapture;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Size-bucketed pool of mutable bitmaps shared by thumbnail and rotation work.
+ *
+ * Bitmaps are bucketed by allocation size. A request is served by the smallest
+ * pooled bitmap that is large enough (and not wastefully larger), reconfigured
+ * to the requested dimensions, or handed to BitmapFactory as inBitmap. Released
+ * bitmaps are kept until the pool reaches its memory cap; the largest buckets
+ * are evicted first. The plugin empties the pool when capture stops and shrinks
+ * it through {@link #trimMemory} when the system asks for memory back.
+ */
+public class BitmapPool {
+    private static final String TAG = "BitmapPool";
+
+    /** A pooled bitmap may be at most this many times larger than the request */
+    private static final int MAX_OVERSIZE = 4;
+
+    private static volatile BitmapPool instance;
+
+    private final long maxBytes;
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> buckets = new TreeMap<>();
+    private long pooledBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * @return Process-wide pool capped at an eighth of the heap
+     */
+    public static BitmapPool get() {
+        if (instance == null) {
+            synchronized (BitmapPool.class) {
+                if (instance == null) {
+                    instance = new BitmapPool(Runtime.getRuntime().maxMemory() / 8);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * @param maxBytes Upper bound on memory held by idle pooled bitmaps
+     */
+    public BitmapPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Get a cleared mutable bitmap, reusing a pooled one when possible
+     * @param width Bitmap width
+     * @param height Bitmap height
+     * @param config Bitmap config
+     * @return Mutable bitmap of exactly the requested size and config
+     */
+    public Bitmap acquire(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = take(byteCount(width, height, config));
+        if (bitmap != null) {
+            try {
+                bitmap.reconfigure(width, height, config);
+                bitmap.eraseColor(Color.TRANSPARENT);
+                return bitmap;
+            } catch (IllegalArgumentException e) {
+                Log.d(TAG, "Pooled bitmap could not be reconfigured: " + e.getMessage());
+                bitmap.recycle();
+            }
+        }
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Offer a pooled bitmap to a decode of the given output size. The caller must
+     * retry without inBitmap if the decode rejects it, see {@link #clearDecodeTarget}.
+     * @param options Decode options; inMutable and inBitmap are set
+     * @param width Expected decoded width (after sampling)
+     * @param height Expected decoded height (after sampling)
+     */
+    public void prepareDecode(BitmapFactory.Options options, int width, int height) {
+        Bitmap.Config config = options.inPreferredConfig != null ? options.inPreferredConfig : Bitmap.Config.ARGB_8888;
+        options.inMutable = true;
+        options.inBitmap = take(byteCount(width, height, config));
+    }
+
+    /**
+     * Return the rejected inBitmap of a failed decode to the pool and clear it from the options
+     */
+    public void clearDecodeTarget(BitmapFactory.Options options) {
+        if (options.inBitmap != null) {
+            release(options.inBitmap);
+            options.inBitmap = null;
+        }
+    }
+
+    /**
+     * Give a bitmap back. Bitmaps that are immutable or don't fit under the cap are recycled.
+     * @param bitmap Bitmap no longer used by the caller, may be null
+     */
+    public void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        int size = bitmap.getAllocationByteCount();
+        if (!bitmap.isMutable() || size > maxBytes) {
+            bitmap.recycle();
+            return;
+        }
+
+        synchronized (this) {
+            buckets.computeIfAbsent(size, key -> new ArrayDeque<>()).push(bitmap);
+            pooledBytes += size;
+            trimTo(maxBytes);
+        }
+    }
+
+    /**
+     * Recycle every pooled bitmap
+     */
+    public synchronized void clear() {
+        trimTo(0);
+    }
+
+    /**
+     * Give memory back on a ComponentCallbacks2.onTrimMemory call: everything once the
+     * UI is hidden or the process is cached, half while the foreground runs low
+     * @param level One of the ComponentCallbacks2.TRIM_MEMORY_* values
+     */
+    public synchronized void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            trimTo(0);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            trimTo(pooledBytes / 2);
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getPooledBytes() {
+        return pooledBytes;
+    }
+
+    private synchronized Bitmap take(int requiredBytes) {
+        Map.Entry<Integer, ArrayDeque<Bitmap>> entry = buckets.ceilingEntry(requiredBytes);
+        if (entry == null || entry.getKey() > (long) requiredBytes * MAX_OVERSIZE) {
+            misses++;
+            return null;
+        }
+        ArrayDeque<Bitmap> bucket = entry.getValue();
+        Bitmap bitmap = bucket.pop();
+        if (bucket.isEmpty()) {
+            buckets.remove(entry.getKey());
+        }
+        pooledBytes -= entry.getKey();
+        hits++;
+        return bitmap;
+    }
+
+    private void trimTo(long limit) {
+        while (pooledBytes > limit && !buckets.isEmpty()) {
+            Map.Entry<Integer, ArrayDeque<Bitmap>> largest = buckets.lastEntry();
+            Bitmap bitmap = largest.getValue().pollLast();
+            if (largest.getValue().isEmpty()) {
+                buckets.remove(largest.getKey());
+            }
+            if (bitmap != null) {
+                pooledBytes -= largest.getKey();
+                bitmap.recycle();
+            }
+        }
+    }
+
+    private static int byteCount(int width, int height, Bitmap.Config config) {
+        int bytesPerPixel;
+        switch (config) {
+            case ALPHA_8:
+                bytesPerPixel = 1;
+                break;
+            case RGB_565:
+            case ARGB_4444:
+                bytesPerPixel = 2;
+                break;
+            default:
+                bytesPerPixel = 4;
+                break;
+        }
+        return width * height * bytesPerPixel;
+    }
+}
@@ -0,0 +1,237 @@
+package dev.hemang.cameramulticapture;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.getcapacitor.JSObject;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Continuous capture that keeps several takePicture requests in flight.
+ *
+ * A dedicated thread fires the shutter whenever fewer than maxInFlight frames
+ * are waiting on the camera and the minimum interval has passed. Processing
+ * slots come from the shared {@link CaptureProcessingPipeline}, so a burst is
+ * subject to the same backpressure as single captures.
+ */
+public class BurstCaptureSession {
+    private static final String TAG = "BurstCaptureSession";
+
+    private static final long BUSY_RETRY_MS = 50;
+    private static final long DRAIN_TIMEOUT_MS = 5_000;
+
+    /**
+     * Fires a single capture for the burst
+     */
+    public interface Shutter {
+        /**
+         * Start one capture. The implementation must call {@link BurstCaptureSession#frameCaptured()} or
+         * {@link BurstCaptureSession#frameFailed()} exactly once when the camera is done with the frame,
+         * and must complete the ticket once the frame is processed.
+         *
+         * @param session The burst the frame belongs to
+         * @param ticket Processing slot reserved for this frame
+         * @param index Zero-based frame index within the burst
+         */
+        void fire(BurstCaptureSession session, CaptureProcessingPipeline.Ticket ticket, int index) throws Exception;
+    }
+
+    /**
+     * Notified once the burst thread has finished
+     */
+    public interface Listener {
+        void onBurstEnded(BurstCaptureSession session);
+    }
+
+    private final String burstId;
+    private final CaptureProcessingPipeline pipeline;
+    private final Shutter shutter;
+    private final Listener listener;
+    private final int maxInFlight;
+    private final long intervalMs;
+    private final int maxFrames;
+
+    private final Semaphore inFlight;
+    private final AtomicInteger framesCaptured = new AtomicInteger();
+    private final AtomicInteger framesFailed = new AtomicInteger();
+    private final AtomicInteger framesDropped = new AtomicInteger();
+    private volatile long startedAt;
+    private volatile long firstCaptureAt;
+    private volatile long lastCaptureAt;
+    private volatile boolean running = false;
+    private final Object wakeup = new Object();
+    private Thread thread;
+
+    /**
+     * @param burstId Identifier reported with every frame
+     * @param pipeline Processing pipeline frames are reserved from
+     * @param maxInFlight Number of capture requests allowed to wait on the camera at once
+     * @param intervalMs Minimum time between two shutter fires, 0 for as fast as possible
+     * @param maxFrames Stop after this many frames, 0 for no limit
+     * @param shutter Fires the individual captures
+     * @param listener Notified when the burst ends
+     */
+    public BurstCaptureSession(String burstId, CaptureProcessingPipeline pipeline, int maxInFlight,
+                               long intervalMs, int maxFrames, Shutter shutter, Listener listener) {
+        this.burstId = burstId;
+        this.pipeline = pipeline;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.intervalMs = Math.max(0, intervalMs);
+        this.maxFrames = Math.max(0, maxFrames);
+        this.shutter = shutter;
+        this.listener = listener;
+        this.inFlight = new Semaphore(this.maxInFlight);
+    }
+
+    public String getBurstId() {
+        return burstId;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        running = true;
+        startedAt = SystemClock.elapsedRealtime();
+        thread = new Thread(this::run, "BurstCapture");
+        thread.start();
+    }
+
+    /**
+     * Stop firing new captures. Frames already in flight still complete and deliver.
+     */
+    public synchronized void stop() {
+        running = false;
+        // Wake the interval wait without interrupting, so the drain below still runs
+        synchronized (wakeup) {
+            wakeup.notifyAll();
+        }
+    }
+
+    /**
+     * Called when the camera delivered a frame
+     */
+    public void frameCaptured() {
+        long now = SystemClock.elapsedRealtime();
+        if (framesCaptured.getAndIncrement() == 0) {
+            firstCaptureAt = now;
+        }
+        lastCaptureAt = now;
+        inFlight.release();
+    }
+
+    /**
+     * Called when the camera failed to deliver a frame
+     */
+    public void frameFailed() {
+        framesFailed.incrementAndGet();
+        inFlight.release();
+    }
+
+    /**
+     * Called when a frame the camera delivered could not be processed
+     */
+    public void frameProcessingFailed() {
+        framesFailed.incrementAndGet();
+    }
+
+    /**
+     * Sustained capture rate, measured between the first and last delivered frame
+     */
+    public double getFramesPerSecond() {
+        int frames = framesCaptured.get();
+        long span = lastCaptureAt - firstCaptureAt;
+        if (frames < 2 || span <= 0) {
+            return 0;
+        }
+        return (frames - 1) * 1000.0 / span;
+    }
+
+    /**
+     * @return Burst statistics for the JS side
+     */
+    public JSObject toJSObject() {
+        JSObject stats = new JSObject();
+        stats.put("burstId", burstId);
+        stats.put("frames", framesCaptured.get());
+        stats.put("failed", framesFailed.get());
+        stats.put("dropped", framesDropped.get());
+        stats.put("durationMs", SystemClock.elapsedRealtime() - startedAt);
+        stats.put("fps", Math.round(getFramesPerSecond() * 100) / 100.0);
+        return stats;
+    }
+
+    private void run() {
+        int issued = 0;
+        long nextShotAt = 0;
+        try {
+            while (running && (maxFrames == 0 || issued < maxFrames)) {
+                inFlight.acquire();
+
+                long wait = nextShotAt - SystemClock.elapsedRealtime();
+                if (wait > 0) {
+                    pause(wait);
+                }
+                if (!running) {
+                    inFlight.release();
+                    break;
+                }
+
+                CaptureProcessingPipeline.Ticket ticket;
+                try {
+                    ticket = pipeline.acquire();
+                } catch (CaptureProcessingPipeline.BusyException e) {
+                    inFlight.release();
+                    if (pipeline.isShutdown()) {
+                        break;
+                    }
+                    // Reject mode: skip this frame rather than ending the burst
+                    framesDropped.incrementAndGet();
+                    pause(BUSY_RETRY_MS);
+                    continue;
+                }
+
+                nextShotAt = SystemClock.elapsedRealtime() + intervalMs;
+                try {
+                    shutter.fire(this, ticket, issued++);
+                } catch (Exception e) {
+                    Log.e(TAG, "Burst capture failed to start: " + e.getMessage(), e);
+                    frameFailed();
+                    ticket.complete(() -> { });
+                }
+            }
+
+            // Let the outstanding requests land so the final stats are complete
+            if (inFlight.tryAcquire(maxInFlight, DRAIN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                inFlight.release(maxInFlight);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            running = false;
+            Log.d(TAG, "Burst " + burstId + " ended: " + framesCaptured.get() + " frames, "
+                + String.format("%.2f", getFramesPerSecond()) + " fps");
+            listener.onBurstEnded(this);
+        }
+    }
+
+    /**
+     * Sleep until the delay passes or the burst is stopped
+     */
+    private void pause(long millis) throws InterruptedException {
+        long deadline = SystemClock.elapsedRealtime() + millis;
+        synchronized (wakeup) {
+            long remaining;
+            while (running && (remaining = deadline - SystemClock.elapsedRealtime()) > 0) {
+                wakeup.wait(remaining);
+            }
+        }
+    }
+}
@@ -22,7 +22,17 @@ public class CameraConfig {
     public int flashMode;
     public boolean enableSaving;
     public String galleryAlbumName;
+    public int gallerySaveMode;
+    public int galleryBatchSize;
+    public long galleryFlushIntervalMs;
     public int maxRecordingDurationSeconds;
+    public int processingWorkers;
+    public int processingQueueSize;
+    public int processingBackpressure;
+    public long processingBlockTimeoutMs;
+    public int orientationMode;
+    public boolean inMemoryCapture;
+    public int thumbnailFormat;
 
 
     public CameraConfig() {
@@ -40,6 +50,16 @@ public class CameraConfig {
         this.flashMode = ImageCapture.FLASH_MODE_OFF;
         this.enableSaving = false;
         this.galleryAlbumName = "Camera";
+        this.gallerySaveMode = GallerySaveBatcher.MODE_IMMEDIATE;
+        this.galleryBatchSize = 10;
+        this.galleryFlushIntervalMs = 2000;
         this.maxRecordingDurationSeconds = 0;
+        this.processingWorkers = 2;
+        this.processingQueueSize = 4;
+        this.processingBackpressure = CaptureProcessingPipeline.BACKPRESSURE_BLOCK;
+        this.processingBlockTimeoutMs = CaptureProcessingPipeline.DEFAULT_BLOCK_TIMEOUT_MS;
+        this.orientationMode = ImageUtils.ORIENTATION_MODE_LOSSLESS;
+        this.inMemoryCapture = false;
+        this.thumbnailFormat = ThumbnailGenerator.FORMAT_BASE64;
     }
 }
\ No newline at end of file
@@ -91,8 +91,38 @@ public class CameraConfigMapper {
 
         config.enableSaving = data.getBoolean("enableSaving", false);
         config.galleryAlbumName = data.getString("galleryAlbumName", "Camera");
+
+        // Deferred mode commits gallery inserts in batches instead of one per capture
+        config.gallerySaveMode = "deferred".equals(data.getString("gallerySaveMode", "immediate"))
+                ? GallerySaveBatcher.MODE_DEFERRED
+                : GallerySaveBatcher.MODE_IMMEDIATE;
+        config.galleryBatchSize = Math.max(1, data.getInteger("galleryBatchSize", 10));
+        config.galleryFlushIntervalMs = Math.max(0, data.getInteger("galleryFlushInterval", 2000));
+
         config.maxRecordingDurationSeconds = data.getInteger("maxRecordingDuration", 0);
 
+        // Post-capture processing pipeline sizing and backpressure
+        config.processingWorkers = Math.max(1, data.getInteger("processingWorkers", 2));
+        config.processingQueueSize = Math.max(0, data.getInteger("processingQueueSize", 4));
+        config.processingBackpressure = "reject".equals(data.getString("processingBackpressure", "block"))
+                ? CaptureProcessingPipeline.BACKPRESSURE_REJECT
+                : CaptureProcessingPipeline.BACKPRESSURE_BLOCK;
+        config.processingBlockTimeoutMs = Math.max(0, data.optLong("processingBlockTimeoutMs",
+            CaptureProcessingPipeline.DEFAULT_BLOCK_TIMEOUT_MS));
+
+        // Lossless (DCT-domain) orientation by default, pixel rotation as opt-in
+        config.orientationMode = "pixel".equals(data.getString("orientationCorrection", "lossless"))
+                ? ImageUtils.ORIENTATION_MODE_PIXEL
+                : ImageUtils.ORIENTATION_MODE_LOSSLESS;
+
+        // Capture straight into memory and write the file once, instead of via CameraX's file output
+        config.inMemoryCapture = "memory".equals(data.getString("captureOutput", "file"));
+
+        // Base64 data URIs stay the default; "file" keeps thumbnail bytes off the bridge
+        config.thumbnailFormat = "file".equals(data.getString("thumbnailFormat", "base64"))
+                ? ThumbnailGenerator.FORMAT_FILE
+                : ThumbnailGenerator.FORMAT_BASE64;
+
         return config;
     }
 }
\ No newline at end of file
@@ -1,7 +1,11 @@
 package dev.hemang.cameramulticapture;
 
 import android.Manifest;
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
 import android.graphics.Color;
+import android.graphics.ImageFormat;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
@@ -9,14 +13,12 @@ import android.net.Uri;
 import android.os.Build;
 import android.os.Environment;
 import android.provider.MediaStore;
-import android.util.Base64;
 import android.util.Log;
 import android.util.Size;
 import android.view.OrientationEventListener;
 import android.view.Surface;
 import android.view.ViewGroup;
 import android.widget.FrameLayout;
-import android.media.MediaMetadataRetriever;
 
 import androidx.annotation.NonNull;
 import androidx.camera.core.Camera;
@@ -24,6 +26,7 @@ import androidx.camera.core.CameraInfo;
 import androidx.camera.core.CameraSelector;
 import androidx.camera.core.ImageCapture;
 import androidx.camera.core.ImageCaptureException;
+import androidx.camera.core.ImageProxy;
 import androidx.camera.core.Preview;
 import androidx.camera.lifecycle.ProcessCameraProvider;
 import androidx.camera.video.FileOutputOptions;
@@ -49,22 +52,28 @@ import com.getcapacitor.annotation.CapacitorPlugin;
 import com.getcapacitor.annotation.Permission;
 import com.getcapacitor.annotation.PermissionCallback;
 import com.getcapacitor.PermissionState;
+import com.getcapacitor.JSArray;
 import com.getcapacitor.JSObject;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.nio.file.Files;
+import java.nio.ByteBuffer;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 import androidx.work.*;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.UUID;
 
 @CapacitorPlugin(
@@ -82,6 +91,13 @@ public class CameraMultiCapturePlugin extends Plugin {
     private Recording activeRecording;
     private PluginCall pendingVideoStopCall;
     private JSObject autoStoppedVideoResult;
+    // Handoff between an auto-stopped recording being finalized and stopVideoRecording
+    private final Object videoResultLock = new Object();
+    private boolean autoStopFinalizing = false;
+    private PluginCall autoStopWaitingCall;
+    // Bumped by stop() so results of a torn-down session are never buffered
+    private int videoSessionGeneration = 0;
+    private final VideoFinalizer videoFinalizer = new VideoFinalizer();
     private File currentVideoFile;
     private Camera camera;
     private ProcessCameraProvider cameraProvider;
@@ -89,6 +105,30 @@ public class CameraMultiCapturePlugin extends Plugin {
     private OrientationEventListener orientationEventListener;
     private int lastKnownOrientation = 0; // 0=portrait, 90=landscape-left, 180=upside-down, 270=landscape-right
     private boolean torchEnabled = false;
+    private volatile CaptureProcessingPipeline processingPipeline;
+    private volatile GallerySaveBatcher galleryBatcher;
+    private volatile BurstCaptureSession burstSession;
+    private final AtomicLong photoSequence = new AtomicLong();
+    private final CaptureMetrics captureMetrics = new CaptureMetrics();
+    private UploadStatusMonitor uploadMonitor;
+    /** Dedupe hashing and job store writes for the queue*Upload methods, in call order */
+    private final ExecutorService uploadQueueExecutor = Executors.newSingleThreadExecutor();
+    /** Shrinks the bitmap pool when the system asks for memory back */
+    private final ComponentCallbacks2 memoryCallbacks = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {
+            BitmapPool.get().trimMemory(level);
+        }
+
+        @Override
+        public void onConfigurationChanged(@NonNull Configuration newConfig) {
+        }
+
+        @Override
+        public void onLowMemory() {
+            BitmapPool.get().clear();
+        }
+    };
 
     private void ensurePreviewView() {
         if (previewView != null) return;
@@ -213,8 +253,35 @@ public class CameraMultiCapturePlugin extends Plugin {
 
         currentConfig = CameraConfigMapper.fromJSObject(call.getData());
 
+        if (currentConfig.thumbnailFormat == ThumbnailGenerator.FORMAT_FILE) {
+            ThumbnailGenerator.trimCache(getContext());
+        }
+
         startOrientationListener();
 
+        if (processingPipeline != null) {
+            processingPipeline.shutdown();
+        }
+        processingPipeline = new CaptureProcessingPipeline(
+            currentConfig.processingWorkers,
+            currentConfig.processingQueueSize,
+            currentConfig.processingBackpressure,
+            currentConfig.processingBlockTimeoutMs
+        );
+
+        if (galleryBatcher != null) {
+            galleryBatcher.shutdown();
+            galleryBatcher = null;
+        }
+        if (currentConfig.enableSaving && currentConfig.gallerySaveMode == GallerySaveBatcher.MODE_DEFERRED) {
+            galleryBatcher = new GallerySaveBatcher(
+                getContext(),
+                currentConfig.galleryBatchSize,
+                currentConfig.galleryFlushIntervalMs,
+                this::notifyGallerySaved
+            );
+        }
+
         if (!call.hasOption("rotation")) {
             int sensorOrientation = getRotationFromOrientation(lastKnownOrientation);
             currentConfig.targetRotation = sensorOrientation;
@@ -251,6 +318,26 @@ public class CameraMultiCapturePlugin extends Plugin {
                     activeRecording.stop();
                     activeRecording = null;
                 }
+
+                if (burstSession != null) {
+                    burstSession.stop();
+                }
+
+                // Captures already in flight still finish and resolve in order
+                if (processingPipeline != null) {
+                    processingPipeline.shutdown();
+                    processingPipeline = null;
+                }
+
+                // Photos still queued for the gallery are committed in the background
+                if (galleryBatcher != null) {
+                    galleryBatcher.shutdown();
+                    galleryBatcher = null;
+                }
+
+                BitmapPool pool = BitmapPool.get();
+                Log.d("CameraMultiCapture", "Bitmap pool: " + pool.getHits() + " hits, " + pool.getMisses() + " misses");
+                pool.clear();
                 
                 if (cameraProvider != null) {
                     cameraProvider.unbindAll();
@@ -268,7 +355,17 @@ public class CameraMultiCapturePlugin extends Plugin {
                 imageCapture = null;
                 videoCapture = null;
                 pendingVideoStopCall = null;
-                autoStoppedVideoResult = null;
+                PluginCall waitingCall;
+                synchronized (videoResultLock) {
+                    videoSessionGeneration++;
+                    autoStoppedVideoResult = null;
+                    autoStopFinalizing = false;
+                    waitingCall = autoStopWaitingCall;
+                    autoStopWaitingCall = null;
+                }
+                if (waitingCall != null) {
+                    waitingCall.reject("Camera stopped before the recording was finalized");
+                }
                 currentVideoFile = null;
 
                 call.resolve();
@@ -288,22 +385,9 @@ public class CameraMultiCapturePlugin extends Plugin {
      */
     private Uri saveImageToGallery(File imageFile, String albumName) {
         ContentResolver resolver = getContext().getContentResolver();
-        ContentValues contentValues = new ContentValues();
-
-        String fileName = "IMG_" + System.currentTimeMillis() + ".jpg";
-        contentValues.put(MediaStore.Images.Media.DISPLAY_NAME, fileName);
-        contentValues.put(MediaStore.Images.Media.MIME_TYPE, "image/jpeg");
-        contentValues.put(MediaStore.Images.Media.DATE_ADDED, System.currentTimeMillis() / 1000);
-        contentValues.put(MediaStore.Images.Media.DATE_TAKEN, System.currentTimeMillis());
-
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-            contentValues.put(MediaStore.Images.Media.RELATIVE_PATH, Environment.DIRECTORY_PICTURES + "/" + albumName);
-            contentValues.put(MediaStore.Images.Media.IS_PENDING, 1);
-        }
+        ContentValues contentValues = GallerySaveBatcher.newImageValues(albumName, System.currentTimeMillis());
 
         Uri imageUri = null;
-        OutputStream outputStream = null;
-        InputStream inputStream = null;
 
         try {
             imageUri = resolver.insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, contentValues);
@@ -313,21 +397,7 @@ public class CameraMultiCapturePlugin extends Plugin {
                 return null;
             }
 
-            outputStream = resolver.openOutputStream(imageUri);
-            if (outputStream == null) {
-                Log.e("CameraMultiCapture", "Failed to open output stream");
-                resolver.delete(imageUri, null, null);
-                return null;
-            }
-
-            inputStream = new FileInputStream(imageFile);
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            while ((bytesRead = inputStream.read(buffer)) != -1) {
-                outputStream.write(buffer, 0, bytesRead);
-            }
-
-            outputStream.flush();
+            GalleryFileCopier.copyToUri(resolver, imageUri, imageFile);
 
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
                 contentValues.clear();
@@ -348,25 +418,182 @@ public class CameraMultiCapturePlugin extends Plugin {
                 }
             }
             return null;
-        } finally {
-            try {
-                if (outputStream != null) outputStream.close();
-                if (inputStream != null) inputStream.close();
-            } catch (IOException e) {
-                Log.e("CameraMultiCapture", "Error closing streams", e);
-            }
         }
     }
 
     @PluginMethod
     public void capture(PluginCall call) {
-        if (imageCapture == null) {
+        CaptureProcessingPipeline pipeline = processingPipeline;
+        if (imageCapture == null || pipeline == null) {
+            call.reject("ImageCapture not initialized");
+            return;
+        }
+
+        turnOffTorchForFlash();
+
+        int quality = call.getInt("quality", currentConfig.jpegQuality);
+        //Log.d("CameraMultiCapture", "Capture quality: " + quality + ", saveToGallery: " + currentConfig.saveToGallery);
+
+        // Reserve a processing slot before the shutter fires so a full queue
+        // either parks the call or reports busy instead of piling up photos.
+        // A parked call doesn't hold the plugin thread; it shoots once a slot frees.
+        pipeline.acquireAsync(new CaptureProcessingPipeline.SlotCallback() {
+            @Override
+            public void onAcquired(CaptureProcessingPipeline.Ticket ticket) {
+                captureWithTicket(call, pipeline, ticket);
+            }
+
+            @Override
+            public void onBusy(String message) {
+                call.reject(message, "BUSY");
+            }
+        });
+    }
+
+    private void captureWithTicket(PluginCall call, CaptureProcessingPipeline pipeline,
+                                   CaptureProcessingPipeline.Ticket ticket) {
+        try {
+            takePicture(pipeline, new CaptureCallback() {
+                @Override
+                public void onProcessed(JSObject result, CaptureMetrics.Timer timer) {
+                    ticket.complete(() -> {
+                        call.resolve(result);
+                        timer.finish();
+                    });
+                }
+
+                @Override
+                public void onCaptureFailed(String message) {
+                    //Log.e("CameraMultiCapture", "=== CAPTURE ERROR: " + message + " ===");
+                    ticket.complete(() -> call.reject(message));
+                }
+
+                @Override
+                public void onProcessingFailed(String message, Exception e) {
+                    ticket.complete(() -> call.reject(message, e));
+                }
+            });
+        } catch (Exception e) {
+            ticket.complete(() -> call.reject("Capture error: " + e.getMessage(), e));
+        }
+    }
+
+    @PluginMethod
+    public void startBurst(PluginCall call) {
+        CaptureProcessingPipeline pipeline = processingPipeline;
+        if (imageCapture == null || pipeline == null) {
             call.reject("ImageCapture not initialized");
             return;
         }
+        BurstCaptureSession current = burstSession;
+        if (current != null && current.isRunning()) {
+            call.reject("A burst is already in progress", "BUSY");
+            return;
+        }
 
-        // Turn off torch before capture when flash is enabled; the LED is shared
-        // hardware so an active torch prevents the flash from firing correctly.
+        int maxInFlight = Math.max(1, call.getInt("maxInFlight", 2));
+        long intervalMs = Math.max(0, call.getInt("intervalMs", 0));
+        Double maxFps = call.getDouble("maxFps");
+        if (maxFps != null && maxFps > 0) {
+            intervalMs = Math.max(intervalMs, Math.round(1000.0 / maxFps));
+        }
+        int maxFrames = Math.max(0, call.getInt("maxFrames", 0));
+
+        turnOffTorchForFlash();
+
+        String burstId = UUID.randomUUID().toString();
+        BurstCaptureSession session = new BurstCaptureSession(
+            burstId, pipeline, maxInFlight, intervalMs, maxFrames,
+            (owner, ticket, index) -> takePicture(pipeline, new BurstFrameCallback(owner, index, ticket)),
+            ended -> {
+                if (burstSession == ended) {
+                    burstSession = null;
+                }
+                notifyListeners("burstStopped", ended.toJSObject());
+            }
+        );
+        burstSession = session;
+        session.start();
+
+        JSObject result = new JSObject();
+        result.put("burstId", burstId);
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void stopBurst(PluginCall call) {
+        BurstCaptureSession session = burstSession;
+        if (session == null) {
+            call.reject("No burst in progress");
+            return;
+        }
+        session.stop();
+        // Frames still being processed keep arriving as photoAdded events
+        call.resolve(session.toJSObject());
+    }
+
+    /**
+     * Receives the outcome of a single takePicture request.
+     * Methods are called on a processing pipeline worker.
+     */
+    private interface CaptureCallback {
+        /** The camera delivered the frame; processing is about to start */
+        default void onCaptured() { }
+
+        void onProcessed(JSObject result, CaptureMetrics.Timer timer);
+
+        void onCaptureFailed(String message);
+
+        void onProcessingFailed(String message, Exception e);
+    }
+
+    /**
+     * Routes a burst frame to photoAdded events, in capture order
+     */
+    private class BurstFrameCallback implements CaptureCallback {
+        private final BurstCaptureSession session;
+        private final int index;
+        private final CaptureProcessingPipeline.Ticket ticket;
+
+        BurstFrameCallback(BurstCaptureSession session, int index, CaptureProcessingPipeline.Ticket ticket) {
+            this.session = session;
+            this.index = index;
+            this.ticket = ticket;
+        }
+
+        @Override
+        public void onCaptured() {
+            session.frameCaptured();
+        }
+
+        @Override
+        public void onProcessed(JSObject result, CaptureMetrics.Timer timer) {
+            result.put("burstId", session.getBurstId());
+            result.put("index", index);
+            ticket.complete(() -> {
+                notifyListeners("photoAdded", result);
+                timer.finish();
+            });
+        }
+
+        @Override
+        public void onCaptureFailed(String message) {
+            Log.w("CameraMultiCapture", "Burst frame " + index + " failed: " + message);
+            session.frameFailed();
+            ticket.complete(() -> { });
+        }
+
+        @Override
+        public void onProcessingFailed(String message, Exception e) {
+            Log.e("CameraMultiCapture", "Burst frame " + index + ": " + message, e);
+            session.frameProcessingFailed();
+            ticket.complete(() -> { });
+        }
+    }
+
+    // Turn off torch before capture when flash is enabled; the LED is shared
+    // hardware so an active torch prevents the flash from firing correctly.
+    private void turnOffTorchForFlash() {
         if (currentConfig.flashMode != ImageCapture.FLASH_MODE_OFF && torchEnabled && camera != null) {
             try {
                 camera.getCameraControl().enableTorch(false);
@@ -375,73 +602,262 @@ public class CameraMultiCapturePlugin extends Plugin {
                 Log.w("CameraMultiCapture", "Failed to turn off torch before flash capture: " + e.getMessage());
             }
         }
+    }
 
-        int quality = call.getInt("quality", currentConfig.jpegQuality);
-        //Log.d("CameraMultiCapture", "Capture quality: " + quality + ", saveToGallery: " + currentConfig.saveToGallery);
+    /**
+     * Fire one takePicture request using the configured capture output
+     */
+    private void takePicture(CaptureProcessingPipeline pipeline, CaptureCallback callback) {
+        ImageCapture capture = imageCapture;
+        if (capture == null) {
+            throw new IllegalStateException("ImageCapture not initialized");
+        }
 
         int sensorOrientation = getRotationFromOrientation(lastKnownOrientation);
-        imageCapture.setTargetRotation(sensorOrientation);
+        capture.setTargetRotation(sensorOrientation);
         currentConfig.targetRotation = sensorOrientation;
 
-        try {
-            File photoFile = new File(getContext().getCacheDir(), "photo_" + System.currentTimeMillis() + ".jpg");
-            ImageCapture.OutputFileOptions outputOptions = new ImageCapture.OutputFileOptions.Builder(photoFile).build();
+        File photoFile = newPhotoFile();
+        CaptureMetrics.Timer timer = captureMetrics.start();
+        if (currentConfig.inMemoryCapture) {
+            takePictureInMemory(capture, pipeline, photoFile, timer, callback);
+        } else {
+            takePictureToFile(capture, pipeline, photoFile, timer, callback);
+        }
+    }
 
-            imageCapture.takePicture(
-                outputOptions,
-                ContextCompat.getMainExecutor(getContext()),
-                new ImageCapture.OnImageSavedCallback() {
-                    @Override
-                    public void onImageSaved(@NonNull ImageCapture.OutputFileResults outputFileResults) {
-                        JSObject result = new JSObject();
-                        JSObject imageData = new JSObject();
-                        
-                        try {
-                            boolean orientationCorrected = ImageUtils.correctImageOrientation(photoFile);
-                            if (!orientationCorrected) {
-                                Log.w("CameraMultiCapture", "Failed to correct image orientation");
-                            }
+    /**
+     * Cache file for a new photo. The sequence number keeps names unique when
+     * several captures start within the same millisecond.
+     */
+    private File newPhotoFile() {
+        return new File(getContext().getCacheDir(),
+            "photo_" + System.currentTimeMillis() + "_" + photoSequence.incrementAndGet() + ".jpg");
+    }
 
-                            Uri uri = Uri.fromFile(photoFile);
-                            imageData.put("uri", uri.toString());
-
-                            // Save to gallery if enabled (default: false)
-                            if (currentConfig.enableSaving) {
-                                Uri galleryUri = saveImageToGallery(photoFile, currentConfig.galleryAlbumName);
-                                if (galleryUri != null) {
-                                    imageData.put("galleryUri", galleryUri.toString());
-                                    Log.d("CameraMultiCapture", "Image saved to gallery: " + galleryUri.toString());
-                                } else {
-                                    Log.w("CameraMultiCapture", "Failed to save image to gallery, but capture succeeded");
-                                }
-                            }
+    /**
+     * Let CameraX write the JPEG, then re-read it for orientation and thumbnail
+     */
+    private void takePictureToFile(ImageCapture capture, CaptureProcessingPipeline pipeline,
+                                   File photoFile, CaptureMetrics.Timer timer, CaptureCallback callback) {
+        ImageCapture.OutputFileOptions outputOptions = new ImageCapture.OutputFileOptions.Builder(photoFile).build();
+
+        // Callbacks run on the processing pipeline, never on the UI thread
+        capture.takePicture(
+            outputOptions,
+            pipeline.getExecutor(),
+            new ImageCapture.OnImageSavedCallback() {
+                @Override
+                public void onImageSaved(@NonNull ImageCapture.OutputFileResults outputFileResults) {
+                    timer.mark(CaptureMetrics.STAGE_SHUTTER);
+                    callback.onCaptured();
+                    JSObject result;
+                    try {
+                        result = processCapturedPhoto(photoFile, timer);
+                    } catch (Exception e) {
+                        callback.onProcessingFailed("Failed to process photo file", e);
+                        return;
+                    }
+                    callback.onProcessed(result, timer);
+                }
 
-                            String thumbnailBase64 = ThumbnailGenerator.generateThumbnail(photoFile);
-                            if (thumbnailBase64 != null) {
-                                imageData.put("thumbnail", thumbnailBase64);
-                            } else {
-                                Log.w("CameraMultiCapture", "Thumbnail generation failed");
-                                imageData.put("thumbnail", "");
-                            }
+                @Override
+                public void onError(@NonNull ImageCaptureException exception) {
+                    callback.onCaptureFailed("Photo capture failed: " + exception.getMessage());
+                }
+            }
+        );
+    }
 
-                            result.put("value", imageData);
-                        } catch (Exception e) {
-                            call.reject("Failed to process photo file", e);
+    /**
+     * Receive the JPEG in memory and write the upright file once, building the
+     * thumbnail from the same bytes instead of reading the file back.
+     */
+    private void takePictureInMemory(ImageCapture capture, CaptureProcessingPipeline pipeline,
+                                     File photoFile, CaptureMetrics.Timer timer, CaptureCallback callback) {
+        capture.takePicture(
+            pipeline.getExecutor(),
+            new ImageCapture.OnImageCapturedCallback() {
+                @Override
+                public void onCaptureSuccess(@NonNull ImageProxy image) {
+                    timer.mark(CaptureMetrics.STAGE_SHUTTER);
+                    byte[] jpeg;
+                    int rotationDegrees;
+                    try {
+                        if (image.getFormat() != ImageFormat.JPEG) {
+                            callback.onCaptureFailed("Unsupported capture format: " + image.getFormat());
                             return;
                         }
-                        call.resolve(result);
+                        ByteBuffer buffer = image.getPlanes()[0].getBuffer();
+                        buffer.rewind();
+                        jpeg = new byte[buffer.remaining()];
+                        buffer.get(jpeg);
+                        rotationDegrees = image.getImageInfo().getRotationDegrees();
+                    } finally {
+                        // Hand the buffer back to the camera before the slow work starts
+                        image.close();
                     }
+                    callback.onCaptured();
 
-                    @Override
-                    public void onError(@NonNull ImageCaptureException exception) {
-                        //Log.e("CameraMultiCapture", "=== CAPTURE ERROR: " + exception.getMessage() + " ===", exception);
-                        call.reject("Photo capture failed: " + exception.getMessage());
+                    JSObject result;
+                    try {
+                        result = processCapturedImage(jpeg, rotationDegrees, photoFile, timer);
+                    } catch (Exception e) {
+                        callback.onProcessingFailed("Failed to process photo", e);
+                        return;
                     }
+                    callback.onProcessed(result, timer);
                 }
-            );
-        } catch (Exception e) {
-            call.reject("Capture error: " + e.getMessage(), e);
+
+                @Override
+                public void onError(@NonNull ImageCaptureException exception) {
+                    callback.onCaptureFailed("Photo capture failed: " + exception.getMessage());
+                }
+            }
+        );
+    }
+
+    /**
+     * Post-capture processing for a saved photo. Runs on a processing pipeline worker.
+     *
+     * @param photoFile The file written by CameraX
+     * @param timer Stage timing for this capture
+     * @return The plugin result for the capture call
+     */
+    private JSObject processCapturedPhoto(File photoFile, CaptureMetrics.Timer timer) {
+        boolean orientationCorrected = ImageUtils.correctImageOrientation(photoFile, currentConfig.orientationMode);
+        if (!orientationCorrected) {
+            Log.w("CameraMultiCapture", "Failed to correct image orientation");
+        }
+        timer.mark(CaptureMetrics.STAGE_ORIENTATION);
+
+        JSObject imageData = new JSObject();
+        imageData.put("uri", Uri.fromFile(photoFile).toString());
+        saveToGalleryIfEnabled(photoFile, imageData, timer);
+
+        Bitmap thumbnail = ImageUtils.decodeThumbnail(photoFile, ThumbnailGenerator.DEFAULT_THUMBNAIL_SIZE);
+        putThumbnail(imageData, encodeThumbnail(thumbnail, photoFile.getName()));
+        timer.mark(CaptureMetrics.STAGE_THUMBNAIL);
+
+        JSObject result = new JSObject();
+        result.put("value", imageData);
+        return result;
+    }
+
+    /**
+     * Post-capture processing for an in-memory JPEG. Runs on a processing pipeline worker.
+     *
+     * @param jpeg JPEG data delivered by CameraX
+     * @param rotationDegrees Clockwise rotation needed to display the image upright
+     * @param photoFile Destination file
+     * @param timer Stage timing for this capture
+     * @return The plugin result for the capture call
+     * @throws IOException if the photo could not be written
+     */
+    private JSObject processCapturedImage(byte[] jpeg, int rotationDegrees, File photoFile,
+                                          CaptureMetrics.Timer timer) throws IOException {
+        // The thumbnail is decoded from the same bytes while the file is written
+        Bitmap thumbnail = ImageUtils.saveOrientedJpeg(
+            jpeg,
+            ImageUtils.exifOrientationFromDegrees(rotationDegrees),
+            currentConfig.orientationMode,
+            photoFile,
+            ThumbnailGenerator.DEFAULT_THUMBNAIL_SIZE
+        );
+        timer.mark(CaptureMetrics.STAGE_ORIENTATION);
+
+        JSObject imageData = new JSObject();
+        imageData.put("uri", Uri.fromFile(photoFile).toString());
+        saveToGalleryIfEnabled(photoFile, imageData, timer);
+
+        putThumbnail(imageData, encodeThumbnail(thumbnail, photoFile.getName()));
+        timer.mark(CaptureMetrics.STAGE_THUMBNAIL);
+
+        JSObject result = new JSObject();
+        result.put("value", imageData);
+        return result;
+    }
+
+    /**
+     * Encode a thumbnail in the configured format and return the bitmap to the pool
+     * @return Data URI or file URI, or null if there is no thumbnail
+     */
+    private String encodeThumbnail(Bitmap thumbnail, String sourceName) {
+        if (thumbnail == null) {
+            return null;
+        }
+        try {
+            return ThumbnailGenerator.encode(getContext(), thumbnail, currentConfig.thumbnailFormat, sourceName);
+        } finally {
+            BitmapPool.get().release(thumbnail);
+        }
+    }
+
+    private void saveToGalleryIfEnabled(File photoFile, JSObject imageData, CaptureMetrics.Timer timer) {
+        // Save to gallery if enabled (default: false)
+        if (!currentConfig.enableSaving) {
+            return;
+        }
+        // Deferred mode: galleryUri arrives later through the gallerySaved event
+        GallerySaveBatcher batcher = galleryBatcher;
+        if (batcher != null && batcher.add(photoFile, currentConfig.galleryAlbumName)) {
+            return;
+        }
+        Uri galleryUri = saveImageToGallery(photoFile, currentConfig.galleryAlbumName);
+        if (galleryUri != null) {
+            imageData.put("galleryUri", galleryUri.toString());
+            Log.d("CameraMultiCapture", "Image saved to gallery: " + galleryUri.toString());
+        } else {
+            Log.w("CameraMultiCapture", "Failed to save image to gallery, but capture succeeded");
         }
+        timer.mark(CaptureMetrics.STAGE_GALLERY);
+    }
+
+    /**
+     * Report a committed gallery batch, mapping each capture URI to its gallery URI
+     */
+    private void notifyGallerySaved(List<GallerySaveBatcher.Item> items) {
+        JSArray saved = new JSArray();
+        for (GallerySaveBatcher.Item item : items) {
+            JSObject entry = new JSObject();
+            entry.put("uri", Uri.fromFile(item.file).toString());
+            if (item.galleryUri != null) {
+                entry.put("galleryUri", item.galleryUri.toString());
+            }
+            saved.put(entry);
+        }
+        JSObject event = new JSObject();
+        event.put("items", saved);
+        notifyListeners("gallerySaved", event);
+    }
+
+    private void putThumbnail(JSObject imageData, String thumbnail) {
+        if (thumbnail != null) {
+            imageData.put("thumbnail", thumbnail);
+        } else {
+            Log.w("CameraMultiCapture", "Thumbnail generation failed");
+            imageData.put("thumbnail", "");
+        }
+    }
+
+    @PluginMethod
+    public void getCaptureMetrics(PluginCall call) {
+        BitmapPool pool = BitmapPool.get();
+        JSObject poolStats = new JSObject();
+        poolStats.put("hits", pool.getHits());
+        poolStats.put("misses", pool.getMisses());
+        poolStats.put("pooledBytes", pool.getPooledBytes());
+
+        JSObject result = new JSObject();
+        result.put("stages", captureMetrics.toJSObject());
+        result.put("bitmapPool", poolStats);
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void resetCaptureMetrics(PluginCall call) {
+        captureMetrics.reset();
+        call.resolve();
     }
 
     @PluginMethod
@@ -473,11 +889,15 @@ public class CameraMultiCapturePlugin extends Plugin {
                 .prepareRecording(getContext(), outputOptions)
                 .withAudioEnabled();
 
+            int generation;
+            synchronized (videoResultLock) {
+                generation = videoSessionGeneration;
+            }
             activeRecording = pendingRecording.start(
                 ContextCompat.getMainExecutor(getContext()),
                 event -> {
                     if (event instanceof VideoRecordEvent.Finalize finalizeEvent) {
-                        handleVideoFinalize(finalizeEvent);
+                        handleVideoFinalize(finalizeEvent, generation);
                     }
                 }
             );
@@ -495,12 +915,18 @@ public class CameraMultiCapturePlugin extends Plugin {
     @PluginMethod
     public void stopVideoRecording(PluginCall call) {
         // If recording was already auto-stopped (e.g. by maxRecordingDuration),
-        // return the buffered result immediately.
-        if (autoStoppedVideoResult != null) {
-            JSObject buffered = autoStoppedVideoResult;
-            autoStoppedVideoResult = null;
-            call.resolve(buffered);
-            return;
+        // return the buffered result immediately, or once it has been finalized.
+        synchronized (videoResultLock) {
+            if (autoStoppedVideoResult != null) {
+                JSObject buffered = autoStoppedVideoResult;
+                autoStoppedVideoResult = null;
+                call.resolve(buffered);
+                return;
+            }
+            if (activeRecording == null && autoStopFinalizing && autoStopWaitingCall == null) {
+                autoStopWaitingCall = call;
+                return;
+            }
         }
 
         if (activeRecording == null) {
@@ -511,7 +937,10 @@ public class CameraMultiCapturePlugin extends Plugin {
         activeRecording.stop();
     }
 
-    private void handleVideoFinalize(VideoRecordEvent.Finalize finalizeEvent) {
+    /**
+     * @param generation Session the recording was started in; stop() may already have ended it
+     */
+    private void handleVideoFinalize(VideoRecordEvent.Finalize finalizeEvent, int generation) {
         try {
             if (camera != null) {
                 camera.getCameraControl().enableTorch(false);
@@ -549,71 +978,66 @@ public class CameraMultiCapturePlugin extends Plugin {
             return;
         }
 
-        if (currentConfig.enableSaving) {
-            saveVideoToGallery(outputUri);
+        // Frame, metadata and gallery export run in the background; the poster frame
+        // is decoded at the size of the preview it is shown over
+        Uri videoUri = outputUri;
+        Runnable export = currentConfig.enableSaving ? () -> saveVideoToGallery(videoUri) : null;
+        int frameWidth = previewView != null ? previewView.getWidth() : 0;
+        int frameHeight = previewView != null ? previewView.getHeight() : 0;
+        if (call == null) {
+            synchronized (videoResultLock) {
+                if (generation == videoSessionGeneration) {
+                    autoStopFinalizing = true;
+                }
+            }
         }
+        videoFinalizer.submit(getContext(), videoUri, frameWidth, frameHeight, export,
+            finalized -> deliverVideoResult(call, generation, buildVideoResult(videoUri, finalized)));
+    }
 
-        String thumbnail = generateVideoThumbnail(outputUri);
-        double duration = getVideoDurationSeconds(outputUri);
+    private JSObject buildVideoResult(Uri videoUri, VideoFinalizer.Result finalized) {
+        String name = videoUri.getLastPathSegment() != null ? videoUri.getLastPathSegment() : "video_" + System.currentTimeMillis();
+        String thumbnail = encodeThumbnail(finalized.frame, name);
 
-        JSObject result = new JSObject();
         JSObject videoData = new JSObject();
-        videoData.put("uri", outputUri.toString());
+        videoData.put("uri", videoUri.toString());
         videoData.put("thumbnail", thumbnail != null ? thumbnail : "");
-        videoData.put("duration", duration);
-        result.put("value", videoData);
-
-        if (call != null) {
-            call.resolve(result);
-        } else {
-            // Recording was auto-stopped by maxRecordingDuration.
-            // Buffer the result for the next stopVideoRecording call.
-            autoStoppedVideoResult = result;
+        videoData.put("duration", finalized.durationSeconds);
+        if (finalized.width > 0 && finalized.height > 0) {
+            videoData.put("width", finalized.width);
+            videoData.put("height", finalized.height);
         }
-    }
-
-    private String generateVideoThumbnail(Uri videoUri) {
-        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
-        try {
-            retriever.setDataSource(getContext(), videoUri);
-            android.graphics.Bitmap bitmap = retriever.getFrameAtTime(0, MediaMetadataRetriever.OPTION_CLOSEST_SYNC);
-            if (bitmap == null) {
-                return null;
-            }
-            java.io.ByteArrayOutputStream stream = new java.io.ByteArrayOutputStream();
-            bitmap.compress(android.graphics.Bitmap.CompressFormat.JPEG, 85, stream);
-            byte[] bytes = stream.toByteArray();
-            return "data:image/jpeg;base64," + Base64.encodeToString(bytes, Base64.NO_WRAP);
-        } catch (Exception e) {
-            Log.w("CameraMultiCapture", "Failed to generate video thumbnail: " + e.getMessage());
-            return null;
-        } finally {
-            try {
-                retriever.release();
-            } catch (IOException ignored) {
-                // best effort cleanup
-            }
+        if (finalized.bitrate > 0) {
+            videoData.put("bitrate", finalized.bitrate);
         }
+        JSObject result = new JSObject();
+        result.put("value", videoData);
+        return result;
     }
 
-    private double getVideoDurationSeconds(Uri videoUri) {
-        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
-        try {
-            retriever.setDataSource(getContext(), videoUri);
-            String durationMs = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
-            if (durationMs == null) {
-                return 0;
-            }
-            return Double.parseDouble(durationMs) / 1000.0;
-        } catch (Exception e) {
-            return 0;
-        } finally {
-            try {
-                retriever.release();
-            } catch (IOException ignored) {
-                // best effort cleanup
+    /**
+     * Resolve the stop call of a finalized recording. Without one, the recording was
+     * auto-stopped by maxRecordingDuration: the result goes to a stopVideoRecording
+     * call made while finalizing, or is buffered for the next one. Auto-stopped
+     * results of a session ended by stop() are dropped.
+     */
+    private void deliverVideoResult(PluginCall call, int generation, JSObject result) {
+        if (call == null) {
+            synchronized (videoResultLock) {
+                if (generation != videoSessionGeneration) {
+                    Log.d("CameraMultiCapture", "Dropping video result of a stopped session");
+                    return;
+                }
+                autoStopFinalizing = false;
+                call = autoStopWaitingCall;
+                autoStopWaitingCall = null;
+                if (call == null) {
+                    autoStoppedVideoResult = result;
+                    return;
+                }
             }
         }
+        call.resolve(result);
     }
 
     private void saveVideoToGallery(Uri videoUri) {
@@ -635,17 +1059,12 @@ public class CameraMultiCapturePlugin extends Plugin {
             }
 
             File sourceFile = new File(videoUri.getPath());
-            try (OutputStream out = resolver.openOutputStream(galleryUri);
-                 java.io.InputStream in = Files.newInputStream(sourceFile.toPath())) {
-                if (out == null) {
-                    Log.w("CameraMultiCapture", "Failed to open output stream for gallery video");
-                    return;
-                }
-                byte[] buffer = new byte[8192];
-                int bytesRead;
-                while ((bytesRead = in.read(buffer)) != -1) {
-                    out.write(buffer, 0, bytesRead);
-                }
+            try {
+                GalleryFileCopier.copyToUri(resolver, galleryUri, sourceFile);
+            } catch (IOException e) {
+                Log.w("CameraMultiCapture", "Failed to copy video to gallery: " + e.getMessage());
+                resolver.delete(galleryUri, null, null);
+                return;
             }
 
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
@@ -763,45 +1182,230 @@ public class CameraMultiCapturePlugin extends Plugin {
 
     @PluginMethod
     public void queueBackgroundUpload(PluginCall call) {
-        String imageUri = call.getString("imageUri");
-        String uploadEndpoint = call.getString("uploadEndpoint");
-        JSObject headers = call.getObject("headers");
-        JSObject formData = call.getObject("formData", new JSObject());
-        String method = call.getString("method", "POST");
-        Boolean deleteAfterUpload = call.getBoolean("deleteAfterUpload", true); // Default: true
-        
-        if (imageUri == null || uploadEndpoint == null || headers == null) {
+        String jobId = UUID.randomUUID().toString();
+        UploadJob job = newUploadJob(call.getData(), jobId);
+        if (job == null) {
             call.reject("Missing required parameters");
             return;
         }
+        boolean dedupe = call.getBoolean("dedupe", false);
+        // Hashing for dedupe reads the whole file, and the store is SQLite: keep both off the plugin thread
+        uploadQueueExecutor.execute(() -> {
+            UploadJobStore store = UploadJobStore.get(getContext());
+            if (dedupe) {
+                String existing = new UploadDeduplicator(store).findDuplicate(job);
+                if (existing != null) {
+                    JSObject result = new JSObject();
+                    result.put("jobId", existing);
+                    result.put("duplicate", true);
+                    call.resolve(result);
+                    return;
+                }
+            }
+            OneTimeWorkRequest uploadWork = UploadScheduler.newRequest(job, false);
+            List<UploadJob> jobs = Collections.singletonList(job);
+            store.insert(jobs);
+            
+            WorkManager.getInstance(getContext()).enqueue(uploadWork);
+            UploadScheduler.scheduleDeadlines(getContext(), jobs);
+            
+            JSObject result = new JSObject();
+            result.put("jobId", jobId);
+            call.resolve(result);
+        });
+    }
+
+    /**
+     * Enqueue many uploads in a single WorkManager transaction as one unique work
+     * unit named after the batch. All items start as parallel roots, so one failed
+     * item doesn't cancel the rest; at most maxParallel of them upload at once,
+     * through a limit of the batch's own that leaves other uploads to the same
+     * host alone.
+     */
+    @PluginMethod
+    public void queueBatchUpload(PluginCall call) {
+        JSArray items = call.getArray("items");
+        if (items == null || items.length() == 0) {
+            call.reject("Missing items");
+            return;
+        }
+        int maxParallel = Math.max(1, call.getInt("maxParallel", UploadEngine.DEFAULT_MAX_CONNECTIONS_PER_HOST));
         
-        String jobId = UUID.randomUUID().toString();
-        String uniqueFileName = generateUniqueFileName(imageUri);
+        String batchId = UUID.randomUUID().toString();
+        List<UploadJob> candidates = new ArrayList<>(items.length());
+        boolean[] dedupe = new boolean[items.length()];
+        for (int i = 0; i < items.length(); i++) {
+            JSONObject item = items.optJSONObject(i);
+            UploadJob job;
+            try {
+                job = item != null ? newUploadJob(JSObject.fromJSONObject(item), UUID.randomUUID().toString()) : null;
+            } catch (JSONException e) {
+                job = null;
+            }
+            if (job == null) {
+                call.reject("Missing required parameters in item " + i);
+                return;
+            }
+            job.batchId = batchId;
+            job.maxParallel = maxParallel;
+            dedupe[i] = item.optBoolean("dedupe", false);
+            candidates.add(job);
+        }
         
-        Data inputData = new Data.Builder()
-            .putString("jobId", jobId)
-            .putString("imageUri", imageUri)
-            .putString("uploadEndpoint", uploadEndpoint)
-            .putString("headers", headers.toString())
-            .putString("formData", formData.toString())
-            .putString("method", method)
-            .putString("fileName", uniqueFileName)
-            .putBoolean("deleteAfterUpload", deleteAfterUpload)
-            .build();
+        uploadQueueExecutor.execute(() -> {
+            UploadJobStore store = UploadJobStore.get(getContext());
+            UploadDeduplicator deduplicator = new UploadDeduplicator(store);
+            // Content hash and endpoint of the batch's new jobs, for duplicates within the batch
+            Map<String, String> batchContent = new HashMap<>();
+            List<UploadJob> jobs = new ArrayList<>(candidates.size());
+            List<OneTimeWorkRequest> requests = new ArrayList<>(candidates.size());
+            JSArray jobIds = new JSArray();
+            for (int i = 0; i < candidates.size(); i++) {
+                UploadJob job = candidates.get(i);
+                if (dedupe[i]) {
+                    String existing = deduplicator.findDuplicate(job);
+                    String contentKey = job.contentHash + " " + job.uploadEndpoint;
+                    if (existing == null && job.contentHash != null) {
+                        existing = batchContent.get(contentKey);
+                    }
+                    if (existing != null) {
+                        jobIds.put(existing);
+                        continue;
+                    }
+                    if (job.contentHash != null) {
+                        batchContent.put(contentKey, job.jobId);
+                    }
+                }
+                jobs.add(job);
+                requests.add(UploadScheduler.newRequest(job, false));
+                jobIds.put(job.jobId);
+            }
+            
+            // Rows go in before the work so a worker never starts without its job
+            if (!requests.isEmpty()) {
+                store.insert(jobs);
+                WorkManager.getInstance(getContext())
+                    .beginUniqueWork(batchId, ExistingWorkPolicy.KEEP, requests)
+                    .enqueue();
+                UploadScheduler.scheduleDeadlines(getContext(), jobs);
+            }
+            
+            JSObject result = new JSObject();
+            result.put("batchId", batchId);
+            result.put("jobIds", jobIds);
+            call.resolve(result);
+        });
+    }
+
+    /**
+     * Build the stored job for one upload
+     * @param options Upload options as passed from JS
+     * @param jobId Job id
+     * @return Job, or null if required options are missing
+     */
+    private UploadJob newUploadJob(JSObject options, String jobId) {
+        String imageUri = options.getString("imageUri");
+        String uploadEndpoint = options.getString("uploadEndpoint");
+        JSObject headers = options.getJSObject("headers", null);
+        JSObject formData = options.getJSObject("formData", new JSObject());
+        String method = options.getString("method", "POST");
+        Boolean deleteAfterUpload = options.getBoolean("deleteAfterUpload", true); // Default: true
+        int maxPerHost = options.getInteger("maxConnectionsPerHost", UploadEngine.DEFAULT_MAX_CONNECTIONS_PER_HOST);
+        int chunkSize = options.getInteger("chunkSize", 0);
+        int chunkProtocol = "azure-block".equals(options.getString("chunkProtocol"))
+            ? ChunkedUpload.PROTOCOL_BLOCK_LIST
+            : ChunkedUpload.PROTOCOL_CONTENT_RANGE;
         
-        OneTimeWorkRequest uploadWork = new OneTimeWorkRequest.Builder(GenericUploadWorker.class)
-            .setInputData(inputData)
-            .addTag(jobId)
-            .setConstraints(new Constraints.Builder()
-                .setRequiredNetworkType(NetworkType.CONNECTED)
-                .build())
-            .build();
+        if (imageUri == null || uploadEndpoint == null || headers == null) {
+            return null;
+        }
         
-        WorkManager.getInstance(getContext()).enqueue(uploadWork);
+        UploadJob job = new UploadJob();
+        job.jobId = jobId;
+        job.imageUri = imageUri;
+        job.uploadEndpoint = uploadEndpoint;
+        job.headers = headers.toString();
+        job.formData = formData.toString();
+        job.method = method;
+        job.fileName = generateUniqueFileName(imageUri);
+        job.deleteAfterUpload = deleteAfterUpload;
+        job.maxConnectionsPerHost = maxPerHost;
+        job.chunkSize = chunkSize;
+        job.chunkProtocol = chunkProtocol;
+        job.maxAttempts = Math.max(1, options.getInteger("maxAttempts", UploadRetryPolicy.DEFAULT_MAX_ATTEMPTS));
+        job.priority = UploadScheduler.resolvePriority(options.getString("priority"), imageUri);
+        if (UploadScheduler.PRIORITY_BULK.equals(job.priority)) {
+            long deadline = options.optLong("bulkDeadline", UploadScheduler.DEFAULT_BULK_DEADLINE_MS);
+            job.deadlineAt = deadline > 0 ? System.currentTimeMillis() + deadline : 0;
+        }
         
-        JSObject result = new JSObject();
-        result.put("jobId", jobId);
-        call.resolve(result);
+        // Optional checksum computed while the file streams out
+        JSObject checksum = options.getJSObject("checksum", null);
+        if (checksum != null) {
+            String algorithm = checksum.getString("algorithm", UploadChecksum.ALGORITHM_MD5);
+            if (!UploadChecksum.ALGORITHM_MD5.equals(algorithm)
+                && !UploadChecksum.ALGORITHM_SHA256.equals(algorithm)
+                && !UploadChecksum.ALGORITHM_CRC32C.equals(algorithm)) {
+                return null;
+            }
+            job.checksumAlgorithm = algorithm;
+            job.checksumHeader = checksum.getString("header");
+            job.checksumFormField = checksum.getString("formField");
+            job.checksumEncoding = UploadChecksum.ENCODING_HEX.equals(checksum.getString("encoding"))
+                ? UploadChecksum.ENCODING_HEX
+                : UploadChecksum.ENCODING_BASE64;
+        }
+        
+        // Optional resize/recompress before transfer
+        JSObject resize = options.getJSObject("resize", null);
+        if (resize != null) {
+            job.transform = new UploadImageTransform(
+                resize.getInteger("maxDimension", 0),
+                resize.getInteger("quality", -1),
+                "webp".equals(resize.getString("format"))
+                    ? UploadImageTransform.FORMAT_WEBP
+                    : UploadImageTransform.FORMAT_JPEG,
+                resize.optLong("targetBytes", 0)
+            );
+        }
+        return job;
+    }
+
+    @Override
+    public void load() {
+        super.load();
+        // Progress is always forwarded; status changes only between watchUploads and unwatchUploads
+        uploadMonitor = new UploadStatusMonitor(new UploadStatusMonitor.Listener() {
+            @Override
+            public void onUploadProgress(JSObject progress) {
+                notifyListeners("uploadProgress", progress);
+            }
+
+            @Override
+            public void onUploadStatusChanged(JSArray uploads) {
+                JSObject event = new JSObject();
+                event.put("uploads", uploads);
+                notifyListeners("uploadStatusChanged", event);
+            }
+        });
+        uploadMonitor.start(getContext());
+        getContext().registerComponentCallbacks(memoryCallbacks);
+    }
+
+    @Override
+    protected void handleOnDestroy() {
+        if (uploadMonitor != null) {
+            uploadMonitor.stop();
+        }
+        // Queued calls still finish; nothing new is accepted
+        uploadQueueExecutor.shutdown();
+        if (galleryBatcher != null) {
+            galleryBatcher.shutdown();
+            galleryBatcher = null;
+        }
+        getContext().unregisterComponentCallbacks(memoryCallbacks);
+        BitmapPool.get().clear();
+        super.handleOnDestroy();
     }
 
     @PluginMethod
@@ -812,39 +1416,31 @@ public class CameraMultiCapturePlugin extends Plugin {
             return;
         }
         
+        JSObject cached = uploadMonitor.getStatus(jobId);
+        if (cached != null) {
+            call.resolve(cached);
+            return;
+        }
+        
+        // Finished (the monitor only caches unfinished jobs) or not seen by the monitor yet
+        UploadJob job = UploadJobStore.get(getContext()).get(jobId);
+        if (job != null) {
+            call.resolve(toStatus(job));
+            return;
+        }
+        
+        // Enqueued by a version without the job store
         try {
             WorkManager workManager = WorkManager.getInstance(getContext());
             List<WorkInfo> workInfoList = workManager.getWorkInfosByTag(jobId).get();
-            JSObject result = new JSObject();
+            JSObject result;
             
             if (workInfoList.isEmpty()) {
+                result = new JSObject();
                 result.put("status", "failed");
                 result.put("error", "Job not found");
             } else {
-                WorkInfo workInfo = workInfoList.get(0);
-                WorkInfo.State state = workInfo.getState();
-                
-                switch (state) {
-                    case ENQUEUED:
-                    case BLOCKED:
-                        result.put("status", "pending");
-                        break;
-                    case RUNNING:
-                        result.put("status", "uploading");
-                        break;
-                    case SUCCEEDED:
-                        result.put("status", "completed");
-                        break;
-                    case FAILED:
-                    case CANCELLED:
-                        result.put("status", "failed");
-                        Data outputData = workInfo.getOutputData();
-                        String error = outputData.getString("error");
-                        if (error != null) {
-                            result.put("error", error);
-                        }
-                        break;
-                }
+                result = UploadStatusMonitor.toStatus(workInfoList.get(0));
             }
             
             call.resolve(result);
@@ -853,6 +1449,76 @@ public class CameraMultiCapturePlugin extends Plugin {
         }
     }
 
+    /**
+     * Answer unfinished jobs from the monitor's cache and finished ones from the job store.
+     * Unknown jobs are left out.
+     */
+    @PluginMethod
+    public void getUploadStatuses(PluginCall call) {
+        JSArray jobIds = call.getArray("jobIds");
+        if (jobIds == null) {
+            call.reject("Missing jobIds parameter");
+            return;
+        }
+        JSArray uploads = new JSArray();
+        UploadJobStore store = null;
+        for (int i = 0; i < jobIds.length(); i++) {
+            String jobId = jobIds.optString(i);
+            JSObject status = uploadMonitor.getStatus(jobId);
+            if (status == null) {
+                if (store == null) {
+                    store = UploadJobStore.get(getContext());
+                }
+                UploadJob job = store.get(jobId);
+                status = job != null ? toStatus(job) : null;
+            }
+            if (status != null) {
+                uploads.put(status);
+            }
+        }
+        JSObject result = new JSObject();
+        result.put("uploads", uploads);
+        call.resolve(result);
+    }
+
+    /**
+     * Status object for a job the monitor no longer (or not yet) caches
+     */
+    private static JSObject toStatus(UploadJob job) {
+        JSObject result = new JSObject();
+        result.put("jobId", job.jobId);
+        result.put("status", job.status);
+        result.put("attempts", job.attempts);
+        if (job.checksum != null) {
+            result.put("checksum", job.checksum);
+        }
+        if (job.error != null) {
+            result.put("error", job.error);
+        }
+        return result;
+    }
+
+    /**
+     * Start emitting coalesced uploadStatusChanged events; resolves with the statuses of unfinished jobs
+     */
+    @PluginMethod
+    public void watchUploads(PluginCall call) {
+        uploadMonitor.setWatching(true);
+        JSArray uploads = new JSArray();
+        for (JSObject status : uploadMonitor.getStatuses()) {
+            uploads.put(status);
+        }
+        JSObject result = new JSObject();
+        result.put("uploads", uploads);
+        call.resolve(result);
+    }
+
+    @PluginMethod
+    public void unwatchUploads(PluginCall call) {
+        uploadMonitor.setWatching(false);
+        call.resolve();
+    }
+
     @PluginMethod
     public void getVersion(PluginCall call) {
         JSObject result = new JSObject();
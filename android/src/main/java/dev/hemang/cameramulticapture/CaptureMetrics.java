@@ -0,0 +1,105 @@
+package dev.hemang.cameramulticapture;
+
+import android.os.SystemClock;
+
+import com.getcapacitor.JSObject;
+
+/**
+ * Per-stage latency of the photo capture pipeline.
+ *
+ * Each capture carries a {@link Timer} that is marked as it moves through the
+ * stages; the time spent since the previous mark is recorded into that stage's
+ * histogram. Stages that are skipped (e.g. gallery save when saving is off)
+ * are simply not recorded.
+ */
+public class CaptureMetrics {
+    /** takePicture request until the camera delivered the frame (file saved or image in memory) */
+    public static final int STAGE_SHUTTER = 0;
+    /** Orientation correction; in memory mode this also covers writing the file */
+    public static final int STAGE_ORIENTATION = 1;
+    /** MediaStore insert and copy */
+    public static final int STAGE_GALLERY = 2;
+    /** Thumbnail decode and encode */
+    public static final int STAGE_THUMBNAIL = 3;
+    /** Waiting for in-order delivery and resolving the call */
+    public static final int STAGE_RESOLVE = 4;
+    /** Request until resolved */
+    public static final int STAGE_TOTAL = 5;
+
+    private static final String[] STAGE_NAMES = {
+        "shutter", "orientation", "gallery", "thumbnail", "resolve", "total"
+    };
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[STAGE_NAMES.length];
+
+    public CaptureMetrics() {
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Start timing a capture at the moment it is requested
+     */
+    public Timer start() {
+        return new Timer();
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+
+    /**
+     * @return Stage statistics in milliseconds, keyed by stage name
+     */
+    public JSObject toJSObject() {
+        JSObject stages = new JSObject();
+        for (int i = 0; i < histograms.length; i++) {
+            LatencyHistogram histogram = histograms[i];
+            JSObject stage = new JSObject();
+            stage.put("count", histogram.getCount());
+            stage.put("mean", toMillis(Math.round(histogram.getMean())));
+            stage.put("p50", toMillis(histogram.getPercentile(50)));
+            stage.put("p95", toMillis(histogram.getPercentile(95)));
+            stage.put("p99", toMillis(histogram.getPercentile(99)));
+            stage.put("max", toMillis(histogram.getMax()));
+            stages.put(STAGE_NAMES[i], stage);
+        }
+        return stages;
+    }
+
+    private static double toMillis(long micros) {
+        return Math.round(micros / 100.0) / 10.0;
+    }
+
+    /**
+     * Timing of a single capture. Marks are made from whichever thread the
+     * capture is on, one after the other.
+     */
+    public class Timer {
+        private final long startedAt = SystemClock.elapsedRealtimeNanos();
+        private volatile long lastMark = startedAt;
+
+        private Timer() {
+        }
+
+        /**
+         * Record the time since the previous mark as the given stage
+         */
+        public void mark(int stage) {
+            long now = SystemClock.elapsedRealtimeNanos();
+            histograms[stage].record((now - lastMark) / 1000);
+            lastMark = now;
+        }
+
+        /**
+         * Record the resolve stage and the total time of the capture
+         */
+        public void finish() {
+            mark(STAGE_RESOLVE);
+            histograms[STAGE_TOTAL].record((lastMark - startedAt) / 1000);
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package dev.hemang.cameramulticapture;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded background pipeline for post-capture work (orientation correction,
+ * gallery insert, thumbnail generation).
+ *
+ * A capture reserves a slot with {@link #acquire()} or {@link #acquireAsync}
+ * before the shutter fires, so the number of photos waiting for processing never
+ * exceeds workers + queue capacity. In block mode {@link #acquireAsync} parks the
+ * request instead of a thread and hands it the next freed slot, in arrival order.
+ * Results are handed back through
+ * {@link Ticket#complete(Runnable)} and delivered strictly in acquire order,
+ * even when several workers finish out of order.
+ */
+public class CaptureProcessingPipeline {
+    private static final String TAG = "CaptureProcessingPipeline";
+
+    public static final int BACKPRESSURE_BLOCK = 0;
+    public static final int BACKPRESSURE_REJECT = 1;
+
+    public static final long DEFAULT_BLOCK_TIMEOUT_MS = 10_000;
+
+    private final ThreadPoolExecutor executor;
+    private final Semaphore slots;
+    private final int totalSlots;
+    private final int backpressure;
+    private final long blockTimeoutMs;
+
+    /** Parked {@link #acquireAsync} requests; guarded by itself */
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+    private final Handler timeouts = new Handler(Looper.getMainLooper());
+
+    private final Object deliveryLock = new Object();
+    private final TreeMap<Long, Runnable> readyDeliveries = new TreeMap<>();
+    private long nextSequence = 0;
+    private long nextToDeliver = 0;
+    private volatile boolean closing = false;
+
+    /**
+     * Thrown when no processing slot is available and the pipeline is
+     * configured to reject instead of block.
+     */
+    public static class BusyException extends Exception {
+        public BusyException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Receives the outcome of {@link #acquireAsync}
+     */
+    public interface SlotCallback {
+        /**
+         * Called on the requesting thread if a slot was free, otherwise on the
+         * thread that completed the ticket whose slot is handed over
+         */
+        void onAcquired(Ticket ticket);
+
+        /** The queue was full (reject mode), the wait timed out, or the pipeline shut down */
+        void onBusy(String message);
+    }
+
+    private final class Waiter implements Runnable {
+        final SlotCallback callback;
+
+        Waiter(SlotCallback callback) {
+            this.callback = callback;
+        }
+
+        /** Timeout */
+        @Override
+        public void run() {
+            boolean removed;
+            synchronized (waiters) {
+                removed = waiters.remove(this);
+            }
+            if (removed) {
+                callback.onBusy("Capture processing queue is full");
+            }
+        }
+    }
+
+    /**
+     * A reserved processing slot. Every ticket must be completed exactly once,
+     * on success or failure, or later results will never be delivered.
+     */
+    public class Ticket {
+        private final long sequence;
+        private boolean completed = false;
+
+        private Ticket(long sequence) {
+            this.sequence = sequence;
+        }
+
+        /**
+         * Release the slot and schedule the delivery in capture order
+         * @param delivery Runnable that resolves or rejects the originating call
+         */
+        public void complete(Runnable delivery) {
+            synchronized (this) {
+                if (completed) {
+                    Log.w(TAG, "Ticket " + sequence + " completed twice, ignoring");
+                    return;
+                }
+                completed = true;
+            }
+            slots.release();
+            grantWaiters();
+            deliverInOrder(sequence, delivery);
+            shutdownIfIdle();
+        }
+    }
+
+    /**
+     * @param workerCount Number of background threads processing captures
+     * @param queueCapacity Number of captures allowed to wait for a free worker
+     * @param backpressure {@link #BACKPRESSURE_BLOCK} or {@link #BACKPRESSURE_REJECT}
+     * @param blockTimeoutMs How long block mode waits for a slot, 0 for no limit
+     */
+    public CaptureProcessingPipeline(int workerCount, int queueCapacity, int backpressure, long blockTimeoutMs) {
+        int workers = Math.max(1, workerCount);
+        this.totalSlots = workers + Math.max(0, queueCapacity);
+        this.slots = new Semaphore(totalSlots, true);
+        this.backpressure = backpressure;
+        this.blockTimeoutMs = Math.max(0, blockTimeoutMs);
+        // The semaphore is the real bound; the executor queue only ever holds reserved work.
+        this.executor = new ThreadPoolExecutor(
+            workers, workers, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            new ProcessingThreadFactory()
+        );
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Reserve a processing slot for a new capture, blocking the calling thread in
+     * block mode. For threads that own nothing else, like a burst loop.
+     * @return Ticket that must be completed once the capture is processed
+     * @throws BusyException if the queue is full (reject mode, or block mode timed out)
+     * @throws InterruptedException if interrupted while blocking for a slot
+     */
+    public Ticket acquire() throws BusyException, InterruptedException {
+        if (closing) {
+            throw new BusyException("Capture processing pipeline is shut down");
+        }
+
+        boolean acquired;
+        if (backpressure == BACKPRESSURE_REJECT) {
+            acquired = slots.tryAcquire();
+        } else if (blockTimeoutMs == 0) {
+            slots.acquire();
+            acquired = true;
+        } else {
+            acquired = slots.tryAcquire(blockTimeoutMs, TimeUnit.MILLISECONDS);
+        }
+        if (!acquired) {
+            throw new BusyException("Capture processing queue is full");
+        }
+        return newTicket();
+    }
+
+    /**
+     * Reserve a processing slot without blocking. In block mode a full queue parks
+     * the request until a ticket completes or the block timeout passes.
+     */
+    public void acquireAsync(SlotCallback callback) {
+        if (closing) {
+            callback.onBusy("Capture processing pipeline is shut down");
+            return;
+        }
+        Waiter waiter = null;
+        boolean acquired;
+        synchronized (waiters) {
+            // Don't overtake requests that are already waiting
+            acquired = waiters.isEmpty() && slots.tryAcquire();
+            if (!acquired && backpressure == BACKPRESSURE_BLOCK) {
+                waiter = new Waiter(callback);
+                waiters.addLast(waiter);
+            }
+        }
+        if (acquired) {
+            callback.onAcquired(newTicket());
+        } else if (waiter == null) {
+            callback.onBusy("Capture processing queue is full");
+        } else if (blockTimeoutMs > 0) {
+            timeouts.postDelayed(waiter, blockTimeoutMs);
+        }
+    }
+
+    private Ticket newTicket() {
+        synchronized (deliveryLock) {
+            return new Ticket(nextSequence++);
+        }
+    }
+
+    /**
+     * Hand freed slots to parked requests, oldest first
+     */
+    private void grantWaiters() {
+        List<Waiter> granted = new ArrayList<>();
+        List<Ticket> tickets = new ArrayList<>();
+        synchronized (waiters) {
+            while (!waiters.isEmpty() && slots.tryAcquire()) {
+                granted.add(waiters.pollFirst());
+                tickets.add(newTicket());
+            }
+        }
+        for (int i = 0; i < granted.size(); i++) {
+            Waiter waiter = granted.get(i);
+            timeouts.removeCallbacks(waiter);
+            waiter.callback.onAcquired(tickets.get(i));
+        }
+    }
+
+    /**
+     * Executor on which capture callbacks and processing run
+     */
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @return Number of captures currently reserved (in flight, queued or processing)
+     */
+    public int getPendingCount() {
+        return totalSlots - slots.availablePermits();
+    }
+
+    /**
+     * @return true once {@link #shutdown()} has been called
+     */
+    public boolean isShutdown() {
+        return closing;
+    }
+
+    /**
+     * Stop accepting new captures. Already reserved captures still finish and
+     * deliver; the worker threads are released once the pipeline drains.
+     */
+    public void shutdown() {
+        closing = true;
+        List<Waiter> parked;
+        synchronized (waiters) {
+            parked = new ArrayList<>(waiters);
+            waiters.clear();
+        }
+        for (Waiter waiter : parked) {
+            timeouts.removeCallbacks(waiter);
+            waiter.callback.onBusy("Capture processing pipeline is shut down");
+        }
+        shutdownIfIdle();
+    }
+
+    private void shutdownIfIdle() {
+        if (closing && slots.availablePermits() == totalSlots && !executor.isShutdown()) {
+            executor.shutdown();
+            // Captures that finished after stop() released their bitmaps back into the pool
+            BitmapPool.get().clear();
+            Log.d(TAG, "Capture processing pipeline drained and shut down");
+        }
+    }
+
+    private void deliverInOrder(long sequence, Runnable delivery) {
+        synchronized (deliveryLock) {
+            readyDeliveries.put(sequence, delivery);
+            while (!readyDeliveries.isEmpty() && readyDeliveries.firstKey() == nextToDeliver) {
+                Runnable next = readyDeliveries.pollFirstEntry().getValue();
+                nextToDeliver++;
+                try {
+                    next.run();
+                } catch (Exception e) {
+                    Log.e(TAG, "Capture delivery failed: " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    private static class ProcessingThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, "CaptureProcessing-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package dev.hemang.cameramulticapture;
+
+import java.io.IOException;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.Okio;
+
+/**
+ * Request body wrapper that feeds every byte it writes into an {@link UploadChecksum}.
+ */
+public class ChecksumRequestBody extends RequestBody {
+    private final RequestBody delegate;
+    private final UploadChecksum checksum;
+    private final boolean wholeContent;
+
+    /**
+     * @param wholeContent The body is the entire content: the checksum is reset if
+     *                     OkHttp writes the body again. Otherwise (one chunk of many)
+     *                     the body is one-shot, so its bytes are never counted twice.
+     */
+    public ChecksumRequestBody(RequestBody delegate, UploadChecksum checksum, boolean wholeContent) {
+        this.delegate = delegate;
+        this.checksum = checksum;
+        this.wholeContent = wholeContent;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return delegate.contentType();
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        return delegate.contentLength();
+    }
+
+    @Override
+    public boolean isOneShot() {
+        return !wholeContent || delegate.isOneShot();
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        if (wholeContent) {
+            checksum.reset();
+        }
+        BufferedSink buffered = Okio.buffer(new ForwardingSink(sink) {
+            @Override
+            public void write(Buffer source, long byteCount) throws IOException {
+                // Copy out of the segments before the delegate consumes them
+                source.copyTo(checksum, 0, byteCount);
+                super.write(source, byteCount);
+            }
+        });
+        delegate.writeTo(buffered);
+        buffered.flush();
+    }
+
+    /**
+     * Body of a trailing form field holding the checksum of the parts written before it
+     */
+    public static RequestBody trailingField(UploadChecksum checksum, String encoding) {
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return null;
+            }
+
+            @Override
+            public long contentLength() {
+                return checksum.encodedLength(encoding);
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                sink.writeUtf8(checksum.encode(encoding));
+            }
+        };
+    }
+}
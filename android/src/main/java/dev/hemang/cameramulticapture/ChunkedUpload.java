@@ -0,0 +1,328 @@
+package dev.hemang.cameramulticapture;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Locale;
+
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.ByteString;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * Uploads a file in fixed-size chunks, checkpointing after every chunk the server
+ * acknowledges so an interrupted upload resumes instead of starting from byte zero.
+ *
+ * Two protocols are supported:
+ * <ul>
+ *   <li>Content-Range: each chunk is a PUT to the endpoint with
+ *       {@code Content-Range: bytes start-end/total}; intermediate chunks are
+ *       acknowledged with 308 (or any 2xx), and a 308's {@code Range} header,
+ *       when present, tells us how much the server actually has.</li>
+ *   <li>Block list (Azure block blob style): each chunk is a PUT with
+ *       {@code comp=block&blockid=...}, followed by a {@code comp=blocklist}
+ *       PUT that commits the blocks in order.</li>
+ * </ul>
+ * An optional checksum of the whole file is computed as the chunks stream out and
+ * sent with the last request: on the final chunk for Content-Range (that chunk is
+ * hashed before it is sent, the only bytes read twice) and on the block list
+ * commit otherwise. A resumed upload hashes the already-sent prefix first.
+ */
+public class ChunkedUpload {
+    private static final String TAG = "ChunkedUpload";
+
+    public static final int PROTOCOL_CONTENT_RANGE = 0;
+    public static final int PROTOCOL_BLOCK_LIST = 1;
+
+    /** Smallest chunk accepted; smaller values would mean one request per few KB */
+    public static final int MIN_CHUNK_SIZE = 256 * 1024;
+
+    private static final MediaType MEDIA_TYPE_XML = MediaType.parse("application/xml; charset=utf-8");
+
+    /** Consecutive 308s that acknowledge nothing new before the upload is given up */
+    static final int MAX_STALLED_CHUNKS = 3;
+
+    /**
+     * A request the server answered with a non-success status
+     */
+    public static class HttpException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public final int code;
+        /** Delay the server asked for through Retry-After, or -1 */
+        public final long retryAfterMillis;
+
+        HttpException(int code, String message, long retryAfterMillis) {
+            super("HTTP " + code + ": " + message);
+            this.code = code;
+            this.retryAfterMillis = retryAfterMillis;
+        }
+    }
+
+    private final UploadCheckpoints checkpoints;
+    private final String jobId;
+    private final File file;
+    private final HttpUrl endpoint;
+    private final Headers headers;
+    private final MediaType mediaType;
+    private final int chunkSize;
+    private final int protocol;
+    private final int maxConnectionsPerHost;
+    private UploadProgressReporter progress;
+    private boolean highPriority = false;
+    private UploadChecksum checksum;
+    private String checksumHeader;
+    private String checksumEncoding;
+
+    public ChunkedUpload(UploadCheckpoints checkpoints, String jobId, File file, String endpoint, Headers headers,
+                         MediaType mediaType, int chunkSize, int protocol, int maxConnectionsPerHost) {
+        this.checkpoints = checkpoints;
+        this.jobId = jobId;
+        this.file = file;
+        this.endpoint = HttpUrl.get(endpoint);
+        this.headers = headers;
+        this.mediaType = mediaType;
+        this.chunkSize = Math.max(MIN_CHUNK_SIZE, chunkSize);
+        this.protocol = protocol;
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    /**
+     * @param progress Receives the absolute number of bytes sent, including chunks from earlier runs
+     */
+    public void setProgressReporter(UploadProgressReporter progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * @param highPriority Send chunks outside the engine's global limit
+     */
+    public void setHighPriority(boolean highPriority) {
+        this.highPriority = highPriority;
+    }
+
+    /**
+     * @param checksum Receives the whole file's bytes
+     * @param header Header carrying the checksum on the last request, or null to only compute it
+     * @param encoding Encoding of the header value
+     */
+    public void setChecksum(UploadChecksum checksum, String header, String encoding) {
+        this.checksum = checksum;
+        this.checksumHeader = header;
+        this.checksumEncoding = encoding;
+    }
+
+    /**
+     * Upload the remaining chunks. The checkpoint is kept on failure and cleared on success.
+     * @throws HttpException if the server answered a chunk with an error status, or answered
+     *         {@value #MAX_STALLED_CHUNKS} chunks in a row with a 308 that acknowledged nothing new
+     * @throws IOException if the transfer was interrupted; the next run resumes from the checkpoint
+     */
+    public void run() throws IOException {
+        long total = file.length();
+        UploadCheckpoints.Checkpoint checkpoint = checkpoints.load(jobId, file, chunkSize);
+        long offset = checkpoint.offset;
+        int chunks = checkpoint.chunks;
+        if (offset > 0) {
+            Log.d(TAG, "Resuming " + jobId + " at " + offset + "/" + total + " bytes");
+        }
+        if (progress != null) {
+            progress.update(offset);
+        }
+        if (checksum != null) {
+            checksum.reset();
+            checksum.update(file, 0, offset);
+        }
+
+        int stalled = 0;
+        while (offset < total || (total == 0 && chunks == 0)) {
+            long length = Math.min(chunkSize, total - offset);
+            if (protocol == PROTOCOL_BLOCK_LIST) {
+                putBlock(chunks, offset, length);
+                offset += length;
+            } else {
+                long acknowledged = putRange(offset, length, total);
+                if (checksum != null && acknowledged != offset + length) {
+                    // The server kept a different amount than was sent; rebuild the prefix
+                    checksum.reset();
+                    checksum.update(file, 0, acknowledged);
+                }
+                // A server that keeps answering 308 without storing anything would loop forever
+                stalled = length > 0 && acknowledged <= offset ? stalled + 1 : 0;
+                if (stalled >= MAX_STALLED_CHUNKS) {
+                    checkpoints.save(jobId, file, chunkSize, new UploadCheckpoints.Checkpoint(acknowledged, chunks));
+                    throw new HttpException(308, "Server acknowledged no new bytes after " + stalled
+                        + " chunks at offset " + acknowledged, -1);
+                }
+                offset = acknowledged;
+            }
+            chunks++;
+            checkpoints.save(jobId, file, chunkSize, new UploadCheckpoints.Checkpoint(offset, chunks));
+        }
+
+        if (protocol == PROTOCOL_BLOCK_LIST) {
+            commitBlockList(chunks);
+        }
+        checkpoints.clear(jobId);
+        Log.d(TAG, "Chunked upload completed: " + jobId + " (" + chunks + " chunks)");
+    }
+
+    /**
+     * @return Offset the server has acknowledged after this chunk
+     */
+    private long putRange(long offset, long length, long total) throws IOException {
+        String range = length > 0
+            ? String.format(Locale.US, "bytes %d-%d/%d", offset, offset + length - 1, total)
+            : "bytes */0";
+        boolean last = offset + length >= total;
+        Request.Builder builder = new Request.Builder()
+            .url(endpoint)
+            .headers(headers)
+            .header("Content-Range", range);
+        if (last && checksum != null && checksumHeader != null) {
+            // The header goes before the body, so the last chunk can't be hashed in flight
+            checksum.update(file, offset, length);
+            builder.header(checksumHeader, checksum.encode(checksumEncoding))
+                .put(chunkBody(offset, length, false));
+        } else {
+            builder.put(chunkBody(offset, length, checksum != null));
+        }
+        Request request = builder.build();
+        return UploadEngine.get().execute(request, maxConnectionsPerHost, highPriority, response -> {
+            int code = response.code();
+            if (code == 308) {
+                // "Range: bytes=0-N" is what the server actually stored
+                String stored = response.header("Range");
+                if (stored != null && stored.startsWith("bytes=")) {
+                    int dash = stored.indexOf('-');
+                    try {
+                        return Long.parseLong(stored.substring(dash + 1).trim()) + 1;
+                    } catch (NumberFormatException e) {
+                        Log.w(TAG, "Ignoring malformed Range header: " + stored);
+                    }
+                }
+                return offset + length;
+            }
+            if (!response.isSuccessful()) {
+                throw httpError(response);
+            }
+            return offset + length;
+        });
+    }
+
+    private void putBlock(int index, long offset, long length) throws IOException {
+        HttpUrl url = endpoint.newBuilder()
+            .addQueryParameter("comp", "block")
+            .addQueryParameter("blockid", blockId(index))
+            .build();
+        Request request = new Request.Builder()
+            .url(url)
+            .headers(headers)
+            .put(chunkBody(offset, length, checksum != null))
+            .build();
+        UploadEngine.get().execute(request, maxConnectionsPerHost, highPriority, response -> {
+            if (!response.isSuccessful()) {
+                throw httpError(response);
+            }
+            return null;
+        });
+    }
+
+    private void commitBlockList(int count) throws IOException {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"utf-8\"?><BlockList>");
+        for (int i = 0; i < count; i++) {
+            xml.append("<Latest>").append(blockId(i)).append("</Latest>");
+        }
+        xml.append("</BlockList>");
+
+        HttpUrl url = endpoint.newBuilder().addQueryParameter("comp", "blocklist").build();
+        Headers.Builder commitHeaders = headers.newBuilder().removeAll("x-ms-blob-type");
+        if (mediaType != null && headers.get("x-ms-blob-content-type") == null) {
+            commitHeaders.set("x-ms-blob-content-type", mediaType.toString());
+        }
+        if (checksum != null && checksumHeader != null) {
+            commitHeaders.set(checksumHeader, checksum.encode(checksumEncoding));
+        }
+        Request request = new Request.Builder()
+            .url(url)
+            .headers(commitHeaders.build())
+            .put(RequestBody.create(xml.toString(), MEDIA_TYPE_XML))
+            .build();
+        UploadEngine.get().execute(request, maxConnectionsPerHost, highPriority, response -> {
+            if (!response.isSuccessful()) {
+                throw httpError(response);
+            }
+            return null;
+        });
+    }
+
+    private RequestBody chunkBody(long offset, long length, boolean hashed) {
+        RequestBody body = new FileRangeBody(file, offset, length, mediaType);
+        if (hashed) {
+            body = new ChecksumRequestBody(body, checksum, false);
+        }
+        if (progress == null) {
+            return body;
+        }
+        UploadProgressReporter reporter = progress;
+        return new ProgressRequestBody(body, written -> reporter.update(offset + written));
+    }
+
+    /**
+     * Block ids must be Base64 and all the same length within a blob
+     */
+    private static String blockId(int index) {
+        return ByteString.encodeUtf8(String.format(Locale.US, "block-%08d", index)).base64();
+    }
+
+    private static HttpException httpError(okhttp3.Response response) throws IOException {
+        String errorBody = response.body() != null ? response.body().string() : "No error details";
+        return new HttpException(response.code(), response.message() + " - " + errorBody,
+            UploadRetryPolicy.parseRetryAfter(response.headers()));
+    }
+
+    /**
+     * Request body for a byte range of a file, read straight from disk
+     */
+    static class FileRangeBody extends RequestBody {
+        private final File file;
+        private final long offset;
+        private final long length;
+        private final MediaType mediaType;
+
+        FileRangeBody(File file, long offset, long length, MediaType mediaType) {
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+            this.mediaType = mediaType;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return mediaType;
+        }
+
+        @Override
+        public long contentLength() {
+            return length;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            try (FileInputStream in = new FileInputStream(file)) {
+                in.getChannel().position(offset);
+                try (Source source = Okio.source(in)) {
+                    sink.write(source, length);
+                }
+            }
+        }
+    }
+}
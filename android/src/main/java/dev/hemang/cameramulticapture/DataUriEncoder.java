@@ -0,0 +1,132 @@
+package dev.hemang.cameramulticapture;
+
+import android.graphics.Bitmap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encodes bitmaps as JPEG data URIs with as few copies as possible.
+ *
+ * The JPEG is compressed into a growable buffer that is reused per thread,
+ * and Base64-encoded straight from that buffer into a StringBuilder sized
+ * for the final URI, so the only per-call allocations are the builder and
+ * the resulting String.
+ */
+public final class DataUriEncoder {
+    private static final String JPEG_PREFIX = "data:image/jpeg;base64,";
+
+    /** Buffers that grew past this (e.g. a full video frame) are not kept for the next call */
+    private static final int MAX_RETAINED_BUFFER = 512 * 1024;
+
+    private static final char[] ALPHABET =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+
+    private static final ThreadLocal<ReusableBuffer> BUFFER = new ThreadLocal<ReusableBuffer>() {
+        @Override
+        protected ReusableBuffer initialValue() {
+            return new ReusableBuffer();
+        }
+    };
+
+    /**
+     * Writes JPEG bytes, e.g. Bitmap.compress
+     */
+    interface JpegWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private DataUriEncoder() {
+    }
+
+    /**
+     * Compress a bitmap to JPEG and return it as a data URI
+     * @param bitmap Source bitmap
+     * @param quality JPEG quality (0-100)
+     * @return data:image/jpeg;base64,... string
+     */
+    public static String encodeJpeg(Bitmap bitmap, int quality) {
+        try {
+            return encode(out -> bitmap.compress(Bitmap.CompressFormat.JPEG, quality, out));
+        } catch (IOException e) {
+            // The reusable buffer never throws
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Return what the writer produces as a JPEG data URI
+     */
+    static String encode(JpegWriter writer) throws IOException {
+        ReusableBuffer buffer = BUFFER.get();
+        buffer.reset();
+        try {
+            writer.writeTo(buffer);
+
+            int length = buffer.size();
+            StringBuilder builder = new StringBuilder(JPEG_PREFIX.length() + encodedLength(length));
+            builder.append(JPEG_PREFIX);
+            appendBase64(buffer.array(), 0, length, builder);
+            return builder.toString();
+        } finally {
+            if (buffer.array().length > MAX_RETAINED_BUFFER) {
+                BUFFER.remove();
+            }
+        }
+    }
+
+    /**
+     * Number of Base64 characters (with padding) for the given input length
+     */
+    static int encodedLength(int length) {
+        return ((length + 2) / 3) * 4;
+    }
+
+    /**
+     * Append standard padded Base64 without line breaks
+     * @param data Source bytes
+     * @param offset Start offset
+     * @param length Number of bytes to encode
+     * @param out Destination
+     */
+    static void appendBase64(byte[] data, int offset, int length, StringBuilder out) {
+        int end = offset + length;
+        int i = offset;
+        while (end - i >= 3) {
+            int bits = (data[i] & 0xFF) << 16 | (data[i + 1] & 0xFF) << 8 | (data[i + 2] & 0xFF);
+            out.append(ALPHABET[bits >>> 18])
+                .append(ALPHABET[(bits >>> 12) & 0x3F])
+                .append(ALPHABET[(bits >>> 6) & 0x3F])
+                .append(ALPHABET[bits & 0x3F]);
+            i += 3;
+        }
+
+        int remaining = end - i;
+        if (remaining == 1) {
+            int bits = (data[i] & 0xFF) << 16;
+            out.append(ALPHABET[bits >>> 18])
+                .append(ALPHABET[(bits >>> 12) & 0x3F])
+                .append("==");
+        } else if (remaining == 2) {
+            int bits = (data[i] & 0xFF) << 16 | (data[i + 1] & 0xFF) << 8;
+            out.append(ALPHABET[bits >>> 18])
+                .append(ALPHABET[(bits >>> 12) & 0x3F])
+                .append(ALPHABET[(bits >>> 6) & 0x3F])
+                .append('=');
+        }
+    }
+
+    /**
+     * ByteArrayOutputStream that exposes its backing array instead of copying it
+     */
+    private static final class ReusableBuffer extends ByteArrayOutputStream {
+        ReusableBuffer() {
+            super(32 * 1024);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+}
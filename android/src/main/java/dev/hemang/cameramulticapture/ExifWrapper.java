@@ -3,6 +3,7 @@ package dev.hemang.cameramulticapture;
 import androidx.exifinterface.media.ExifInterface;
 import android.util.Log;
 
+import java.io.File;
 import java.io.IOException;
 
 /**
@@ -13,7 +14,8 @@ import java.io.IOException;
  */
 public class ExifWrapper {
     private static final String TAG = "ExifWrapper";
-    private final ExifInterface exif;
+    private final String filePath;
+    private ExifInterface exif;
     
     private final String[] attributes = new String[] {
         ExifInterface.TAG_APERTURE_VALUE,
@@ -46,24 +48,74 @@ public class ExifWrapper {
     };
     
     public ExifWrapper(ExifInterface exif) {
+        this.filePath = null;
         this.exif = exif;
     }
     
+    /**
+     * Orientation reads and resets go through {@link JpegExifOrientation}; the full
+     * ExifInterface is only opened when other attributes are needed.
+     */
     public ExifWrapper(String filePath) throws IOException {
-        this.exif = new ExifInterface(filePath);
+        this.filePath = filePath;
+        if (!new File(filePath).canRead()) {
+            throw new IOException("Cannot read " + filePath);
+        }
+    }
+    
+    private ExifInterface exif() throws IOException {
+        if (exif == null && filePath != null) {
+            exif = new ExifInterface(filePath);
+        }
+        return exif;
     }
     
     /**
-     * Copy EXIF data from this wrapper to a destination file
+     * Copy EXIF data from this wrapper to a destination file.
+     * Splices the source's APP1 segment when possible, otherwise copies attributes one by one.
      * @param destFile Path to destination file
      */
     public void copyExif(String destFile) {
-        if (exif == null) {
-            Log.w(TAG, "Source EXIF is null, cannot copy");
+        if (filePath != null && spliceExif(destFile)) {
             return;
         }
-        
+        copyExifAttributes(destFile);
+    }
+
+    /**
+     * Copy the source's Exif APP1 segment into the destination in a single streaming pass.
+     * Orientation is reset and the dimension tags are set to the destination's size; every
+     * other tag (including maker notes) is kept as is.
+     * @param destFile Path to destination JPEG
+     * @return true if copied, false if the source has no Exif segment or either file isn't a JPEG
+     */
+    public boolean spliceExif(String destFile) {
+        if (filePath == null) {
+            return false;
+        }
         try {
+            if (JpegExifSplicer.copy(new File(filePath), new File(destFile))) {
+                Log.d(TAG, "EXIF segment spliced into " + destFile);
+                return true;
+            }
+        } catch (IOException e) {
+            Log.d(TAG, "EXIF splice not possible: " + e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Copy the known attributes through ExifInterface, which rewrites the destination on save
+     * @param destFile Path to destination file
+     */
+    public void copyExifAttributes(String destFile) {
+        try {
+            ExifInterface exif = exif();
+            if (exif == null) {
+                Log.w(TAG, "Source EXIF is null, cannot copy");
+                return;
+            }
+            
             ExifInterface destExif = new ExifInterface(destFile);
             for (String attribute : attributes) {
                 String value = exif.getAttribute(attribute);
@@ -82,15 +134,26 @@ public class ExifWrapper {
      * Reset orientation to normal (1) after physical rotation
      */
     public void resetOrientation() {
-        if (exif != null) {
+        if (filePath != null && exif == null) {
             try {
+                // A missing tag already reads as normal, so there is nothing to add
+                JpegExifOrientation.writeOrientation(new File(filePath), ExifInterface.ORIENTATION_NORMAL);
+                Log.d(TAG, "EXIF orientation reset to NORMAL");
+                return;
+            } catch (IOException e) {
+                Log.d(TAG, "In-place orientation reset not possible, using ExifInterface: " + e.getMessage());
+            }
+        }
+        try {
+            ExifInterface exif = exif();
+            if (exif != null) {
                 exif.setAttribute(ExifInterface.TAG_ORIENTATION, 
                     String.valueOf(ExifInterface.ORIENTATION_NORMAL));
                 exif.saveAttributes();
                 Log.d(TAG, "EXIF orientation reset to NORMAL");
-            } catch (IOException e) {
-                Log.e(TAG, "Failed to reset orientation: " + e.getMessage(), e);
             }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to reset orientation: " + e.getMessage(), e);
         }
     }
     
@@ -99,10 +162,26 @@ public class ExifWrapper {
      * @return EXIF orientation value
      */
     public int getOrientation() {
-        if (exif == null) {
+        if (filePath != null && exif == null) {
+            try {
+                int orientation = JpegExifOrientation.readOrientation(new File(filePath));
+                return orientation == JpegExifOrientation.NOT_PRESENT
+                    ? ExifInterface.ORIENTATION_NORMAL
+                    : orientation;
+            } catch (IOException e) {
+                Log.d(TAG, "Streaming orientation read not possible, using ExifInterface: " + e.getMessage());
+            }
+        }
+        try {
+            ExifInterface exif = exif();
+            if (exif == null) {
+                return ExifInterface.ORIENTATION_NORMAL;
+            }
+            return exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to read orientation: " + e.getMessage(), e);
             return ExifInterface.ORIENTATION_NORMAL;
         }
-        return exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
     }
 }
 
@@ -0,0 +1,121 @@
+package dev.hemang.cameramulticapture;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Copies capture files into MediaStore entries.
+ *
+ * The target is opened as a file descriptor so the copy can be a single
+ * FileChannel.transferTo, which the kernel serves with sendfile/splice without
+ * passing the bytes through the Java heap. Providers that don't hand out a
+ * descriptor, or descriptors transferTo can't write to, fall back to a loop over a
+ * reused direct buffer of {@link #BUFFER_SIZE}.
+ */
+public final class GalleryFileCopier {
+    private static final String TAG = "GalleryFileCopier";
+
+    static final int BUFFER_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> BUFFER = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+    };
+
+    private GalleryFileCopier() {
+    }
+
+    /**
+     * Write a file's content to a content URI
+     * @return Bytes copied
+     * @throws IOException if the target can't be opened or written
+     */
+    public static long copyToUri(ContentResolver resolver, Uri target, File source) throws IOException {
+        ParcelFileDescriptor descriptor = resolver.openFileDescriptor(target, "w");
+        if (descriptor != null) {
+            try (FileOutputStream out = new ParcelFileDescriptor.AutoCloseOutputStream(descriptor)) {
+                return copy(source, out.getChannel());
+            }
+        }
+        try (OutputStream out = resolver.openOutputStream(target)) {
+            if (out == null) {
+                throw new IOException("Failed to open " + target);
+            }
+            return copy(source, Channels.newChannel(out));
+        }
+    }
+
+    /**
+     * Copy a file to a channel, with transferTo when the target is a file channel
+     * @return Bytes copied
+     */
+    static long copy(File source, WritableByteChannel target) throws IOException {
+        try (FileInputStream in = new FileInputStream(source)) {
+            FileChannel channel = in.getChannel();
+            long size = channel.size();
+            long position = 0;
+            if (target instanceof FileChannel) {
+                position = transfer(channel, size, (FileChannel) target);
+            }
+            if (position < size) {
+                position += copyBuffered(channel, position, target);
+            }
+            return position;
+        }
+    }
+
+    /**
+     * @return Bytes transferred; less than size if transferTo stopped making progress or failed
+     */
+    private static long transfer(FileChannel source, long size, FileChannel target) throws IOException {
+        long start = target.position();
+        long position = 0;
+        try {
+            while (position < size) {
+                long transferred = source.transferTo(position, size - position, target);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "transferTo failed after " + position + " bytes, copying the rest: " + e.getMessage());
+            // A failed call may have written part of its range; continue from the last acknowledged byte
+            target.position(start + position);
+        }
+        return position;
+    }
+
+    private static long copyBuffered(FileChannel source, long position, WritableByteChannel target) throws IOException {
+        ByteBuffer buffer = BUFFER.get();
+        long copied = 0;
+        source.position(position);
+        while (true) {
+            buffer.clear();
+            int read = source.read(buffer);
+            if (read == -1) {
+                break;
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                target.write(buffer);
+            }
+            copied += read;
+        }
+        return copied;
+    }
+}
@@ -0,0 +1,237 @@
+package dev.hemang.cameramulticapture;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Environment;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects photos for the gallery and commits them to MediaStore in batches.
+ *
+ * A batch costs two ContentResolver.applyBatch calls, one for all the inserts
+ * and one that publishes them (clears IS_PENDING) and removes the entries whose
+ * copy failed, instead of two or three provider round trips per photo. A batch is
+ * committed when it reaches the size threshold, when the flush interval passes
+ * after its first photo, or on {@link #flush()} / {@link #shutdown()} at session
+ * end. Commits run on a single background thread, in the order photos were added.
+ */
+public class GallerySaveBatcher {
+    private static final String TAG = "GallerySaveBatcher";
+
+    public static final int MODE_IMMEDIATE = 0;
+    public static final int MODE_DEFERRED = 1;
+
+    /**
+     * A queued photo. galleryUri is set once its batch is committed, and stays null
+     * if it could not be saved.
+     */
+    public static class Item {
+        public final File file;
+        public final String albumName;
+        public final long takenAt;
+        public Uri galleryUri;
+
+        Item(File file, String albumName, long takenAt) {
+            this.file = file;
+            this.albumName = albumName;
+            this.takenAt = takenAt;
+        }
+    }
+
+    public interface Listener {
+        /**
+         * Called on the batcher thread after each committed batch
+         * @param items The batch, in the order the photos were added
+         */
+        void onBatchSaved(List<Item> items);
+    }
+
+    private final ContentResolver resolver;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final Listener listener;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    private List<Item> pending = new ArrayList<>();
+    private ScheduledFuture<?> timer;
+    private boolean closed = false;
+
+    public GallerySaveBatcher(Context context, int batchSize, long flushIntervalMs, Listener listener) {
+        this.resolver = context.getApplicationContext().getContentResolver();
+        this.batchSize = Math.max(1, batchSize);
+        this.flushIntervalMs = flushIntervalMs;
+        this.listener = listener;
+    }
+
+    /**
+     * Queue a photo for the next batch
+     * @return False if the batcher has been shut down
+     */
+    public synchronized boolean add(File file, String albumName) {
+        if (closed) {
+            return false;
+        }
+        pending.add(new Item(file, albumName, System.currentTimeMillis()));
+        if (pending.size() >= batchSize) {
+            submitPending();
+        } else if (timer == null && flushIntervalMs > 0) {
+            timer = executor.schedule(this::flush, flushIntervalMs, TimeUnit.MILLISECONDS);
+        }
+        return true;
+    }
+
+    /**
+     * Commit whatever is queued, without waiting for the threshold or timer
+     */
+    public synchronized void flush() {
+        if (!closed) {
+            submitPending();
+        }
+    }
+
+    /**
+     * Commit whatever is queued and stop. Batches already submitted still finish.
+     */
+    public synchronized void shutdown() {
+        if (closed) {
+            return;
+        }
+        submitPending();
+        closed = true;
+        executor.shutdown();
+    }
+
+    private void submitPending() {
+        if (timer != null) {
+            timer.cancel(false);
+            timer = null;
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<Item> batch = pending;
+        pending = new ArrayList<>();
+        executor.execute(() -> commit(batch));
+    }
+
+    private void commit(List<Item> batch) {
+        long start = System.currentTimeMillis();
+        insert(batch);
+
+        ArrayList<ContentProviderOperation> finish = new ArrayList<>();
+        for (Item item : batch) {
+            if (item.galleryUri == null) {
+                continue;
+            }
+            try {
+                GalleryFileCopier.copyToUri(resolver, item.galleryUri, item.file);
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                    finish.add(ContentProviderOperation.newUpdate(item.galleryUri)
+                        .withValue(MediaStore.Images.Media.IS_PENDING, 0)
+                        .build());
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to copy " + item.file.getName() + " to the gallery: " + e.getMessage());
+                finish.add(ContentProviderOperation.newDelete(item.galleryUri).build());
+                item.galleryUri = null;
+            }
+        }
+        if (!finish.isEmpty()) {
+            try {
+                resolver.applyBatch(MediaStore.AUTHORITY, finish);
+            } catch (Exception e) {
+                Log.w(TAG, "Batch publish of " + batch.size() + " failed, publishing one at a time: " + e.getMessage());
+                publish(batch);
+            }
+        }
+
+        Log.d(TAG, "Saved batch of " + batch.size() + " to the gallery in " + (System.currentTimeMillis() - start) + " ms");
+        try {
+            listener.onBatchSaved(batch);
+        } catch (Exception e) {
+            Log.e(TAG, "Gallery batch listener failed", e);
+        }
+    }
+
+    /**
+     * Create the MediaStore entries of a batch in one applyBatch, falling back to one
+     * insert per item if the batch is rejected
+     */
+    private void insert(List<Item> batch) {
+        ArrayList<ContentProviderOperation> inserts = new ArrayList<>(batch.size());
+        for (Item item : batch) {
+            inserts.add(ContentProviderOperation.newInsert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI)
+                .withValues(newImageValues(item.albumName, item.takenAt))
+                .build());
+        }
+        try {
+            ContentProviderResult[] results = resolver.applyBatch(MediaStore.AUTHORITY, inserts);
+            for (int i = 0; i < batch.size() && i < results.length; i++) {
+                batch.get(i).galleryUri = results[i].uri;
+            }
+            return;
+        } catch (Exception e) {
+            Log.w(TAG, "Batch insert of " + batch.size() + " failed, inserting one at a time: " + e.getMessage());
+        }
+        for (Item item : batch) {
+            try {
+                item.galleryUri = resolver.insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI,
+                    newImageValues(item.albumName, item.takenAt));
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to create MediaStore entry for " + item.file.getName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void publish(List<Item> batch) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            return;
+        }
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.Images.Media.IS_PENDING, 0);
+        for (Item item : batch) {
+            if (item.galleryUri == null) {
+                continue;
+            }
+            try {
+                resolver.update(item.galleryUri, values, null, null);
+            } catch (Exception e) {
+                // An entry left pending is hidden from other apps and cleaned up by MediaStore
+                Log.e(TAG, "Failed to publish " + item.galleryUri + ": " + e.getMessage());
+                item.galleryUri = null;
+            }
+        }
+    }
+
+    /**
+     * Values for a new JPEG entry, pending (on Android 10+) until its content is written
+     * @param takenAt Capture time in milliseconds
+     */
+    static ContentValues newImageValues(String albumName, long takenAt) {
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.Images.Media.DISPLAY_NAME, "IMG_" + takenAt + ".jpg");
+        values.put(MediaStore.Images.Media.MIME_TYPE, "image/jpeg");
+        values.put(MediaStore.Images.Media.DATE_ADDED, takenAt / 1000);
+        values.put(MediaStore.Images.Media.DATE_TAKEN, takenAt);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            values.put(MediaStore.Images.Media.RELATIVE_PATH, Environment.DIRECTORY_PICTURES + "/" + albumName);
+            values.put(MediaStore.Images.Media.IS_PENDING, 1);
+        }
+        return values;
+    }
+}
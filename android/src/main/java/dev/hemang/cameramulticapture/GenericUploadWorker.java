@@ -11,24 +11,72 @@ import com.getcapacitor.JSObject;
 import org.json.JSONObject;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.concurrent.TimeUnit;
 import okhttp3.*;
 
 public class GenericUploadWorker extends Worker {
     private static final String TAG = "GenericUploadWorker";
     private static final MediaType MEDIA_TYPE_JPEG = MediaType.parse("image/jpeg");
     
+    /** Progress data keys, observed by the plugin through WorkInfo */
+    public static final String PROGRESS_BYTES_SENT = "bytesSent";
+    public static final String PROGRESS_TOTAL_BYTES = "totalBytes";
+    public static final String PROGRESS_BYTES_PER_SECOND = "bytesPerSecond";
+    
+    /** Output data keys of a successful upload */
+    public static final String OUTPUT_ORIGINAL_BYTES = "originalBytes";
+    public static final String OUTPUT_TRANSMITTED_BYTES = "transmittedBytes";
+    public static final String OUTPUT_CHECKSUM = "checksum";
+    
+    /** Form field used for the checksum of a multipart upload when neither header nor field was given */
+    private static final String DEFAULT_CHECKSUM_FORM_FIELD = "checksum";
+    
     private static class UploadResult {
         boolean success;
         String errorMessage;
+        /** Another attempt may succeed (throttling, server error, transport failure) */
+        boolean retryable;
+        /** Response status of the failed request, or 0 if there was none */
+        int httpCode;
+        /** Delay the server asked for, or -1 */
+        long retryAfterMillis = -1;
         
         UploadResult(boolean success, String errorMessage) {
+            this(success, errorMessage, false);
+        }
+        
+        UploadResult(boolean success, String errorMessage, boolean retryable) {
             this.success = success;
             this.errorMessage = errorMessage;
+            this.retryable = retryable;
+        }
+        
+        static UploadResult httpError(int code, String errorMessage, long retryAfterMillis) {
+            UploadResult result = new UploadResult(false, errorMessage, UploadRetryPolicy.isRetryableStatus(code));
+            result.httpCode = code;
+            result.retryAfterMillis = retryAfterMillis;
+            return result;
+        }
+        
+        String outcome() {
+            if (success) {
+                return UploadRetryPolicy.OUTCOME_SUCCESS;
+            }
+            return retryable ? UploadRetryPolicy.OUTCOME_RETRYABLE : UploadRetryPolicy.OUTCOME_PERMANENT;
         }
     }
     
+    /** High-priority jobs bypass the engine's global limit */
+    private boolean highPriority = false;
+    
+    /** Checksum of the uploaded bytes and where it is sent; checksum is null when disabled */
+    private UploadChecksum checksum;
+    private String checksumHeader;
+    private String checksumFormField;
+    private String checksumEncoding;
+    
     public GenericUploadWorker(@NonNull Context context, @NonNull WorkerParameters params) {
         super(context, params);
     }
@@ -36,22 +84,116 @@ public class GenericUploadWorker extends Worker {
     @NonNull
     @Override
     public Result doWork() {
+        UploadJobStore store = UploadJobStore.get(getApplicationContext());
+        String jobId = getInputData().getString(UploadJob.KEY_JOB_ID);
         try {
-            String jobId = getInputData().getString("jobId");
-            String imageUri = getInputData().getString("imageUri");
-            String uploadEndpoint = getInputData().getString("uploadEndpoint");
-            String headersJson = getInputData().getString("headers");
-            String formDataJson = getInputData().getString("formData");
-            String method = getInputData().getString("method");
-            String fileName = getInputData().getString("fileName");
-            boolean deleteAfterUpload = getInputData().getBoolean("deleteAfterUpload", true);
+            UploadJob job = jobId != null ? store.get(jobId) : null;
+            if (job == null) {
+                // Enqueued before the job store existed: everything is in the input data
+                job = UploadJob.fromLegacyData(getInputData());
+                store.insert(Collections.singletonList(job));
+            }
+            if (job.nextAttemptAt > System.currentTimeMillis()) {
+                // WorkManager's backoff came back before the server's Retry-After
+                Log.d(TAG, "Deferring " + jobId + " until " + job.nextAttemptAt);
+                return Result.retry();
+            }
+            highPriority = UploadScheduler.PRIORITY_HIGH.equals(job.priority);
+            String imageUri = job.imageUri;
+            String uploadEndpoint = job.uploadEndpoint;
+            String headersJson = job.headers;
+            String formDataJson = job.formData;
+            String method = job.method;
+            String fileName = job.fileName;
+            boolean deleteAfterUpload = job.deleteAfterUpload;
+            int maxConnectionsPerHost = job.maxConnectionsPerHost;
+            int chunkSize = job.chunkSize;
+            int chunkProtocol = job.chunkProtocol;
+            UploadRetryPolicy retryPolicy = new UploadRetryPolicy(job.maxAttempts);
+            if (job.checksumAlgorithm != null) {
+                setUpChecksum(job);
+            }
+            
+            File sourceFile = new File(Uri.parse(imageUri).getPath());
+            File uploadFile = sourceFile;
+            MediaType mediaType = MEDIA_TYPE_JPEG;
+            UploadImageTransform transform = job.transform;
+            File transformedFile = transform != null ? transform.outputFile(getApplicationContext(), jobId) : null;
+            if (transform != null && sourceFile.exists()) {
+                try {
+                    uploadFile = transform.apply(sourceFile, transformedFile);
+                    if (uploadFile != sourceFile) {
+                        mediaType = transform.getMediaType();
+                        fileName = replaceExtension(fileName, transform.getExtension());
+                    }
+                } catch (IOException | RuntimeException e) {
+                    Log.w(TAG, "Pre-upload transform failed, uploading original: " + e.getMessage());
+                }
+            }
+            long originalBytes = sourceFile.length();
+            long transmittedBytes = uploadFile.length();
             
-            Log.d(TAG, "Starting upload job: " + jobId);
+            int attempt = job.attempts;
+            UploadResult result;
+            while (true) {
+                attempt++;
+                UploadEngine.BatchSlot slot;
+                try {
+                    slot = acquireBatchSlot(job);
+                } catch (InterruptedIOException e) {
+                    // Stopped while waiting for a batch slot; nothing was sent
+                    store.scheduleRetry(jobId, 0, e.getMessage());
+                    return Result.retry();
+                }
+                try {
+                    store.markStarted(jobId);
+                    Log.d(TAG, "Starting upload job: " + jobId + " (attempt " + attempt + "/" + retryPolicy.getMaxAttempts() + ")");
+                    long startedAt = System.currentTimeMillis();
+                    result = chunkSize > 0
+                        ? performChunkedUpload(jobId, uploadFile, mediaType, uploadEndpoint, headersJson, chunkSize,
+                            chunkProtocol, maxConnectionsPerHost)
+                        : performHttpUpload(uploadFile, mediaType, uploadEndpoint, headersJson, formDataJson, method, fileName,
+                            maxConnectionsPerHost);
+                    store.recordAttempt(jobId, attempt, startedAt, System.currentTimeMillis() - startedAt,
+                        result.outcome(), result.httpCode, result.errorMessage);
+                } finally {
+                    if (slot != null) {
+                        slot.close();
+                    }
+                }
+                
+                if (result.success || !result.retryable) {
+                    break;
+                }
+                if (!retryPolicy.canRetry(attempt)) {
+                    result = new UploadResult(false, "Gave up after " + attempt + " attempts: " + result.errorMessage);
+                    break;
+                }
+                long delay = retryPolicy.delayMillis(attempt, result.retryAfterMillis);
+                if (delay > UploadRetryPolicy.MAX_IN_WORKER_WAIT_MS || isStopped()) {
+                    // Hand the wait to WorkManager; the next run checks nextAttemptAt
+                    Log.w(TAG, "Upload attempt " + attempt + " failed, retrying in " + delay + "ms: " + jobId
+                        + " - " + result.errorMessage);
+                    store.scheduleRetry(jobId, System.currentTimeMillis() + delay, result.errorMessage);
+                    return Result.retry();
+                }
+                Log.w(TAG, "Upload attempt " + attempt + " failed, retrying in " + delay + "ms: " + result.errorMessage);
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    store.scheduleRetry(jobId, 0, result.errorMessage);
+                    return Result.retry();
+                }
+            }
             
-            UploadResult result = performHttpUpload(imageUri, uploadEndpoint, headersJson, formDataJson, method, fileName);
+            if (transformedFile != null) {
+                transformedFile.delete();
+            }
             
             if (result.success) {
-                Log.d(TAG, "Upload completed successfully: " + jobId);
+                Log.d(TAG, "Upload completed successfully: " + jobId + " (" + transmittedBytes + " of "
+                    + originalBytes + " original bytes sent)");
                 
                 if (deleteAfterUpload) {
                     try {
@@ -64,39 +206,153 @@ public class GenericUploadWorker extends Worker {
                     }
                 }
                 
-                return Result.success();
+                String checksumValue = checksum != null ? checksum.encode(checksumEncoding) : null;
+                store.markCompleted(jobId, checksumValue);
+                Data.Builder output = new Data.Builder()
+                    .putLong(OUTPUT_ORIGINAL_BYTES, originalBytes)
+                    .putLong(OUTPUT_TRANSMITTED_BYTES, transmittedBytes);
+                if (checksumValue != null) {
+                    output.putString(OUTPUT_CHECKSUM, checksumValue);
+                }
+                return Result.success(output.build());
             } else {
                 Log.e(TAG, "Upload failed: " + jobId + " - " + result.errorMessage);
+                String error = result.errorMessage != null ? result.errorMessage : "Upload failed";
+                store.updateStatus(jobId, UploadJob.STATUS_FAILED, error);
                 Data errorData = new Data.Builder()
-                    .putString("error", result.errorMessage != null ? result.errorMessage : "Upload failed")
+                    .putString("error", error)
                     .build();
                 return Result.failure(errorData);
             }
             
         } catch (Exception e) {
-            Log.e(TAG, "Upload error: " + e.getMessage(), e);
+            // Anything reaching here is a bug or bad job data; retrying won't help
+            String error = "Upload error: " + e.getClass().getSimpleName() + " - " + e.getMessage();
+            Log.e(TAG, error, e);
+            if (jobId != null) {
+                store.updateStatus(jobId, UploadJob.STATUS_FAILED, error);
+            }
             Data errorData = new Data.Builder()
-                .putString("error", e.getMessage())
+                .putString("error", error)
                 .build();
-            return Result.retry();
+            return Result.failure(errorData);
+        }
+    }
+    
+    /**
+     * @return A slot in the job's batch limit, or null for jobs outside a limited batch
+     */
+    private static UploadEngine.BatchSlot acquireBatchSlot(UploadJob job) throws InterruptedIOException {
+        if (job.batchId == null || job.maxParallel <= 0) {
+            return null;
+        }
+        return UploadEngine.get().acquireBatchSlot(job.batchId, job.maxParallel);
+    }
+    
+    /**
+     * Pick where the checksum goes. MD5 has standard headers (Content-MD5, and
+     * x-ms-blob-content-md5 on an Azure block list commit); other algorithms are
+     * only sent when a header or form field was configured. Multipart uploads
+     * default to a trailing form field, the one placement that needs no extra read.
+     */
+    private void setUpChecksum(UploadJob job) {
+        checksum = new UploadChecksum(job.checksumAlgorithm);
+        checksumEncoding = job.checksumEncoding;
+        checksumHeader = job.checksumHeader;
+        checksumFormField = null;
+        boolean md5 = UploadChecksum.ALGORITHM_MD5.equals(job.checksumAlgorithm);
+        if (job.chunkSize > 0) {
+            if (checksumHeader == null && md5) {
+                checksumHeader = job.chunkProtocol == ChunkedUpload.PROTOCOL_BLOCK_LIST
+                    ? "x-ms-blob-content-md5"
+                    : "Content-MD5";
+            }
+        } else if ("PUT".equalsIgnoreCase(job.method)) {
+            if (checksumHeader == null && md5) {
+                checksumHeader = "Content-MD5";
+            }
+        } else if (job.checksumFormField != null || checksumHeader == null) {
+            checksumFormField = job.checksumFormField != null ? job.checksumFormField : DEFAULT_CHECKSUM_FORM_FIELD;
+            checksumHeader = null;
         }
     }
     
-    private UploadResult performHttpUpload(String imageUri, String endpoint, String headersJson, 
-                                    String formDataJson, String method, String fileName) {
+    /**
+     * Progress reporter that publishes through setProgressAsync
+     */
+    private UploadProgressReporter newProgressReporter(long totalBytes) {
+        return new UploadProgressReporter(totalBytes, (bytesSent, total, bytesPerSecond) ->
+            setProgressAsync(new Data.Builder()
+                .putLong(PROGRESS_BYTES_SENT, bytesSent)
+                .putLong(PROGRESS_TOTAL_BYTES, total)
+                .putLong(PROGRESS_BYTES_PER_SECOND, bytesPerSecond)
+                .build()));
+    }
+    
+    /**
+     * Upload in chunks, resuming from the job's checkpoint. The checkpoint is kept
+     * for retryable failures and dropped when the server rejects a chunk for good.
+     */
+    private UploadResult performChunkedUpload(String jobId, File imageFile, MediaType mediaType, String endpoint,
+                                              String headersJson, int chunkSize, int protocol,
+                                              int maxConnectionsPerHost) {
+        UploadCheckpoints checkpoints = new UploadCheckpoints(getApplicationContext());
         try {
-            OkHttpClient client = new OkHttpClient.Builder()
-                .connectTimeout(45, TimeUnit.SECONDS)
-                .writeTimeout(120, TimeUnit.SECONDS)
-                .readTimeout(90, TimeUnit.SECONDS)
-                .retryOnConnectionFailure(true)
-                .connectionPool(new okhttp3.ConnectionPool(10, 5, TimeUnit.MINUTES))
-                .build();
+            if (!imageFile.exists()) {
+                Log.e(TAG, "Image file not found: " + imageFile);
+                checkpoints.clear(jobId);
+                return new UploadResult(false, "Image file not found: " + imageFile);
+            }
+            
+            Headers.Builder headers = new Headers.Builder();
+            JSONObject headersObject = new JSONObject(headersJson);
+            Iterator<String> headerKeys = headersObject.keys();
+            while (headerKeys.hasNext()) {
+                String key = headerKeys.next();
+                headers.add(key, headersObject.getString(key));
+            }
+            
+            ChunkedUpload upload = new ChunkedUpload(checkpoints, jobId, imageFile, endpoint, headers.build(),
+                mediaType, chunkSize, protocol, maxConnectionsPerHost);
+            upload.setProgressReporter(newProgressReporter(imageFile.length()));
+            upload.setHighPriority(highPriority);
+            if (checksum != null) {
+                upload.setChecksum(checksum, checksumHeader, checksumEncoding);
+            }
+            upload.run();
+            return new UploadResult(true, null);
+            
+        } catch (ChunkedUpload.HttpException e) {
+            Log.e(TAG, "Chunk rejected: " + e.getMessage());
+            UploadResult result = UploadResult.httpError(e.code, e.getMessage(), e.retryAfterMillis);
+            if (!result.retryable) {
+                checkpoints.clear(jobId);
+            }
+            return result;
+            
+        } catch (IOException e) {
+            boolean retryable = UploadRetryPolicy.isRetryable(e);
+            if (!retryable) {
+                checkpoints.clear(jobId);
+            }
+            return new UploadResult(false, "Upload interrupted: " + e.getClass().getSimpleName() + " - " + e.getMessage(),
+                retryable);
             
-            File imageFile = new File(Uri.parse(imageUri).getPath());
+        } catch (Exception e) {
+            String errorMsg = "Upload failed: " + e.getClass().getSimpleName() + " - " + e.getMessage();
+            Log.e(TAG, "Chunked upload error: " + errorMsg, e);
+            checkpoints.clear(jobId);
+            return new UploadResult(false, errorMsg);
+        }
+    }
+    
+    private UploadResult performHttpUpload(File imageFile, MediaType mediaType, String endpoint, String headersJson, 
+                                    String formDataJson, String method, String fileName,
+                                    int maxConnectionsPerHost) {
+        try {
             if (!imageFile.exists()) {
-                Log.e(TAG, "Image file not found: " + imageUri);
-                return new UploadResult(false, "Image file not found: " + imageUri);
+                Log.e(TAG, "Image file not found: " + imageFile);
+                return new UploadResult(false, "Image file not found: " + imageFile);
             }
             
             JSONObject headers = new JSONObject(headersJson);
@@ -111,9 +367,20 @@ public class GenericUploadWorker extends Worker {
                 requestBuilder.addHeader(key, value);
             }
             
+            // A header precedes the body, so it needs the checksum before streaming starts;
+            // otherwise the checksum is computed as the file goes out
+            RequestBody fileBody = RequestBody.create(mediaType, imageFile);
+            if (checksum != null && checksumHeader != null) {
+                checksum.reset();
+                checksum.update(imageFile, 0, imageFile.length());
+                requestBuilder.header(checksumHeader, checksum.encode(checksumEncoding));
+            } else if (checksum != null) {
+                fileBody = new ChecksumRequestBody(fileBody, checksum, true);
+            }
+            
             RequestBody requestBody;
             if ("PUT".equalsIgnoreCase(method)) {
-                requestBody = RequestBody.create(MEDIA_TYPE_JPEG, imageFile);
+                requestBody = fileBody;
             } else {
                 // For POST requests, use multipart form
                 MultipartBody.Builder multipartBuilder = new MultipartBody.Builder()
@@ -128,12 +395,19 @@ public class GenericUploadWorker extends Worker {
                 
                 String finalFileName = (fileName != null && !fileName.isEmpty()) ? 
                     fileName : "photo_" + System.currentTimeMillis() + ".jpg";
-                multipartBuilder.addFormDataPart("file", finalFileName,
-                    RequestBody.create(MEDIA_TYPE_JPEG, imageFile));
+                multipartBuilder.addFormDataPart("file", finalFileName, fileBody);
+                if (checksum != null && checksumFormField != null) {
+                    // After the file part, so its value is final by the time it is written
+                    multipartBuilder.addFormDataPart(checksumFormField, null,
+                        ChecksumRequestBody.trailingField(checksum, checksumEncoding));
+                }
                 
                 requestBody = multipartBuilder.build();
             }
             
+            UploadProgressReporter progress = newProgressReporter(requestBody.contentLength());
+            requestBody = new ProgressRequestBody(requestBody, progress::update);
+            
             if ("PUT".equalsIgnoreCase(method)) {
                 requestBuilder.put(requestBody);
             } else {
@@ -141,33 +415,43 @@ public class GenericUploadWorker extends Worker {
             }
             
             Request request = requestBuilder.build();
-            try (Response response = client.newCall(request).execute()) {
+            return UploadEngine.get().execute(request, maxConnectionsPerHost, highPriority, response -> {
                 boolean success = response.isSuccessful();
-                Log.d(TAG, "Upload response: " + response.code() + " - " + response.message());
+                Log.d(TAG, "Upload response: " + response.code() + " - " + response.message() + " (" + response.protocol() + ")");
                 
                 if (!success) {
                     String errorBody = response.body() != null ? response.body().string() : "No error details";
                     Log.e(TAG, "Upload failed with response: " + response.code() + " - " + errorBody);
-                    return new UploadResult(false, "HTTP " + response.code() + ": " + response.message() + " - " + errorBody);
+                    return UploadResult.httpError(response.code(),
+                        "HTTP " + response.code() + ": " + response.message() + " - " + errorBody,
+                        UploadRetryPolicy.parseRetryAfter(response.headers()));
                 }
                 
                 return new UploadResult(true, null);
-            }
+            });
             
         } catch (java.net.ConnectException e) {
-            String errorMsg = "Connection failed to Azure Blob Storage. This usually happens when uploading multiple files simultaneously. Try uploading fewer files at once.";
+            String errorMsg = "Connection failed to " + Uri.parse(endpoint).getHost() + ". Check the network and the upload endpoint.";
             Log.e(TAG, errorMsg + " Details: " + e.getMessage(), e);
-            return new UploadResult(false, errorMsg);
+            return new UploadResult(false, errorMsg, true);
             
         } catch (java.net.SocketTimeoutException e) {
             String errorMsg = "Upload timeout. The file may be too large or network is slow.";
             Log.e(TAG, errorMsg + " Details: " + e.getMessage(), e);
-            return new UploadResult(false, errorMsg);
+            return new UploadResult(false, errorMsg, true);
             
         } catch (Exception e) {
             String errorMsg = "Upload failed: " + e.getClass().getSimpleName() + " - " + e.getMessage();
             Log.e(TAG, "HTTP upload error: " + errorMsg, e);
-            return new UploadResult(false, errorMsg);
+            return new UploadResult(false, errorMsg, UploadRetryPolicy.isRetryable(e));
+        }
+    }
+    
+    private static String replaceExtension(String fileName, String extension) {
+        if (fileName == null || fileName.isEmpty()) {
+            return fileName;
         }
+        int dot = fileName.lastIndexOf('.');
+        return (dot > 0 ? fileName.substring(0, dot) : fileName) + extension;
     }
 }
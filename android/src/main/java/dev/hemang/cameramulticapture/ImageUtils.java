@@ -1,17 +1,25 @@
 package dev.hemang.cameramulticapture;
 
-import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
 import android.graphics.Matrix;
-import android.net.Uri;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Build;
 import android.util.Log;
 import androidx.exifinterface.media.ExifInterface;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
 
 /**
  * Image orientation correction utilities
@@ -23,12 +31,27 @@ import java.io.InputStream;
 public class ImageUtils {
     private static final String TAG = "ImageUtils";
     
+    /** Transform the compressed JPEG data; fall back to pixel rotation only when that is impossible */
+    public static final int ORIENTATION_MODE_LOSSLESS = 0;
+    /** Always decode, rotate and re-encode the pixels */
+    public static final int ORIENTATION_MODE_PIXEL = 1;
+
     /**
-     * Correct the orientation of an image file by reading EXIF, physically rotating, and resetting EXIF
+     * Correct the orientation of an image file using the lossless mode
      * @param imageFile The image file to correct
      * @return true if correction was successful or not needed, false if failed
      */
     public static boolean correctImageOrientation(File imageFile) {
+        return correctImageOrientation(imageFile, ORIENTATION_MODE_LOSSLESS);
+    }
+
+    /**
+     * Correct the orientation of an image file so its pixels match its EXIF orientation
+     * @param imageFile The image file to correct
+     * @param mode ORIENTATION_MODE_LOSSLESS or ORIENTATION_MODE_PIXEL
+     * @return true if correction was successful or not needed, false if failed
+     */
+    public static boolean correctImageOrientation(File imageFile, int mode) {
         if (imageFile == null || !imageFile.exists()) {
             Log.e(TAG, "Image file does not exist");
             return false;
@@ -42,39 +65,140 @@ public class ImageUtils {
                 orientation == ExifInterface.ORIENTATION_UNDEFINED) {
                 return true;
             }
-            
-            Bitmap bitmap = BitmapFactory.decodeFile(imageFile.getAbsolutePath());
-            if (bitmap == null) {
-                Log.e(TAG, "Failed to decode image file");
-                return false;
-            }
-            
-            Bitmap rotatedBitmap = rotateBitmapByExif(bitmap, orientation);
-            
-            if (rotatedBitmap != bitmap) {
-                FileOutputStream out = new FileOutputStream(imageFile);
-                rotatedBitmap.compress(Bitmap.CompressFormat.JPEG, 95, out);
-                out.flush();
-                out.close();
-                
-                bitmap.recycle();
-                rotatedBitmap.recycle();
-                
-                ExifWrapper newExifWrapper = new ExifWrapper(imageFile.getAbsolutePath());
-                newExifWrapper.resetOrientation();
-                
-                return true;
-            } else {
-                bitmap.recycle();
-                exifWrapper.resetOrientation();
+
+            if (mode == ORIENTATION_MODE_LOSSLESS && transformLosslessly(imageFile, orientation)) {
                 return true;
             }
+
+            return rotatePixels(imageFile, exifWrapper, orientation);
             
         } catch (Exception e) {
             Log.e(TAG, "Error correcting image orientation: " + e.getMessage(), e);
             return false;
         }
     }
+
+    /**
+     * Apply the EXIF orientation in the DCT domain and rewrite the file.
+     * The EXIF orientation tag is reset as part of the transform.
+     * @return true if the file was transformed, false if pixel rotation is needed
+     */
+    private static boolean transformLosslessly(File imageFile, int orientation) {
+        try {
+            byte[] source = readFile(imageFile);
+            byte[] transformed = JpegLosslessTransform.transform(source, orientation);
+            writeFileAtomically(imageFile, transformed);
+            return true;
+        } catch (JpegLosslessTransform.UnsupportedJpegException e) {
+            Log.d(TAG, "Lossless orientation not possible, using pixel rotation: " + e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Lossless orientation failed, using pixel rotation: " + e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Decode, physically rotate and re-encode, keeping the original EXIF with orientation reset
+     */
+    private static boolean rotatePixels(File imageFile, ExifWrapper exifWrapper, int orientation) throws IOException {
+        String path = imageFile.getAbsolutePath();
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        options.inJustDecodeBounds = false;
+        Bitmap bitmap = decodePooled(options, options.outWidth, options.outHeight,
+            opts -> BitmapFactory.decodeFile(path, opts));
+        if (bitmap == null) {
+            Log.e(TAG, "Failed to decode image file");
+            return false;
+        }
+        
+        Bitmap rotatedBitmap = rotateBitmapByExif(bitmap, orientation);
+        
+        if (rotatedBitmap != bitmap) {
+            byte[] exifSegment = readExifSegment(imageFile);
+            try {
+                writeJpeg(rotatedBitmap, exifSegment, imageFile);
+            } finally {
+                BitmapPool.get().release(bitmap);
+                BitmapPool.get().release(rotatedBitmap);
+            }
+            return true;
+        } else {
+            BitmapPool.get().release(bitmap);
+            exifWrapper.resetOrientation();
+            return true;
+        }
+    }
+
+    /**
+     * @return The file's Exif APP1 segment, or null if it has none or can't be parsed
+     */
+    private static byte[] readExifSegment(File file) {
+        try {
+            return JpegExifSplicer.readExifSegment(file);
+        } catch (IOException e) {
+            Log.d(TAG, "No EXIF segment to carry over: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Encode a bitmap and atomically replace the target, splicing in the given EXIF
+     * segment (orientation reset, dimensions updated) in the same write
+     * @param bitmap Upright pixels
+     * @param exifSegment Exif APP1 segment of the original, or null to write without EXIF
+     * @param target File to replace
+     */
+    private static void writeJpeg(Bitmap bitmap, byte[] exifSegment, File target) throws IOException {
+        File temp = new File(target.getParentFile(), target.getName() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp), 65536)) {
+            if (exifSegment == null) {
+                bitmap.compress(Bitmap.CompressFormat.JPEG, 95, out);
+            } else {
+                ByteArrayOutputStream encoded = new ByteArrayOutputStream(bitmap.getByteCount() / 8);
+                bitmap.compress(Bitmap.CompressFormat.JPEG, 95, encoded);
+                JpegExifSplicer.splice(exifSegment, new ByteArrayInputStream(encoded.toByteArray()), out);
+            }
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("Failed to write " + target.getName());
+        }
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        long length = file.length();
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("File too large: " + length);
+        }
+        byte[] data = new byte[(int) length];
+        try (FileInputStream in = new FileInputStream(file)) {
+            int offset = 0;
+            while (offset < data.length) {
+                int read = in.read(data, offset, data.length - offset);
+                if (read < 0) {
+                    throw new IOException("Unexpected end of file");
+                }
+                offset += read;
+            }
+        }
+        return data;
+    }
+
+    private static void writeFileAtomically(File target, byte[] data) throws IOException {
+        File temp = new File(target.getParentFile(), target.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(data);
+        }
+        if (!temp.renameTo(target)) {
+            temp.delete();
+            throw new IOException("Failed to replace " + target.getName());
+        }
+    }
     
     /**
      * Rotate bitmap according to EXIF orientation
@@ -83,6 +207,25 @@ public class ImageUtils {
      * @return Rotated bitmap, or same bitmap if no rotation needed
      */
     private static Bitmap rotateBitmapByExif(Bitmap bitmap, int exifOrientation) {
+        Matrix matrix = orientationMatrix(exifOrientation);
+        if (matrix == null) {
+            return bitmap;
+        }
+        
+        try {
+            return drawPooled(bitmap, matrix, new RectF(0, 0, bitmap.getWidth(), bitmap.getHeight()));
+        } catch (OutOfMemoryError e) {
+            Log.e(TAG, "Out of memory rotating bitmap", e);
+            return bitmap;
+        }
+    }
+
+    /**
+     * Matrix that displays a bitmap upright for the given EXIF orientation
+     * @param exifOrientation EXIF orientation value
+     * @return Matrix, or null if no rotation needed
+     */
+    private static Matrix orientationMatrix(int exifOrientation) {
         Matrix matrix = new Matrix();
         
         switch (exifOrientation) {
@@ -112,18 +255,9 @@ public class ImageUtils {
             case ExifInterface.ORIENTATION_NORMAL:
             case ExifInterface.ORIENTATION_UNDEFINED:
             default:
-                return bitmap;
-        }
-        
-        try {
-            Bitmap rotatedBitmap = Bitmap.createBitmap(
-                bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true
-            );
-            return rotatedBitmap;
-        } catch (OutOfMemoryError e) {
-            Log.e(TAG, "Out of memory rotating bitmap", e);
-            return bitmap;
+                return null;
         }
+        return matrix;
     }
     
     /**
@@ -133,40 +267,405 @@ public class ImageUtils {
      * @return Base64 data URI of thumbnail, or null if failed
      */
     public static String generateThumbnail(File imageFile, int thumbnailSize) {
+        Bitmap thumbnail = decodeThumbnail(imageFile, thumbnailSize);
+        if (thumbnail == null) {
+            return null;
+        }
+        String base64Thumbnail = ThumbnailGenerator.bitmapToBase64(thumbnail, 85);
+        BitmapPool.get().release(thumbnail);
+        return base64Thumbnail;
+    }
+
+    /**
+     * Decode a square thumbnail bitmap from an already orientation-corrected image file
+     * @param imageFile Source image file (must already have corrected orientation)
+     * @param thumbnailSize Target thumbnail size (will be square)
+     * @return Thumbnail bitmap owned by the caller (release it to {@link BitmapPool}), or null if failed
+     */
+    public static Bitmap decodeThumbnail(File imageFile, int thumbnailSize) {
         if (imageFile == null || !imageFile.exists()) {
             Log.e(TAG, "Image file does not exist for thumbnail generation");
             return null;
         }
         
         try {
+            String path = imageFile.getAbsolutePath();
+            Bitmap thumbnail = decodeSquareThumbnail(readHeader(imageFile),
+                opts -> BitmapFactory.decodeFile(path, opts), () -> openRegionDecoder(path), thumbnailSize);
+            if (thumbnail != null) {
+                return thumbnail;
+            }
+            
+            // Formats the region decoder can't handle: subsampled full decode
             BitmapFactory.Options options = new BitmapFactory.Options();
-            options.inSampleSize = calculateSampleSize(imageFile, thumbnailSize * 2);
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(path, options);
             
-            Bitmap originalBitmap = BitmapFactory.decodeFile(imageFile.getAbsolutePath(), options);
+            options.inJustDecodeBounds = false;
+            options.inSampleSize = calculateSampleSize(options.outWidth, options.outHeight, thumbnailSize * 2);
+            Bitmap originalBitmap = decodePooled(options, options.outWidth, options.outHeight,
+                opts -> BitmapFactory.decodeFile(path, opts));
             if (originalBitmap == null) {
                 Log.e(TAG, "Failed to decode image file for thumbnail");
                 return null;
             }
             
-            Bitmap thumbnail = createSquareThumbnail(originalBitmap, thumbnailSize);
-            originalBitmap.recycle();
+            thumbnail = createSquareThumbnail(originalBitmap, thumbnailSize);
+            BitmapPool.get().release(originalBitmap);
+            return thumbnail;
             
-            if (thumbnail == null) {
-                Log.e(TAG, "Failed to generate thumbnail");
+        } catch (Exception e) {
+            Log.e(TAG, "Error generating thumbnail: " + e.getMessage(), e);
+            return null;
+        }
+    }
+    
+    /**
+     * Decode a square thumbnail bitmap from in-memory JPEG data that already has corrected orientation
+     * @param jpeg JPEG file contents
+     * @param thumbnailSize Target thumbnail size (will be square)
+     * @return Thumbnail bitmap owned by the caller (release it to {@link BitmapPool}), or null if failed
+     */
+    public static Bitmap decodeThumbnail(byte[] jpeg, int thumbnailSize) {
+        try {
+            JpegExifOrientation.Header header = null;
+            try {
+                header = JpegExifOrientation.readHeader(jpeg);
+            } catch (IOException e) {
+                Log.d(TAG, "No readable EXIF in image data: " + e.getMessage());
+            }
+            Bitmap thumbnail = decodeSquareThumbnail(header,
+                opts -> BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, opts), () -> openRegionDecoder(jpeg),
+                thumbnailSize);
+            if (thumbnail != null) {
+                return thumbnail;
+            }
+
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+
+            options.inJustDecodeBounds = false;
+            options.inSampleSize = calculateSampleSize(options.outWidth, options.outHeight, thumbnailSize * 2);
+            Bitmap sampled = decodePooled(options, options.outWidth, options.outHeight,
+                opts -> BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, opts));
+            if (sampled == null) {
+                Log.e(TAG, "Failed to decode image data for thumbnail");
                 return null;
             }
-            
-            String base64Thumbnail = ThumbnailGenerator.bitmapToBase64(thumbnail, 85);
-            thumbnail.recycle();
-            
-            return base64Thumbnail;
-            
+
+            thumbnail = createSquareThumbnail(sampled, thumbnailSize);
+            BitmapPool.get().release(sampled);
+            return thumbnail;
         } catch (Exception e) {
             Log.e(TAG, "Error generating thumbnail: " + e.getMessage(), e);
             return null;
         }
     }
-    
+
+    private interface RegionDecoderSource {
+        BitmapRegionDecoder open() throws IOException;
+    }
+
+    /**
+     * Decode a square thumbnail without decoding the whole image: the embedded
+     * EXIF thumbnail when it is big enough and matches the image, otherwise only
+     * the center square through BitmapRegionDecoder at the right sample size.
+     * Any EXIF orientation still present is applied on the way.
+     *
+     * @param header Streamed Exif header, or null if the image has none
+     * @param image Decodes the full image; only used here to read its bounds
+     * @return Thumbnail bitmap, or null if neither fast path applies
+     */
+    private static Bitmap decodeSquareThumbnail(JpegExifOrientation.Header header, PooledDecode image,
+                                                RegionDecoderSource source, int size) {
+        int orientation = header != null && header.orientation != JpegExifOrientation.NOT_PRESENT
+            ? header.orientation
+            : ExifInterface.ORIENTATION_NORMAL;
+
+        Bitmap thumbnail = header != null && header.thumbnail != null
+            ? decodeEmbeddedThumbnail(header.thumbnail, image, orientation, size)
+            : null;
+        if (thumbnail != null) {
+            return thumbnail;
+        }
+        return decodeCenterRegion(source, orientation, size);
+    }
+
+    private static Bitmap decodeEmbeddedThumbnail(byte[] bytes, PooledDecode image, int orientation, int size) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        int width = options.outWidth;
+        int height = options.outHeight;
+        if (width <= 0 || height <= 0 || Math.min(width, height) < size) {
+            return null;
+        }
+
+        // Only the frame header is parsed
+        BitmapFactory.Options imageBounds = new BitmapFactory.Options();
+        imageBounds.inJustDecodeBounds = true;
+        image.decode(imageBounds);
+        int imageWidth = imageBounds.outWidth;
+        int imageHeight = imageBounds.outHeight;
+        if (imageWidth <= 0 || imageHeight <= 0) {
+            return null;
+        }
+        // A stale (pre-rotation) or letterboxed thumbnail has a different aspect ratio than the image
+        long thumbAspect = (long) width * imageHeight;
+        long imageAspect = (long) height * imageWidth;
+        if (Math.abs(thumbAspect - imageAspect) > imageAspect / 50) {
+            return null;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSizeForEdge(Math.min(width, height), size);
+        Bitmap decoded = decodePooled(options, width, height,
+            opts -> BitmapFactory.decodeByteArray(bytes, 0, bytes.length, opts));
+        if (decoded == null) {
+            return null;
+        }
+        Bitmap thumbnail = createSquareThumbnail(decoded, orientation, size);
+        BitmapPool.get().release(decoded);
+        return thumbnail;
+    }
+
+    private static Bitmap decodeCenterRegion(RegionDecoderSource source, int orientation, int size) {
+        BitmapRegionDecoder decoder = null;
+        try {
+            decoder = source.open();
+            if (decoder == null) {
+                return null;
+            }
+            int width = decoder.getWidth();
+            int height = decoder.getHeight();
+            int cropSize = Math.min(width, height);
+            int x = (width - cropSize) / 2;
+            int y = (height - cropSize) / 2;
+
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = sampleSizeForEdge(cropSize, size);
+            Rect rect = new Rect(x, y, x + cropSize, y + cropSize);
+            Bitmap region = decodeRegionPooled(decoder, rect, options);
+            if (region == null) {
+                return null;
+            }
+            // Already square, so this only scales (and orients) to the exact size
+            Bitmap thumbnail = createSquareThumbnail(region, orientation, size);
+            BitmapPool.get().release(region);
+            return thumbnail;
+        } catch (IOException | RuntimeException e) {
+            Log.d(TAG, "Region decode not possible, falling back to full decode: " + e.getMessage());
+            return null;
+        } finally {
+            if (decoder != null) {
+                decoder.recycle();
+            }
+        }
+    }
+
+    private interface PooledDecode {
+        Bitmap decode(BitmapFactory.Options options);
+    }
+
+    /**
+     * Run a decode into a pooled bitmap, retrying with a fresh allocation if the
+     * decoder refuses the offered one
+     * @param width Source width before sampling
+     * @param height Source height before sampling
+     */
+    private static Bitmap decodePooled(BitmapFactory.Options options, int width, int height, PooledDecode decode) {
+        BitmapPool pool = BitmapPool.get();
+        int sample = Math.max(1, options.inSampleSize);
+        pool.prepareDecode(options, (width + sample - 1) / sample, (height + sample - 1) / sample);
+        try {
+            Bitmap bitmap = decode.decode(options);
+            if (bitmap == null) {
+                pool.clearDecodeTarget(options);
+            }
+            return bitmap;
+        } catch (IllegalArgumentException e) {
+            pool.clearDecodeTarget(options);
+            return decode.decode(options);
+        }
+    }
+
+    /**
+     * Decode a region into a pooled bitmap. Unlike BitmapFactory, the region decoder
+     * never resizes its inBitmap and only draws into it, so the target has to be
+     * reconfigured to the exact sampled region size up front.
+     */
+    private static Bitmap decodeRegionPooled(BitmapRegionDecoder decoder, Rect rect, BitmapFactory.Options options) {
+        BitmapPool pool = BitmapPool.get();
+        int sample = Math.max(1, options.inSampleSize);
+        int width = (rect.width() + sample - 1) / sample;
+        int height = (rect.height() + sample - 1) / sample;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inMutable = true;
+        options.inBitmap = pool.acquire(width, height, Bitmap.Config.ARGB_8888);
+        try {
+            Bitmap bitmap = decoder.decodeRegion(rect, options);
+            if (bitmap == null) {
+                pool.clearDecodeTarget(options);
+            }
+            return bitmap;
+        } catch (IllegalArgumentException e) {
+            pool.clearDecodeTarget(options);
+            return decoder.decodeRegion(rect, options);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static BitmapRegionDecoder openRegionDecoder(String path) throws IOException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            return BitmapRegionDecoder.newInstance(path);
+        }
+        return BitmapRegionDecoder.newInstance(path, false);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static BitmapRegionDecoder openRegionDecoder(byte[] data) throws IOException {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            return BitmapRegionDecoder.newInstance(data, 0, data.length);
+        }
+        return BitmapRegionDecoder.newInstance(data, 0, data.length, false);
+    }
+
+    private static JpegExifOrientation.Header readHeader(File file) {
+        try {
+            return JpegExifOrientation.readHeader(file);
+        } catch (IOException e) {
+            Log.d(TAG, "No readable EXIF in " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Write a captured in-memory JPEG to disk with its orientation applied and build
+     * the thumbnail from the same data, so the photo is written once and never read back.
+     *
+     * @param jpeg JPEG data as delivered by the camera
+     * @param exifOrientation Orientation to apply (EXIF value)
+     * @param mode ORIENTATION_MODE_LOSSLESS or ORIENTATION_MODE_PIXEL
+     * @param output Destination file
+     * @param thumbnailSize Target thumbnail size (will be square)
+     * @return Thumbnail bitmap owned by the caller, or null if only the thumbnail failed
+     * @throws IOException if the photo could not be written
+     */
+    public static Bitmap saveOrientedJpeg(byte[] jpeg, int exifOrientation, int mode, File output,
+                                          int thumbnailSize) throws IOException {
+        boolean needsRotation = exifOrientation != ExifInterface.ORIENTATION_NORMAL
+            && exifOrientation != ExifInterface.ORIENTATION_UNDEFINED;
+
+        if (!needsRotation) {
+            writeFileAtomically(output, jpeg);
+            return decodeThumbnail(jpeg, thumbnailSize);
+        }
+
+        if (mode == ORIENTATION_MODE_LOSSLESS) {
+            try {
+                byte[] transformed = JpegLosslessTransform.transform(jpeg, exifOrientation);
+                writeFileAtomically(output, transformed);
+                return decodeThumbnail(transformed, thumbnailSize);
+            } catch (JpegLosslessTransform.UnsupportedJpegException e) {
+                Log.d(TAG, "Lossless orientation not possible, using pixel rotation: " + e.getMessage());
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "Lossless orientation failed, using pixel rotation: " + e.getMessage());
+            }
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, options);
+        options.inJustDecodeBounds = false;
+        Bitmap decoded = decodePooled(options, options.outWidth, options.outHeight,
+            opts -> BitmapFactory.decodeByteArray(jpeg, 0, jpeg.length, opts));
+        if (decoded == null) {
+            throw new IOException("Failed to decode captured image");
+        }
+        Bitmap rotated = rotateBitmapByExif(decoded, exifOrientation);
+        if (rotated != decoded) {
+            BitmapPool.get().release(decoded);
+        }
+        try {
+            byte[] exifSegment = null;
+            try {
+                exifSegment = JpegExifSplicer.readExifSegment(jpeg);
+            } catch (IOException e) {
+                Log.d(TAG, "No EXIF segment to carry over: " + e.getMessage());
+            }
+            writeJpeg(rotated, exifSegment, output);
+            // The rotated bitmap is already in memory; no need to decode the file again
+            return createSquareThumbnail(rotated, thumbnailSize);
+        } finally {
+            BitmapPool.get().release(rotated);
+        }
+    }
+
+    /**
+     * Decode an image upright with its long edge limited to maxDimension.
+     * The decode is subsampled to the smallest power of two that stays at or above the
+     * target, and the remaining scale and the EXIF orientation are applied in one draw,
+     * so peak memory is bounded by the output size rather than the source resolution.
+     *
+     * @param imageFile Source image
+     * @param maxDimension Maximum long edge in pixels, or 0 to keep the size
+     * @return Pooled bitmap owned by the caller, or null if the file can't be decoded
+     */
+    public static Bitmap decodeScaled(File imageFile, int maxDimension) throws IOException {
+        String path = imageFile.getAbsolutePath();
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        int longEdge = Math.max(options.outWidth, options.outHeight);
+        int orientation = new ExifWrapper(path).getOrientation();
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = maxDimension > 0 ? sampleSizeForEdge(longEdge, maxDimension) : 1;
+        Bitmap decoded = decodePooled(options, options.outWidth, options.outHeight,
+            opts -> BitmapFactory.decodeFile(path, opts));
+        if (decoded == null) {
+            return null;
+        }
+
+        Matrix matrix = orientationMatrix(orientation);
+        int decodedLongEdge = Math.max(decoded.getWidth(), decoded.getHeight());
+        if (maxDimension > 0 && decodedLongEdge > maxDimension) {
+            if (matrix == null) {
+                matrix = new Matrix();
+            }
+            float scale = (float) maxDimension / decodedLongEdge;
+            matrix.preScale(scale, scale);
+        }
+        if (matrix == null) {
+            return decoded;
+        }
+        try {
+            return drawPooled(decoded, matrix, new RectF(0, 0, decoded.getWidth(), decoded.getHeight()));
+        } finally {
+            BitmapPool.get().release(decoded);
+        }
+    }
+
+    /**
+     * Map a clockwise rotation in degrees to the equivalent EXIF orientation
+     */
+    public static int exifOrientationFromDegrees(int degrees) {
+        switch ((degrees % 360 + 360) % 360) {
+            case 90:
+                return ExifInterface.ORIENTATION_ROTATE_90;
+            case 180:
+                return ExifInterface.ORIENTATION_ROTATE_180;
+            case 270:
+                return ExifInterface.ORIENTATION_ROTATE_270;
+            default:
+                return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+
     /**
      * Create a square thumbnail by center-cropping
      * @param source Source bitmap
@@ -174,6 +673,17 @@ public class ImageUtils {
      * @return Square thumbnail bitmap
      */
     private static Bitmap createSquareThumbnail(Bitmap source, int size) {
+        return createSquareThumbnail(source, ExifInterface.ORIENTATION_NORMAL, size);
+    }
+
+    /**
+     * Create an upright square thumbnail by center-cropping
+     * @param source Source bitmap
+     * @param exifOrientation Orientation of the source (EXIF value)
+     * @param size Target size
+     * @return Square thumbnail bitmap, or the source itself if it already is one
+     */
+    private static Bitmap createSquareThumbnail(Bitmap source, int exifOrientation, int size) {
         int sourceWidth = source.getWidth();
         int sourceHeight = source.getHeight();
         
@@ -181,29 +691,48 @@ public class ImageUtils {
         int x = (sourceWidth - cropSize) / 2;
         int y = (sourceHeight - cropSize) / 2;
         
-        Bitmap croppedBitmap = Bitmap.createBitmap(source, x, y, cropSize, cropSize);
-        Bitmap scaledBitmap = Bitmap.createScaledBitmap(croppedBitmap, size, size, true);
-        
-        if (croppedBitmap != scaledBitmap) {
-            croppedBitmap.recycle();
+        // Crop, scale and orient in one draw so a large source never gets a full-size crop copy
+        Matrix matrix = orientationMatrix(exifOrientation);
+        if (matrix == null) {
+            matrix = new Matrix();
         }
+        float scale = (float) size / cropSize;
+        matrix.preScale(scale, scale);
+        matrix.preTranslate(-x, -y);
+        return drawPooled(source, matrix, new RectF(x, y, x + cropSize, y + cropSize));
+    }
+
+    /**
+     * Draw a bitmap region through a matrix into a pooled bitmap sized to fit the result
+     * @param source Source bitmap (not released)
+     * @param matrix Transform applied to the source
+     * @param sourceRect Part of the source that ends up in the result
+     * @return New bitmap owned by the caller
+     */
+    private static Bitmap drawPooled(Bitmap source, Matrix matrix, RectF sourceRect) {
+        RectF bounds = new RectF();
+        matrix.mapRect(bounds, sourceRect);
+        matrix.postTranslate(-bounds.left, -bounds.top);
         
-        return scaledBitmap;
+        Bitmap target = BitmapPool.get().acquire(
+            Math.round(bounds.width()), Math.round(bounds.height()), Bitmap.Config.ARGB_8888
+        );
+        Canvas canvas = new Canvas(target);
+        canvas.clipRect(0, 0, target.getWidth(), target.getHeight());
+        canvas.drawBitmap(source, matrix, new Paint(Paint.FILTER_BITMAP_FLAG));
+        return target;
     }
     
     /**
      * Calculate sample size for efficient loading
-     * @param imageFile Image file
+     * @param width Source width
+     * @param height Source height
      * @param targetSize Target size
      * @return Sample size for BitmapFactory
      */
-    private static int calculateSampleSize(File imageFile, int targetSize) {
-        BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inJustDecodeBounds = true;
-        BitmapFactory.decodeFile(imageFile.getAbsolutePath(), options);
-        
+    private static int calculateSampleSize(int width, int height, int targetSize) {
         int sampleSize = 1;
-        int maxDimension = Math.max(options.outWidth, options.outHeight);
+        int maxDimension = Math.max(width, height);
         
         while (maxDimension / sampleSize > targetSize) {
             sampleSize *= 2;
@@ -211,5 +740,15 @@ public class ImageUtils {
         
         return sampleSize;
     }
-}
 
+    /**
+     * Largest power-of-two sample size that keeps the given edge at or above the target
+     */
+    private static int sampleSizeForEdge(int edge, int targetSize) {
+        int sampleSize = 1;
+        while (edge / (sampleSize * 2) >= targetSize) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+}
@@ -0,0 +1,295 @@
+package dev.hemang.cameramulticapture;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * Streaming reader and in-place writer for the EXIF orientation tag of a JPEG.
+ *
+ * Only the marker segments in front of the image data are walked, and only the
+ * Exif APP1 segment is read into memory. Because orientation is a fixed-width
+ * SHORT in IFD0, it can be rewritten with a two-byte write instead of
+ * re-serialising the whole file. The embedded JPEG thumbnail in IFD1 can be read
+ * from the same segment. Pure Java, so it runs on the JVM as well.
+ */
+public final class JpegExifOrientation {
+    /** Returned when the JPEG carries no orientation tag */
+    public static final int NOT_PRESENT = -1;
+
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TAG_THUMBNAIL_OFFSET = 0x0201;
+    private static final int TAG_THUMBNAIL_LENGTH = 0x0202;
+    private static final int TYPE_SHORT = 3;
+
+    private JpegExifOrientation() {
+    }
+
+    /**
+     * @param file JPEG file
+     * @return EXIF orientation value, or {@link #NOT_PRESENT}
+     * @throws IOException if the file is not a readable JPEG
+     */
+    public static int readOrientation(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 8192)) {
+            Location location = locate(in);
+            return location != null ? location.value : NOT_PRESENT;
+        }
+    }
+
+    /**
+     * @param jpeg JPEG data
+     * @return EXIF orientation value, or {@link #NOT_PRESENT}
+     * @throws IOException if the data is not a JPEG
+     */
+    public static int readOrientation(byte[] jpeg) throws IOException {
+        Location location = locate(new ByteArrayInputStream(jpeg));
+        return location != null ? location.value : NOT_PRESENT;
+    }
+
+    /**
+     * Orientation and embedded thumbnail of a JPEG
+     */
+    public static final class Header {
+        /** EXIF orientation value, or {@link #NOT_PRESENT} */
+        public final int orientation;
+        /** JPEG thumbnail from IFD1, or null if there is none */
+        public final byte[] thumbnail;
+
+        Header(int orientation, byte[] thumbnail) {
+            this.orientation = orientation;
+            this.thumbnail = thumbnail;
+        }
+    }
+
+    /**
+     * Read the orientation and the embedded thumbnail in one pass over the Exif segment
+     * @param file JPEG file
+     * @throws IOException if the file is not a readable JPEG
+     */
+    public static Header readHeader(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 8192)) {
+            return header(JpegSegments.readExifSegment(in));
+        }
+    }
+
+    /**
+     * @param jpeg JPEG data
+     * @throws IOException if the data is not a JPEG
+     */
+    public static Header readHeader(byte[] jpeg) throws IOException {
+        return header(JpegSegments.readExifSegment(new ByteArrayInputStream(jpeg)));
+    }
+
+    /**
+     * Overwrite the orientation value in place
+     * @param file JPEG file
+     * @param orientation New EXIF orientation value (1-8)
+     * @return true if written, false if the file has no orientation tag to overwrite
+     * @throws IOException if the file is not a readable JPEG or can't be written
+     */
+    public static boolean writeOrientation(File file, int orientation) throws IOException {
+        Location location;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 8192)) {
+            location = locate(in);
+        }
+        if (location == null) {
+            return false;
+        }
+        if (location.value == orientation) {
+            return true;
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(location.offset);
+            if (location.bigEndian) {
+                raf.write(orientation >> 8);
+                raf.write(orientation);
+            } else {
+                raf.write(orientation);
+                raf.write(orientation >> 8);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Position and value of the orientation SHORT
+     */
+    private static final class Location {
+        final long offset;
+        final boolean bigEndian;
+        final int value;
+
+        Location(long offset, boolean bigEndian, int value) {
+            this.offset = offset;
+            this.bigEndian = bigEndian;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Walk the marker segments up to the first scan and find IFD0's orientation
+     * @return Location, or null if there is no orientation tag
+     */
+    private static Location locate(InputStream in) throws IOException {
+        CountingInputStream counting = new CountingInputStream(in);
+        byte[] segment = JpegSegments.readExifSegment(counting);
+        if (segment == null) {
+            return null;
+        }
+        // The whole segment has just been read, so it ends at the current position
+        return findOrientation(segment, counting.count - segment.length);
+    }
+
+    private static Header header(byte[] segment) throws IOException {
+        if (segment == null) {
+            return new Header(NOT_PRESENT, null);
+        }
+        Location location = findOrientation(segment, 0);
+        return new Header(location != null ? location.value : NOT_PRESENT, findThumbnail(segment));
+    }
+
+    /**
+     * @param segment Complete Exif APP1 segment
+     * @param segmentOffset File offset of the segment's marker
+     */
+    private static Location findOrientation(byte[] segment, long segmentOffset) throws IOException {
+        boolean bigEndian = isBigEndian(segment);
+        int ifd = ifd0(segment, bigEndian);
+        int entries = JpegSegments.readShort(segment, ifd, bigEndian);
+        for (int i = 0; i < entries; i++) {
+            int entry = entry(segment, ifd, i);
+            if (JpegSegments.readShort(segment, entry, bigEndian) != TAG_ORIENTATION) {
+                continue;
+            }
+            if (JpegSegments.readShort(segment, entry + 2, bigEndian) != TYPE_SHORT
+                || JpegSegments.readInt(segment, entry + 4, bigEndian) != 1) {
+                throw new IOException("Unexpected orientation tag format");
+            }
+            int valueOffset = entry + 8;
+            return new Location(segmentOffset + valueOffset, bigEndian,
+                JpegSegments.readShort(segment, valueOffset, bigEndian));
+        }
+        return null;
+    }
+
+    /**
+     * Follow IFD0's link to IFD1 and copy out the JPEG thumbnail it points at
+     * @return Thumbnail bytes, or null if there is no IFD1 or it holds no JPEG thumbnail
+     */
+    private static byte[] findThumbnail(byte[] segment) throws IOException {
+        int tiff = JpegSegments.TIFF_START;
+        boolean bigEndian = isBigEndian(segment);
+        int ifd0 = ifd0(segment, bigEndian);
+        int next = ifd0 + 2 + JpegSegments.readShort(segment, ifd0, bigEndian) * 12;
+        if (next + 4 > segment.length) {
+            return null;
+        }
+        long ifd1Offset = JpegSegments.readInt(segment, next, bigEndian) & 0xFFFFFFFFL;
+        if (ifd1Offset == 0 || tiff + ifd1Offset + 2 > segment.length) {
+            return null;
+        }
+        int ifd1 = tiff + (int) ifd1Offset;
+        long offset = -1;
+        long length = -1;
+        int entries = JpegSegments.readShort(segment, ifd1, bigEndian);
+        if (ifd1 + 2 + entries * 12 > segment.length) {
+            return null;
+        }
+        for (int i = 0; i < entries; i++) {
+            int entry = ifd1 + 2 + i * 12;
+            int tag = JpegSegments.readShort(segment, entry, bigEndian);
+            if (tag == TAG_THUMBNAIL_OFFSET) {
+                offset = JpegSegments.readInt(segment, entry + 8, bigEndian) & 0xFFFFFFFFL;
+            } else if (tag == TAG_THUMBNAIL_LENGTH) {
+                length = JpegSegments.readInt(segment, entry + 8, bigEndian) & 0xFFFFFFFFL;
+            }
+        }
+        if (offset <= 0 || length <= 0 || tiff + offset + length > segment.length) {
+            return null;
+        }
+        int start = tiff + (int) offset;
+        byte[] thumbnail = new byte[(int) length];
+        System.arraycopy(segment, start, thumbnail, 0, thumbnail.length);
+        return thumbnail;
+    }
+
+    private static boolean isBigEndian(byte[] segment) throws IOException {
+        int tiff = JpegSegments.TIFF_START;
+        boolean bigEndian;
+        if (segment[tiff] == 'M' && segment[tiff + 1] == 'M') {
+            bigEndian = true;
+        } else if (segment[tiff] == 'I' && segment[tiff + 1] == 'I') {
+            bigEndian = false;
+        } else {
+            throw new IOException("Invalid TIFF byte order");
+        }
+        if (JpegSegments.readShort(segment, tiff + 2, bigEndian) != 42) {
+            throw new IOException("Invalid TIFF header");
+        }
+        return bigEndian;
+    }
+
+    /**
+     * @return Segment offset of IFD0's entry count
+     */
+    private static int ifd0(byte[] segment, boolean bigEndian) throws IOException {
+        int tiff = JpegSegments.TIFF_START;
+        long ifdOffset = JpegSegments.readInt(segment, tiff + 4, bigEndian) & 0xFFFFFFFFL;
+        int ifd = tiff + (int) Math.min(ifdOffset, Integer.MAX_VALUE - tiff);
+        if (ifd + 2 > segment.length) {
+            throw new IOException("IFD0 outside of APP1 segment");
+        }
+        return ifd;
+    }
+
+    private static int entry(byte[] segment, int ifd, int index) throws IOException {
+        int entry = ifd + 2 + index * 12;
+        if (entry + 12 > segment.length) {
+            throw new IOException("Truncated IFD");
+        }
+        return entry;
+    }
+
+    /**
+     * Tracks how far into the file the segment walk has got
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package dev.hemang.cameramulticapture;
+
+import static dev.hemang.cameramulticapture.JpegSegments.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Copies EXIF metadata between JPEGs by splicing the raw Exif APP1 segment.
+ *
+ * The source segment is carried over byte for byte, with only the orientation
+ * and pixel dimension tags patched to match the destination, and the link to
+ * the (now stale) embedded thumbnail dropped. The destination is streamed
+ * once: its header segments are buffered up to the first scan, any Exif APP1
+ * it has is replaced, and the entropy-coded data is copied through untouched.
+ * Pure Java, so it runs on the JVM as well.
+ */
+public final class JpegExifSplicer {
+    private static final int TAG_IMAGE_WIDTH = 0x0100;
+    private static final int TAG_IMAGE_LENGTH = 0x0101;
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TAG_EXIF_IFD = 0x8769;
+    private static final int TAG_PIXEL_X_DIMENSION = 0xA002;
+    private static final int TAG_PIXEL_Y_DIMENSION = 0xA003;
+
+    private static final int TYPE_SHORT = 3;
+    private static final int TYPE_LONG = 4;
+
+    private static final int ORIENTATION_NORMAL = 1;
+
+    private JpegExifSplicer() {
+    }
+
+    /**
+     * @param file JPEG file
+     * @return Complete Exif APP1 segment including marker and length, or null if there is none
+     * @throws IOException if the file is not a readable JPEG
+     */
+    public static byte[] readExifSegment(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 8192)) {
+            return JpegSegments.readExifSegment(in);
+        }
+    }
+
+    /**
+     * @param jpeg JPEG data
+     * @return Complete Exif APP1 segment including marker and length, or null if there is none
+     * @throws IOException if the data is not a JPEG
+     */
+    public static byte[] readExifSegment(byte[] jpeg) throws IOException {
+        return JpegSegments.readExifSegment(new ByteArrayInputStream(jpeg));
+    }
+
+    /**
+     * Copy the Exif segment of one file into another, replacing the destination in place
+     * @param source JPEG to take the metadata from
+     * @param destination JPEG to receive it
+     * @return true if copied, false if the source has no Exif segment
+     * @throws IOException if either file is not a readable JPEG or the destination can't be replaced
+     */
+    public static boolean copy(File source, File destination) throws IOException {
+        byte[] segment = readExifSegment(source);
+        if (segment == null) {
+            return false;
+        }
+        File temp = new File(destination.getParentFile(), destination.getName() + ".exif.tmp");
+        try (InputStream in = new BufferedInputStream(new FileInputStream(destination), 65536);
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(temp), 65536)) {
+            splice(segment, in, out);
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        if (!temp.renameTo(destination)) {
+            temp.delete();
+            throw new IOException("Failed to replace " + destination.getName());
+        }
+        return true;
+    }
+
+    /**
+     * Write a JPEG with the given Exif segment spliced in. The segment is copied, patched to
+     * the destination's dimensions with orientation reset to normal, and placed after SOI
+     * (or after a leading JFIF APP0). Any Exif segment the JPEG already has is dropped.
+     *
+     * @param exifSegment Complete Exif APP1 segment, as returned by {@link #readExifSegment}
+     * @param jpeg Destination JPEG, read once
+     * @param out Receives the combined JPEG
+     * @throws IOException if the JPEG is malformed or writing fails
+     */
+    public static void splice(byte[] exifSegment, InputStream jpeg, OutputStream out) throws IOException {
+        readSoi(jpeg);
+
+        // Header segments are small; hold them until SOF tells us the dimensions
+        ByteArrayOutputStream app0 = new ByteArrayOutputStream();
+        ByteArrayOutputStream header = new ByteArrayOutputStream(2048);
+        int width = -1;
+        int height = -1;
+        boolean first = true;
+        int marker;
+
+        while (true) {
+            marker = readMarker(jpeg);
+            if (marker < 0) {
+                throw new EOFException("No image data");
+            }
+            if (marker == MARKER_SOS || marker == MARKER_EOI) {
+                break;
+            }
+            if (isStandalone(marker)) {
+                header.write(0xFF);
+                header.write(marker);
+                continue;
+            }
+
+            int length = readSegmentLength(jpeg);
+            byte[] payload = new byte[length - 2];
+            readFully(jpeg, payload);
+
+            if (isFrameMarker(marker) && payload.length >= 5) {
+                height = (payload[1] & 0xFF) << 8 | (payload[2] & 0xFF);
+                width = (payload[3] & 0xFF) << 8 | (payload[4] & 0xFF);
+            }
+            boolean leadingApp0 = first && marker == MARKER_APP0;
+            first = false;
+            if (marker == MARKER_APP1 && isExifPayload(payload, 0)) {
+                continue;
+            }
+            ByteArrayOutputStream target = leadingApp0 ? app0 : header;
+            target.write(0xFF);
+            target.write(marker);
+            target.write(length >> 8);
+            target.write(length);
+            target.write(payload);
+        }
+
+        byte[] patched = exifSegment.clone();
+        patchSegment(patched, width, height);
+
+        out.write(0xFF);
+        out.write(MARKER_SOI);
+        app0.writeTo(out);
+        out.write(patched);
+        header.writeTo(out);
+        out.write(0xFF);
+        out.write(marker);
+
+        byte[] buffer = new byte[65536];
+        int read;
+        while ((read = jpeg.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+    }
+
+    /**
+     * Reset orientation, set the pixel dimensions and detach the thumbnail IFD.
+     * Also used by {@link JpegLosslessTransform} for the segment it carries over.
+     * Malformed or foreign segments are left as they are.
+     * @param segment Complete Exif APP1 segment, modified in place
+     * @param width New width, or -1 to leave the dimension tags alone
+     * @param height New height, or -1 to leave the dimension tags alone
+     */
+    static void patchSegment(byte[] segment, int width, int height) {
+        if (segment.length < TIFF_START + 8 || !isExifPayload(segment, 4)) {
+            return;
+        }
+        boolean bigEndian;
+        if (segment[TIFF_START] == 'M' && segment[TIFF_START + 1] == 'M') {
+            bigEndian = true;
+        } else if (segment[TIFF_START] == 'I' && segment[TIFF_START + 1] == 'I') {
+            bigEndian = false;
+        } else {
+            return;
+        }
+
+        int ifd0 = ifdStart(segment, readInt(segment, TIFF_START + 4, bigEndian), bigEndian);
+        if (ifd0 < 0) {
+            return;
+        }
+        int exifIfd = patchIfd(segment, ifd0, bigEndian, width, height, TAG_IMAGE_WIDTH, TAG_IMAGE_LENGTH);
+        // The embedded thumbnail shows the old pixels; drop the link to IFD1
+        int count = readShort(segment, ifd0, bigEndian);
+        writeInt(segment, ifd0 + 2 + count * 12, 0, bigEndian);
+
+        int exif = exifIfd >= 0 ? ifdStart(segment, exifIfd, bigEndian) : -1;
+        if (exif >= 0) {
+            patchIfd(segment, exif, bigEndian, width, height, TAG_PIXEL_X_DIMENSION, TAG_PIXEL_Y_DIMENSION);
+        }
+    }
+
+    /**
+     * @return Absolute position of an IFD with room for its entries and next link, or -1
+     */
+    private static int ifdStart(byte[] segment, int tiffOffset, boolean bigEndian) {
+        if (tiffOffset < 8 || tiffOffset > segment.length - TIFF_START - 2) {
+            return -1;
+        }
+        int ifd = TIFF_START + tiffOffset;
+        int count = readShort(segment, ifd, bigEndian);
+        if (ifd + 2 + count * 12 + 4 > segment.length) {
+            return -1;
+        }
+        return ifd;
+    }
+
+    /**
+     * Patch orientation and dimension entries of one IFD, already bounds-checked by {@link #ifdStart}
+     * @return TIFF offset of the Exif sub-IFD if this IFD links one, otherwise -1
+     */
+    private static int patchIfd(byte[] segment, int ifd, boolean bigEndian, int width, int height,
+                                int widthTag, int heightTag) {
+        int count = readShort(segment, ifd, bigEndian);
+        int exifIfd = -1;
+        for (int i = 0; i < count; i++) {
+            int entry = ifd + 2 + i * 12;
+            int tag = readShort(segment, entry, bigEndian);
+            if (tag == TAG_ORIENTATION) {
+                writeValue(segment, entry, ORIENTATION_NORMAL, bigEndian);
+            } else if (tag == widthTag && width >= 0) {
+                writeValue(segment, entry, width, bigEndian);
+            } else if (tag == heightTag && height >= 0) {
+                writeValue(segment, entry, height, bigEndian);
+            } else if (tag == TAG_EXIF_IFD) {
+                exifIfd = readInt(segment, entry + 8, bigEndian);
+            }
+        }
+        return exifIfd;
+    }
+
+    /**
+     * Overwrite a single SHORT or LONG value stored inline in an IFD entry
+     */
+    private static void writeValue(byte[] segment, int entry, int value, boolean bigEndian) {
+        int type = readShort(segment, entry + 2, bigEndian);
+        if (readInt(segment, entry + 4, bigEndian) != 1) {
+            return;
+        }
+        if (type == TYPE_SHORT && value <= 0xFFFF) {
+            writeShort(segment, entry + 8, value, bigEndian);
+        } else if (type == TYPE_LONG) {
+            writeInt(segment, entry + 8, value, bigEndian);
+        }
+    }
+}
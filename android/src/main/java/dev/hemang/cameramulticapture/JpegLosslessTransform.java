@@ -0,0 +1,1199 @@
+package dev.hemang.cameramulticapture;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lossless JPEG orientation transform.
+ *
+ * Works on the quantized DCT coefficients (the jpegtran approach) instead of
+ * decoding to pixels, so there is no bitmap allocation and no generation loss.
+ * Coefficients are never materialized for the whole image: the first pass
+ * records where each block starts in the entropy-coded data, the second pass
+ * re-reads the blocks in output order and re-encodes them with optimized
+ * Huffman tables.
+ *
+ * Only single-scan sequential Huffman JPEGs are handled, which is what camera
+ * HALs produce. A partial MCU on an axis the transform mirrors would end up on the
+ * leading edge, which JPEG cannot represent, so it is trimmed like jpegtran -trim
+ * does: a 4000x3000 4:2:0 capture rotated by 90 degrees comes out as 2992x4000.
+ * Images smaller than one MCU on such an axis are rejected with
+ * {@link UnsupportedJpegException} so callers can fall back to pixel rotation.
+ */
+public final class JpegLosslessTransform {
+
+    /**
+     * Thrown when the input cannot be transformed losslessly
+     * (unsupported coding process, multi-scan file, or less than one MCU to keep).
+     */
+    public static class UnsupportedJpegException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public UnsupportedJpegException(String message) {
+            super(message);
+        }
+    }
+
+    // EXIF orientation values
+    public static final int ORIENTATION_NORMAL = 1;
+    public static final int ORIENTATION_FLIP_HORIZONTAL = 2;
+    public static final int ORIENTATION_ROTATE_180 = 3;
+    public static final int ORIENTATION_FLIP_VERTICAL = 4;
+    public static final int ORIENTATION_TRANSPOSE = 5;
+    public static final int ORIENTATION_ROTATE_90 = 6;
+    public static final int ORIENTATION_TRANSVERSE = 7;
+    public static final int ORIENTATION_ROTATE_270 = 8;
+
+    private static final int M_SOF0 = 0xC0;
+    private static final int M_SOF1 = 0xC1;
+    private static final int M_DHT = 0xC4;
+    private static final int M_SOI = 0xD8;
+    private static final int M_EOI = 0xD9;
+    private static final int M_SOS = 0xDA;
+    private static final int M_DQT = 0xDB;
+    private static final int M_DRI = 0xDD;
+    private static final int M_APP1 = 0xE1;
+    private static final int M_APP2 = 0xE2;
+
+    /** Natural-order index of the k-th coefficient in zigzag order */
+    private static final int[] ZIGZAG = {
+        0, 1, 8, 16, 9, 2, 3, 10,
+        17, 24, 32, 25, 18, 11, 4, 5,
+        12, 19, 26, 33, 40, 48, 41, 34,
+        27, 20, 13, 6, 7, 14, 21, 28,
+        35, 42, 49, 56, 57, 50, 43, 36,
+        29, 22, 15, 23, 30, 37, 44, 51,
+        58, 59, 52, 45, 38, 31, 39, 46,
+        53, 60, 61, 54, 47, 55, 62, 63
+    };
+
+    private JpegLosslessTransform() {
+    }
+
+    /**
+     * Check whether an orientation requires swapping width and height
+     * @param exifOrientation EXIF orientation value
+     */
+    public static boolean isTransposing(int exifOrientation) {
+        return exifOrientation >= ORIENTATION_TRANSPOSE && exifOrientation <= ORIENTATION_ROTATE_270;
+    }
+
+    /**
+     * Apply an EXIF orientation to a JPEG without re-quantizing it.
+     * The EXIF orientation tag in the output is reset to normal, dimension tags
+     * are swapped for 90/270 transforms (and reflect any trimmed edge), and the
+     * (now stale) embedded EXIF thumbnail is detached.
+     *
+     * @param jpeg Complete JPEG file contents
+     * @param exifOrientation EXIF orientation value (2-8)
+     * @return Transformed JPEG file contents
+     * @throws UnsupportedJpegException if the image cannot be transformed losslessly
+     * @throws IOException if the JPEG is malformed
+     */
+    public static byte[] transform(byte[] jpeg, int exifOrientation) throws IOException {
+        if (exifOrientation < ORIENTATION_FLIP_HORIZONTAL || exifOrientation > ORIENTATION_ROTATE_270) {
+            throw new IllegalArgumentException("No transform for orientation " + exifOrientation);
+        }
+        Parser parser = new Parser(jpeg);
+        parser.parse();
+        return new Transformer(parser, exifOrientation).run();
+    }
+
+    // ---------------------------------------------------------------------
+    // Parsing
+    // ---------------------------------------------------------------------
+
+    private static final class Component {
+        int id;
+        int h;
+        int v;
+        int quantTable;
+        int dcTable;
+        int acTable;
+        /** Block grid as coded in the scan (includes MCU padding) */
+        int gridWidth;
+        int gridHeight;
+        /** Blocks actually covering image pixels */
+        int realWidth;
+        int realHeight;
+        /** Offset of this component's first block in the per-block arrays */
+        int blockOffset;
+    }
+
+    private static final class Parser {
+        final byte[] data;
+        final List<int[]> copiedSegments = new ArrayList<>();
+        final int[][] quantTables = new int[4][];
+        final boolean[] quant16Bit = new boolean[4];
+        final HuffmanDecoder[] dcDecoders = new HuffmanDecoder[4];
+        final HuffmanDecoder[] acDecoders = new HuffmanDecoder[4];
+        int frameMarker = -1;
+        int width;
+        int height;
+        Component[] components;
+        int maxH = 1;
+        int maxV = 1;
+        int restartInterval = 0;
+        byte[] entropy;
+
+        Parser(byte[] data) {
+            this.data = data;
+        }
+
+        void parse() throws IOException {
+            if (data.length < 4 || (data[0] & 0xFF) != 0xFF || (data[1] & 0xFF) != M_SOI) {
+                throw new IOException("Not a JPEG file");
+            }
+            int pos = 2;
+            while (true) {
+                if (pos >= data.length || (data[pos] & 0xFF) != 0xFF) {
+                    throw new IOException("Expected marker at offset " + pos);
+                }
+                while (pos < data.length && (data[pos] & 0xFF) == 0xFF) {
+                    pos++;
+                }
+                if (pos >= data.length) {
+                    throw new IOException("Truncated JPEG");
+                }
+                int marker = data[pos] & 0xFF;
+                int segmentStart = pos - 1;
+                pos++;
+                if (marker == M_EOI) {
+                    throw new IOException("No image data before EOI");
+                }
+                int length = readU16(data, pos);
+                int payload = pos + 2;
+                int segmentEnd = pos + length;
+                if (length < 2 || segmentEnd > data.length) {
+                    throw new IOException("Bad segment length for marker " + Integer.toHexString(marker));
+                }
+
+                if (marker == M_SOS) {
+                    parseScanHeader(payload, segmentEnd);
+                    readEntropyData(segmentEnd);
+                    return;
+                }
+
+                switch (marker) {
+                    case M_SOF0:
+                    case M_SOF1:
+                        parseFrame(marker, payload, segmentEnd);
+                        break;
+                    case M_DQT:
+                        parseQuantTables(payload, segmentEnd);
+                        break;
+                    case M_DHT:
+                        parseHuffmanTables(payload, segmentEnd);
+                        break;
+                    case M_DRI:
+                        restartInterval = readU16(data, payload);
+                        break;
+                    default:
+                        if (marker >= 0xC0 && marker <= 0xCF) {
+                            // Progressive, lossless, hierarchical or arithmetic coded
+                            throw new UnsupportedJpegException("Unsupported JPEG process SOF" + (marker - 0xC0));
+                        }
+                        if (marker == M_APP2 && isMpfSegment(payload, segmentEnd)) {
+                            // MPF offsets point past EOI and would be invalid after re-encoding
+                            break;
+                        }
+                        copiedSegments.add(new int[] { segmentStart, segmentEnd, marker });
+                        break;
+                }
+                pos = segmentEnd;
+            }
+        }
+
+        private boolean isMpfSegment(int payload, int end) {
+            return end - payload >= 4 && data[payload] == 'M' && data[payload + 1] == 'P'
+                && data[payload + 2] == 'F' && data[payload + 3] == 0;
+        }
+
+        private void parseFrame(int marker, int p, int end) throws IOException {
+            if (frameMarker != -1) {
+                throw new UnsupportedJpegException("Multiple frames");
+            }
+            frameMarker = marker;
+            int precision = data[p] & 0xFF;
+            if (precision != 8) {
+                throw new UnsupportedJpegException("Unsupported sample precision " + precision);
+            }
+            height = readU16(data, p + 1);
+            width = readU16(data, p + 3);
+            int count = data[p + 5] & 0xFF;
+            if (width == 0 || height == 0) {
+                throw new UnsupportedJpegException("Frame without explicit dimensions");
+            }
+            if (count != 1 && count != 3) {
+                throw new UnsupportedJpegException("Unsupported component count " + count);
+            }
+            if (p + 6 + count * 3 > end) {
+                throw new IOException("Truncated frame header");
+            }
+            components = new Component[count];
+            for (int i = 0; i < count; i++) {
+                int q = p + 6 + i * 3;
+                Component c = new Component();
+                c.id = data[q] & 0xFF;
+                c.h = (data[q + 1] >> 4) & 0x0F;
+                c.v = data[q + 1] & 0x0F;
+                c.quantTable = data[q + 2] & 0x0F;
+                if (c.h < 1 || c.h > 4 || c.v < 1 || c.v > 4 || c.quantTable > 3) {
+                    throw new IOException("Bad component parameters");
+                }
+                components[i] = c;
+            }
+            if (count == 1) {
+                // A single-component scan is never interleaved; sampling factors are irrelevant
+                components[0].h = 1;
+                components[0].v = 1;
+            }
+            for (Component c : components) {
+                maxH = Math.max(maxH, c.h);
+                maxV = Math.max(maxV, c.v);
+            }
+            int mcusX = ceilDiv(width, 8 * maxH);
+            int mcusY = ceilDiv(height, 8 * maxV);
+            int offset = 0;
+            for (Component c : components) {
+                c.realWidth = ceilDiv(ceilDiv(width * c.h, maxH), 8);
+                c.realHeight = ceilDiv(ceilDiv(height * c.v, maxV), 8);
+                if (count == 1) {
+                    c.gridWidth = c.realWidth;
+                    c.gridHeight = c.realHeight;
+                } else {
+                    c.gridWidth = mcusX * c.h;
+                    c.gridHeight = mcusY * c.v;
+                }
+                c.blockOffset = offset;
+                offset += c.gridWidth * c.gridHeight;
+            }
+        }
+
+        private void parseQuantTables(int p, int end) throws IOException {
+            while (p < end) {
+                int pq = (data[p] >> 4) & 0x0F;
+                int tq = data[p] & 0x0F;
+                p++;
+                if (tq > 3 || pq > 1) {
+                    throw new IOException("Bad quantization table");
+                }
+                int[] table = new int[64];
+                for (int k = 0; k < 64; k++) {
+                    if (pq == 0) {
+                        table[ZIGZAG[k]] = data[p++] & 0xFF;
+                    } else {
+                        table[ZIGZAG[k]] = readU16(data, p);
+                        p += 2;
+                    }
+                }
+                quantTables[tq] = table;
+                quant16Bit[tq] = pq == 1;
+            }
+        }
+
+        private void parseHuffmanTables(int p, int end) throws IOException {
+            while (p < end) {
+                int tc = (data[p] >> 4) & 0x0F;
+                int th = data[p] & 0x0F;
+                p++;
+                if (tc > 1 || th > 3 || p + 16 > end) {
+                    throw new IOException("Bad Huffman table");
+                }
+                int[] bits = new int[17];
+                int total = 0;
+                for (int l = 1; l <= 16; l++) {
+                    bits[l] = data[p++] & 0xFF;
+                    total += bits[l];
+                }
+                if (total > 256 || p + total > end) {
+                    throw new IOException("Bad Huffman table");
+                }
+                int[] values = new int[total];
+                for (int i = 0; i < total; i++) {
+                    values[i] = data[p++] & 0xFF;
+                }
+                HuffmanDecoder decoder = new HuffmanDecoder(bits, values);
+                if (tc == 0) {
+                    dcDecoders[th] = decoder;
+                } else {
+                    acDecoders[th] = decoder;
+                }
+            }
+        }
+
+        private void parseScanHeader(int p, int end) throws IOException {
+            if (components == null) {
+                throw new IOException("Scan before frame header");
+            }
+            int count = data[p] & 0xFF;
+            if (count != components.length) {
+                throw new UnsupportedJpegException("Multi-scan JPEGs are not supported");
+            }
+            for (int i = 0; i < count; i++) {
+                int q = p + 1 + i * 2;
+                int id = data[q] & 0xFF;
+                Component c = components[i];
+                if (c.id != id) {
+                    throw new UnsupportedJpegException("Scan component order differs from frame");
+                }
+                c.dcTable = (data[q + 1] >> 4) & 0x0F;
+                c.acTable = data[q + 1] & 0x0F;
+                if (c.dcTable > 3 || c.acTable > 3
+                    || dcDecoders[c.dcTable] == null || acDecoders[c.acTable] == null
+                    || quantTables[c.quantTable] == null) {
+                    throw new IOException("Scan references a missing table");
+                }
+            }
+            int q = p + 1 + count * 2;
+            int ss = data[q] & 0xFF;
+            int se = data[q + 1] & 0xFF;
+            int ahal = data[q + 2] & 0xFF;
+            if (ss != 0 || se != 63 || ahal != 0) {
+                throw new UnsupportedJpegException("Not a sequential scan");
+            }
+        }
+
+        /**
+         * Copy the entropy-coded segment with byte stuffing and restart markers removed.
+         */
+        private void readEntropyData(int start) throws IOException {
+            byte[] out = new byte[data.length - start];
+            int n = 0;
+            int p = start;
+            while (p < data.length) {
+                int b = data[p] & 0xFF;
+                if (b != 0xFF) {
+                    out[n++] = (byte) b;
+                    p++;
+                    continue;
+                }
+                int next = p + 1 < data.length ? data[p + 1] & 0xFF : M_EOI;
+                if (next == 0x00) {
+                    out[n++] = (byte) 0xFF;
+                    p += 2;
+                } else if (next >= 0xD0 && next <= 0xD7) {
+                    p += 2;
+                } else if (next == 0xFF) {
+                    p++;
+                } else if (next == M_EOI) {
+                    break;
+                } else {
+                    throw new UnsupportedJpegException("Unexpected marker after scan: " + Integer.toHexString(next));
+                }
+            }
+            entropy = out;
+            entropyLength = n;
+        }
+
+        int entropyLength;
+    }
+
+    // ---------------------------------------------------------------------
+    // Transform
+    // ---------------------------------------------------------------------
+
+    private static final class Transformer {
+        private final Parser src;
+        private final int orientation;
+        private final boolean transpose;
+        private final int[] zzSource = new int[64];
+        private final int[] zzSign = new int[64];
+
+        private int[] dcValues;
+        private int[] acStart;
+
+        /** Source area that survives trimming, in pixels and in blocks per component */
+        private int keptWidth;
+        private int keptHeight;
+        private int[] keptBlocksX;
+        private int[] keptBlocksY;
+
+        private final long[][] dcFreq = new long[2][257];
+        private final long[][] acFreq = new long[2][257];
+
+        private int outWidth;
+        private int outHeight;
+        private Component[] outComponents;
+        private int outMaxH;
+        private int outMaxV;
+
+        Transformer(Parser src, int orientation) {
+            this.src = src;
+            this.orientation = orientation;
+            this.transpose = isTransposing(orientation);
+            buildCoefficientMapping();
+        }
+
+        byte[] run() throws IOException {
+            if (src.components == null) {
+                throw new IOException("Missing frame header");
+            }
+            trimPartialMcus();
+            buildOutputFrame();
+            indexBlocks();
+            walkOutput(null);
+
+            HuffmanEncoder[] dcEncoders = new HuffmanEncoder[2];
+            HuffmanEncoder[] acEncoders = new HuffmanEncoder[2];
+            int tableCount = outComponents.length == 1 ? 1 : 2;
+            for (int t = 0; t < tableCount; t++) {
+                dcEncoders[t] = HuffmanEncoder.optimal(dcFreq[t]);
+                acEncoders[t] = HuffmanEncoder.optimal(acFreq[t]);
+            }
+
+            BitWriter writer = new BitWriter(src.data.length + 4096);
+            writeHeaders(writer, dcEncoders, acEncoders, tableCount);
+            walkOutput(new EncodeState(writer, dcEncoders, acEncoders));
+            writer.flushBits();
+            writer.writeMarker(M_EOI);
+            return writer.toByteArray();
+        }
+
+        /**
+         * Precompute, for each output coefficient in zigzag order, which natural-order
+         * input coefficient it comes from and its sign.
+         */
+        private void buildCoefficientMapping() {
+            for (int k = 0; k < 64; k++) {
+                int natural = ZIGZAG[k];
+                int v = natural >> 3;
+                int u = natural & 7;
+                int sourceIndex = transpose ? (u * 8 + v) : natural;
+                boolean negate;
+                switch (orientation) {
+                    case ORIENTATION_FLIP_HORIZONTAL:
+                    case ORIENTATION_ROTATE_90:
+                        negate = (u & 1) != 0;
+                        break;
+                    case ORIENTATION_FLIP_VERTICAL:
+                    case ORIENTATION_ROTATE_270:
+                        negate = (v & 1) != 0;
+                        break;
+                    case ORIENTATION_ROTATE_180:
+                    case ORIENTATION_TRANSVERSE:
+                        negate = ((u + v) & 1) != 0;
+                        break;
+                    default:
+                        negate = false;
+                        break;
+                }
+                zzSource[k] = sourceIndex;
+                zzSign[k] = negate ? -1 : 1;
+            }
+        }
+
+        private boolean mirrorsSourceX() {
+            return orientation == ORIENTATION_FLIP_HORIZONTAL || orientation == ORIENTATION_ROTATE_180
+                || orientation == ORIENTATION_ROTATE_270 || orientation == ORIENTATION_TRANSVERSE;
+        }
+
+        private boolean mirrorsSourceY() {
+            return orientation == ORIENTATION_FLIP_VERTICAL || orientation == ORIENTATION_ROTATE_180
+                || orientation == ORIENTATION_ROTATE_90 || orientation == ORIENTATION_TRANSVERSE;
+        }
+
+        /**
+         * Drop the partial MCU column/row on every axis the transform mirrors.
+         * Along the other axes the MCU padding stays on the trailing edge and is
+         * carried over as it is.
+         */
+        private void trimPartialMcus() throws UnsupportedJpegException {
+            int mcuWidth = 8 * src.maxH;
+            int mcuHeight = 8 * src.maxV;
+            keptWidth = mirrorsSourceX() ? src.width - src.width % mcuWidth : src.width;
+            keptHeight = mirrorsSourceY() ? src.height - src.height % mcuHeight : src.height;
+            if (keptWidth == 0) {
+                throw new UnsupportedJpegException("Width " + src.width + " is less than the " + mcuWidth + "px MCU");
+            }
+            if (keptHeight == 0) {
+                throw new UnsupportedJpegException("Height " + src.height + " is less than the " + mcuHeight + "px MCU");
+            }
+            int count = src.components.length;
+            keptBlocksX = new int[count];
+            keptBlocksY = new int[count];
+            for (int i = 0; i < count; i++) {
+                Component s = src.components[i];
+                keptBlocksX[i] = ceilDiv(ceilDiv(keptWidth * s.h, src.maxH), 8);
+                keptBlocksY[i] = ceilDiv(ceilDiv(keptHeight * s.v, src.maxV), 8);
+            }
+        }
+
+        private void buildOutputFrame() {
+            outWidth = transpose ? keptHeight : keptWidth;
+            outHeight = transpose ? keptWidth : keptHeight;
+            outMaxH = transpose ? src.maxV : src.maxH;
+            outMaxV = transpose ? src.maxH : src.maxV;
+            int count = src.components.length;
+            int mcusX = ceilDiv(outWidth, 8 * outMaxH);
+            int mcusY = ceilDiv(outHeight, 8 * outMaxV);
+            outComponents = new Component[count];
+            for (int i = 0; i < count; i++) {
+                Component s = src.components[i];
+                Component c = new Component();
+                c.id = s.id;
+                c.h = transpose ? s.v : s.h;
+                c.v = transpose ? s.h : s.v;
+                c.quantTable = s.quantTable;
+                c.dcTable = i == 0 ? 0 : 1;
+                c.acTable = i == 0 ? 0 : 1;
+                c.realWidth = ceilDiv(ceilDiv(outWidth * c.h, outMaxH), 8);
+                c.realHeight = ceilDiv(ceilDiv(outHeight * c.v, outMaxV), 8);
+                if (count == 1) {
+                    c.gridWidth = c.realWidth;
+                    c.gridHeight = c.realHeight;
+                } else {
+                    c.gridWidth = mcusX * c.h;
+                    c.gridHeight = mcusY * c.v;
+                }
+                outComponents[i] = c;
+            }
+        }
+
+        /**
+         * First pass: decode every block once, remember its absolute DC value and the
+         * bit position of its AC data, and gather AC statistics for the transformed block.
+         */
+        private void indexBlocks() throws IOException {
+            Component[] comps = src.components;
+            Component last = comps[comps.length - 1];
+            int totalBlocks = last.blockOffset + last.gridWidth * last.gridHeight;
+            dcValues = new int[totalBlocks];
+            acStart = new int[totalBlocks];
+            if ((long) src.entropyLength * 8 > Integer.MAX_VALUE) {
+                throw new UnsupportedJpegException("Entropy data too large");
+            }
+
+            BitReader reader = new BitReader(src.entropy, src.entropyLength);
+            int[] coefficients = new int[64];
+            int[] predictors = new int[comps.length];
+            int mcusX;
+            int mcusY;
+            if (comps.length == 1) {
+                mcusX = comps[0].gridWidth;
+                mcusY = comps[0].gridHeight;
+            } else {
+                mcusX = ceilDiv(src.width, 8 * src.maxH);
+                mcusY = ceilDiv(src.height, 8 * src.maxV);
+            }
+
+            int mcu = 0;
+            for (int my = 0; my < mcusY; my++) {
+                for (int mx = 0; mx < mcusX; mx++, mcu++) {
+                    if (src.restartInterval > 0 && mcu > 0 && mcu % src.restartInterval == 0) {
+                        reader.alignToByte();
+                        Arrays.fill(predictors, 0);
+                    }
+                    for (int ci = 0; ci < comps.length; ci++) {
+                        Component c = comps[ci];
+                        HuffmanDecoder dc = src.dcDecoders[c.dcTable];
+                        HuffmanDecoder ac = src.acDecoders[c.acTable];
+                        int table = ci == 0 ? 0 : 1;
+                        for (int v = 0; v < c.v; v++) {
+                            for (int h = 0; h < c.h; h++) {
+                                int bx = mx * c.h + h;
+                                int by = my * c.v + v;
+                                int block = c.blockOffset + by * c.gridWidth + bx;
+                                int size = dc.decode(reader);
+                                int diff = size == 0 ? 0 : extend(reader.read(size), size);
+                                predictors[ci] += diff;
+                                dcValues[block] = predictors[ci];
+                                acStart[block] = reader.position();
+                                decodeAc(reader, ac, coefficients);
+                                countAc(coefficients, acFreq[table]);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        private void countAc(int[] in, long[] freq) {
+            int run = 0;
+            for (int k = 1; k < 64; k++) {
+                int value = in[zzSource[k]];
+                if (value == 0) {
+                    run++;
+                    continue;
+                }
+                while (run > 15) {
+                    freq[0xF0]++;
+                    run -= 16;
+                }
+                freq[(run << 4) | bitLength(Math.abs(value))]++;
+                run = 0;
+            }
+            if (run > 0) {
+                freq[0x00]++;
+            }
+        }
+
+        /**
+         * Walk the output image in MCU order. With a null state only DC statistics
+         * are gathered; otherwise every block is re-decoded and written.
+         */
+        private void walkOutput(EncodeState state) throws IOException {
+            Component[] comps = outComponents;
+            int mcusX;
+            int mcusY;
+            if (comps.length == 1) {
+                mcusX = comps[0].gridWidth;
+                mcusY = comps[0].gridHeight;
+            } else {
+                mcusX = ceilDiv(outWidth, 8 * outMaxH);
+                mcusY = ceilDiv(outHeight, 8 * outMaxV);
+            }
+            BitReader reader = new BitReader(src.entropy, src.entropyLength);
+            int[] coefficients = new int[64];
+            int[] predictors = new int[comps.length];
+
+            for (int my = 0; my < mcusY; my++) {
+                for (int mx = 0; mx < mcusX; mx++) {
+                    for (int ci = 0; ci < comps.length; ci++) {
+                        Component c = comps[ci];
+                        Component s = src.components[ci];
+                        int table = ci == 0 ? 0 : 1;
+                        for (int v = 0; v < c.v; v++) {
+                            for (int h = 0; h < c.h; h++) {
+                                int bx = mx * c.h + h;
+                                int by = my * c.v + v;
+                                int block = s.blockOffset + sourceBlock(s, ci, bx, by);
+                                int dc = dcValues[block];
+                                int diff = dc - predictors[ci];
+                                predictors[ci] = dc;
+                                if (state == null) {
+                                    dcFreq[table][bitLength(Math.abs(diff))]++;
+                                } else {
+                                    state.encodeDc(table, diff);
+                                    reader.seek(acStart[block]);
+                                    decodeAc(reader, src.acDecoders[s.acTable], coefficients);
+                                    state.encodeAc(table, coefficients, zzSource, zzSign);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Map an output block position to the source block index within a component.
+         */
+        private int sourceBlock(Component s, int ci, int ox, int oy) {
+            int lastX = keptBlocksX[ci] - 1;
+            int lastY = keptBlocksY[ci] - 1;
+            int sx;
+            int sy;
+            switch (orientation) {
+                case ORIENTATION_FLIP_HORIZONTAL:
+                    sx = lastX - ox;
+                    sy = oy;
+                    break;
+                case ORIENTATION_FLIP_VERTICAL:
+                    sx = ox;
+                    sy = lastY - oy;
+                    break;
+                case ORIENTATION_ROTATE_180:
+                    sx = lastX - ox;
+                    sy = lastY - oy;
+                    break;
+                case ORIENTATION_TRANSPOSE:
+                    sx = oy;
+                    sy = ox;
+                    break;
+                case ORIENTATION_ROTATE_90:
+                    sx = oy;
+                    sy = lastY - ox;
+                    break;
+                case ORIENTATION_ROTATE_270:
+                    sx = lastX - oy;
+                    sy = ox;
+                    break;
+                case ORIENTATION_TRANSVERSE:
+                default:
+                    sx = lastX - oy;
+                    sy = lastY - ox;
+                    break;
+            }
+            return sy * s.gridWidth + sx;
+        }
+
+        private void writeHeaders(BitWriter out, HuffmanEncoder[] dc, HuffmanEncoder[] ac, int tableCount) {
+            out.writeMarker(M_SOI);
+            for (int[] segment : src.copiedSegments) {
+                int start = segment[0];
+                int end = segment[1];
+                if (segment[2] == M_APP1) {
+                    byte[] app1 = Arrays.copyOfRange(src.data, start, end);
+                    JpegExifSplicer.patchSegment(app1, outWidth, outHeight);
+                    out.writeRaw(app1, 0, app1.length);
+                } else {
+                    out.writeRaw(src.data, start, end - start);
+                }
+            }
+
+            // DQT, transposed along with the coefficients when needed
+            for (int t = 0; t < 4; t++) {
+                int[] table = src.quantTables[t];
+                if (table == null) {
+                    continue;
+                }
+                boolean wide = src.quant16Bit[t];
+                out.writeMarker(M_DQT);
+                out.writeU16(2 + 1 + (wide ? 128 : 64));
+                out.writeByte((wide ? 0x10 : 0x00) | t);
+                for (int k = 0; k < 64; k++) {
+                    int natural = ZIGZAG[k];
+                    int value = transpose ? table[(natural & 7) * 8 + (natural >> 3)] : table[natural];
+                    if (wide) {
+                        out.writeU16(value);
+                    } else {
+                        out.writeByte(value);
+                    }
+                }
+            }
+
+            // SOF
+            out.writeMarker(src.frameMarker);
+            out.writeU16(8 + 3 * outComponents.length);
+            out.writeByte(8);
+            out.writeU16(outHeight);
+            out.writeU16(outWidth);
+            out.writeByte(outComponents.length);
+            for (Component c : outComponents) {
+                out.writeByte(c.id);
+                out.writeByte((c.h << 4) | c.v);
+                out.writeByte(c.quantTable);
+            }
+
+            // DHT
+            for (int t = 0; t < tableCount; t++) {
+                dc[t].writeTable(out, 0, t);
+                ac[t].writeTable(out, 1, t);
+            }
+
+            // SOS
+            out.writeMarker(M_SOS);
+            out.writeU16(6 + 2 * outComponents.length);
+            out.writeByte(outComponents.length);
+            for (Component c : outComponents) {
+                out.writeByte(c.id);
+                out.writeByte((c.dcTable << 4) | c.acTable);
+            }
+            out.writeByte(0);
+            out.writeByte(63);
+            out.writeByte(0);
+        }
+    }
+
+    private static void decodeAc(BitReader reader, HuffmanDecoder ac, int[] coefficients) throws IOException {
+        Arrays.fill(coefficients, 0);
+        int k = 1;
+        while (k < 64) {
+            int symbol = ac.decode(reader);
+            int run = symbol >> 4;
+            int size = symbol & 0x0F;
+            if (size != 0) {
+                k += run;
+                if (k > 63) {
+                    throw new IOException("Corrupt AC data");
+                }
+                coefficients[ZIGZAG[k]] = extend(reader.read(size), size);
+                k++;
+            } else if (run == 15) {
+                k += 16;
+            } else {
+                break;
+            }
+        }
+    }
+
+    private static final class EncodeState {
+        final BitWriter out;
+        final HuffmanEncoder[] dc;
+        final HuffmanEncoder[] ac;
+
+        EncodeState(BitWriter out, HuffmanEncoder[] dc, HuffmanEncoder[] ac) {
+            this.out = out;
+            this.dc = dc;
+            this.ac = ac;
+        }
+
+        void encodeDc(int table, int diff) {
+            int magnitude = Math.abs(diff);
+            int size = bitLength(magnitude);
+            dc[table].emit(out, size);
+            if (size > 0) {
+                out.writeBits(diff < 0 ? diff - 1 : diff, size);
+            }
+        }
+
+        void encodeAc(int table, int[] in, int[] zzSource, int[] zzSign) {
+            HuffmanEncoder encoder = ac[table];
+            int run = 0;
+            for (int k = 1; k < 64; k++) {
+                int value = in[zzSource[k]] * zzSign[k];
+                if (value == 0) {
+                    run++;
+                    continue;
+                }
+                while (run > 15) {
+                    encoder.emit(out, 0xF0);
+                    run -= 16;
+                }
+                int size = bitLength(Math.abs(value));
+                encoder.emit(out, (run << 4) | size);
+                out.writeBits(value < 0 ? value - 1 : value, size);
+                run = 0;
+            }
+            if (run > 0) {
+                encoder.emit(out, 0x00);
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Huffman coding
+    // ---------------------------------------------------------------------
+
+    private static final class HuffmanDecoder {
+        private static final int LOOKAHEAD = 9;
+        private final int[] maxCode = new int[18];
+        private final int[] valueOffset = new int[17];
+        private final int[] values;
+        private final int[] lookup = new int[1 << LOOKAHEAD];
+
+        HuffmanDecoder(int[] bits, int[] values) throws IOException {
+            this.values = values;
+            int code = 0;
+            int k = 0;
+            for (int length = 1; length <= 16; length++) {
+                if (bits[length] == 0) {
+                    maxCode[length] = -1;
+                } else {
+                    valueOffset[length] = k - code;
+                    for (int i = 0; i < bits[length]; i++) {
+                        if (length <= LOOKAHEAD) {
+                            int shift = LOOKAHEAD - length;
+                            int first = code << shift;
+                            int entry = (length << 8) | values[k];
+                            for (int j = 0; j < (1 << shift); j++) {
+                                lookup[first + j] = entry;
+                            }
+                        }
+                        code++;
+                        k++;
+                    }
+                    maxCode[length] = code - 1;
+                }
+                if (code > (1 << length)) {
+                    throw new IOException("Bad Huffman table");
+                }
+                code <<= 1;
+            }
+            maxCode[17] = Integer.MAX_VALUE;
+        }
+
+        int decode(BitReader reader) throws IOException {
+            int entry = lookup[reader.peek(LOOKAHEAD)];
+            if (entry != 0) {
+                reader.skip(entry >> 8);
+                return entry & 0xFF;
+            }
+            for (int length = LOOKAHEAD + 1; length <= 16; length++) {
+                int code = reader.peek(length);
+                if (code <= maxCode[length]) {
+                    reader.skip(length);
+                    return values[valueOffset[length] + code];
+                }
+            }
+            throw new IOException("Corrupt Huffman data");
+        }
+    }
+
+    private static final class HuffmanEncoder {
+        private final int[] bits;
+        private final int[] values;
+        private final int[] codes = new int[256];
+        private final int[] sizes = new int[256];
+
+        HuffmanEncoder(int[] bits, int[] values) {
+            this.bits = bits;
+            this.values = values;
+            int code = 0;
+            int k = 0;
+            for (int length = 1; length <= 16; length++) {
+                for (int i = 0; i < bits[length]; i++) {
+                    codes[values[k]] = code++;
+                    sizes[values[k]] = length;
+                    k++;
+                }
+                code <<= 1;
+            }
+        }
+
+        /**
+         * Build an optimal length-limited table from symbol frequencies
+         * (ITU T.81 Annex K.2, as in libjpeg's jpeg_gen_optimal_table).
+         */
+        static HuffmanEncoder optimal(long[] frequencies) {
+            long[] freq = Arrays.copyOf(frequencies, 257);
+            // Reserve one code point so no real code is all ones
+            freq[256] = 1;
+            int[] codeSize = new int[257];
+            int[] others = new int[257];
+            Arrays.fill(others, -1);
+
+            while (true) {
+                int c1 = -1;
+                long v = Long.MAX_VALUE;
+                for (int i = 0; i <= 256; i++) {
+                    if (freq[i] != 0 && freq[i] <= v) {
+                        v = freq[i];
+                        c1 = i;
+                    }
+                }
+                int c2 = -1;
+                v = Long.MAX_VALUE;
+                for (int i = 0; i <= 256; i++) {
+                    if (freq[i] != 0 && freq[i] <= v && i != c1) {
+                        v = freq[i];
+                        c2 = i;
+                    }
+                }
+                if (c2 < 0) {
+                    break;
+                }
+                freq[c1] += freq[c2];
+                freq[c2] = 0;
+                codeSize[c1]++;
+                while (others[c1] >= 0) {
+                    c1 = others[c1];
+                    codeSize[c1]++;
+                }
+                others[c1] = c2;
+                codeSize[c2]++;
+                while (others[c2] >= 0) {
+                    c2 = others[c2];
+                    codeSize[c2]++;
+                }
+            }
+
+            int[] bits = new int[33];
+            for (int i = 0; i <= 256; i++) {
+                if (codeSize[i] > 0) {
+                    bits[codeSize[i]]++;
+                }
+            }
+            for (int i = 32; i > 16; i--) {
+                while (bits[i] > 0) {
+                    int j = i - 2;
+                    while (bits[j] == 0) {
+                        j--;
+                    }
+                    bits[i] -= 2;
+                    bits[i - 1]++;
+                    bits[j + 1] += 2;
+                    bits[j]--;
+                }
+            }
+            int longest = 16;
+            while (bits[longest] == 0) {
+                longest--;
+            }
+            bits[longest]--;
+
+            int total = 0;
+            for (int i = 1; i <= 16; i++) {
+                total += bits[i];
+            }
+            int[] values = new int[total];
+            int p = 0;
+            for (int length = 1; length <= 32; length++) {
+                for (int symbol = 0; symbol < 256; symbol++) {
+                    if (codeSize[symbol] == length) {
+                        values[p++] = symbol;
+                    }
+                }
+            }
+            return new HuffmanEncoder(Arrays.copyOf(bits, 17), values);
+        }
+
+        void emit(BitWriter out, int symbol) {
+            out.writeBits(codes[symbol], sizes[symbol]);
+        }
+
+        void writeTable(BitWriter out, int tableClass, int id) {
+            out.writeMarker(M_DHT);
+            out.writeU16(2 + 1 + 16 + values.length);
+            out.writeByte((tableClass << 4) | id);
+            for (int length = 1; length <= 16; length++) {
+                out.writeByte(bits[length]);
+            }
+            for (int value : values) {
+                out.writeByte(value);
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Bit I/O
+    // ---------------------------------------------------------------------
+
+    private static final class BitReader {
+        private final byte[] data;
+        private final int length;
+        /** Left-aligned bit buffer; the next bit to read is the most significant one */
+        private long buffer = 0;
+        private int available = 0;
+        private int nextByte = 0;
+
+        BitReader(byte[] data, int length) {
+            this.data = data;
+            this.length = length;
+        }
+
+        int position() {
+            return nextByte * 8 - available;
+        }
+
+        void seek(int position) {
+            nextByte = position >>> 3;
+            buffer = 0;
+            available = 0;
+            fill();
+            skip(position & 7);
+        }
+
+        void alignToByte() {
+            skip(available & 7);
+        }
+
+        /** Peek up to 16 bits; reads past the end return zero bits */
+        int peek(int count) {
+            if (available < count) {
+                fill();
+            }
+            return (int) (buffer >>> (64 - count));
+        }
+
+        void skip(int count) {
+            buffer <<= count;
+            available -= count;
+        }
+
+        int read(int count) {
+            int value = peek(count);
+            skip(count);
+            return value;
+        }
+
+        private void fill() {
+            while (available <= 56) {
+                int b = nextByte < length ? data[nextByte] & 0xFF : 0;
+                nextByte++;
+                buffer |= (long) b << (56 - available);
+                available += 8;
+            }
+        }
+    }
+
+    private static final class BitWriter {
+        private byte[] buffer;
+        private int size = 0;
+        private long bitBuffer = 0;
+        private int bitCount = 0;
+
+        BitWriter(int capacity) {
+            buffer = new byte[capacity];
+        }
+
+        void writeBits(int value, int count) {
+            bitBuffer = (bitBuffer << count) | (value & ((1 << count) - 1));
+            bitCount += count;
+            if (bitCount >= 32) {
+                drain();
+            }
+        }
+
+        void flushBits() {
+            drain();
+            if (bitCount > 0) {
+                writeBits(0x7F, 8 - bitCount);
+                drain();
+            }
+            bitBuffer = 0;
+        }
+
+        void writeMarker(int marker) {
+            append(0xFF);
+            append(marker);
+        }
+
+        void writeByte(int value) {
+            append(value);
+        }
+
+        void writeU16(int value) {
+            append(value >> 8);
+            append(value);
+        }
+
+        void writeRaw(byte[] src, int offset, int count) {
+            ensure(count);
+            System.arraycopy(src, offset, buffer, size, count);
+            size += count;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+
+        /** Emit whole bytes from the bit buffer, stuffing a zero after every 0xFF */
+        private void drain() {
+            // Up to 47 buffered bits: 5 bytes, each possibly followed by a stuffed zero
+            ensure(((bitCount >> 3) + 1) * 2);
+            while (bitCount >= 8) {
+                int b = (int) (bitBuffer >>> (bitCount - 8)) & 0xFF;
+                buffer[size++] = (byte) b;
+                if (b == 0xFF) {
+                    buffer[size++] = 0;
+                }
+                bitCount -= 8;
+            }
+        }
+
+        private void append(int b) {
+            ensure(1);
+            buffer[size++] = (byte) b;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------
+    // Helpers
+    // ---------------------------------------------------------------------
+
+    private static int extend(int value, int size) {
+        return value < (1 << (size - 1)) ? value - (1 << size) + 1 : value;
+    }
+
+    private static int bitLength(int magnitude) {
+        return 32 - Integer.numberOfLeadingZeros(magnitude);
+    }
+
+    private static int ceilDiv(int a, int b) {
+        return (a + b - 1) / b;
+    }
+
+    private static int readU16(byte[] d, int p) {
+        return ((d[p] & 0xFF) << 8) | (d[p + 1] & 0xFF);
+    }
+}
@@ -0,0 +1,188 @@
+package dev.hemang.cameramulticapture;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * JPEG marker walking and TIFF byte-order helpers shared by the pure-Java EXIF
+ * readers and writers ({@link JpegExifOrientation}, {@link JpegExifSplicer} and,
+ * through the splicer, {@link JpegLosslessTransform}).
+ */
+final class JpegSegments {
+    static final int MARKER_SOI = 0xD8;
+    static final int MARKER_EOI = 0xD9;
+    static final int MARKER_SOS = 0xDA;
+    static final int MARKER_APP0 = 0xE0;
+    static final int MARKER_APP1 = 0xE1;
+
+    /** Offset of the TIFF header in a full Exif segment: FF E1 len(2) "Exif\0\0" */
+    static final int TIFF_START = 10;
+
+    private JpegSegments() {
+    }
+
+    /**
+     * Consume the SOI marker
+     * @throws IOException if the stream does not start with one
+     */
+    static void readSoi(InputStream in) throws IOException {
+        if (in.read() != 0xFF || in.read() != MARKER_SOI) {
+            throw new IOException("Not a JPEG");
+        }
+    }
+
+    /**
+     * Read the next marker, skipping fill bytes
+     * @return Marker code, or -1 at end of stream
+     * @throws IOException if the stream is not positioned at a marker
+     */
+    static int readMarker(InputStream in) throws IOException {
+        int b = in.read();
+        if (b < 0) {
+            return -1;
+        }
+        if (b != 0xFF) {
+            throw new IOException("Malformed JPEG marker");
+        }
+        int marker;
+        do {
+            marker = in.read();
+        } while (marker == 0xFF);
+        return marker;
+    }
+
+    /**
+     * @return true for TEM and RST markers, which have no length field
+     */
+    static boolean isStandalone(int marker) {
+        return marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7);
+    }
+
+    /**
+     * @return Length field of the segment that follows a marker, including itself
+     */
+    static int readSegmentLength(InputStream in) throws IOException {
+        int length = readUnsignedShort(in);
+        if (length < 2) {
+            throw new IOException("Invalid segment length " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Walk the segments in front of the first scan and return the Exif APP1 one.
+     * Other APP1 segments (XMP) are skipped.
+     * @param in Stream positioned at SOI
+     * @return Complete Exif APP1 segment including marker and length, or null if there is none
+     * @throws IOException if the data is not a JPEG
+     */
+    static byte[] readExifSegment(InputStream in) throws IOException {
+        readSoi(in);
+        while (true) {
+            int marker = readMarker(in);
+            if (marker < 0 || marker == MARKER_SOS || marker == MARKER_EOI) {
+                return null;
+            }
+            if (isStandalone(marker)) {
+                continue;
+            }
+
+            int length = readSegmentLength(in);
+            if (marker == MARKER_APP1 && length >= 2 + 14) {
+                byte[] segment = new byte[length + 2];
+                segment[0] = (byte) 0xFF;
+                segment[1] = (byte) MARKER_APP1;
+                segment[2] = (byte) (length >> 8);
+                segment[3] = (byte) length;
+                readFully(in, segment, 4, length - 2);
+                if (isExifPayload(segment, 4)) {
+                    return segment;
+                }
+            } else {
+                skipFully(in, length - 2);
+            }
+        }
+    }
+
+    static boolean isFrameMarker(int marker) {
+        return marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+    }
+
+    static boolean isExifPayload(byte[] data, int offset) {
+        return data.length >= offset + 6
+            && data[offset] == 'E' && data[offset + 1] == 'x' && data[offset + 2] == 'i'
+            && data[offset + 3] == 'f' && data[offset + 4] == 0 && data[offset + 5] == 0;
+    }
+
+    static int readShort(byte[] data, int offset, boolean bigEndian) {
+        int b0 = data[offset] & 0xFF;
+        int b1 = data[offset + 1] & 0xFF;
+        return bigEndian ? (b0 << 8) | b1 : (b1 << 8) | b0;
+    }
+
+    static int readInt(byte[] data, int offset, boolean bigEndian) {
+        if (bigEndian) {
+            return readShort(data, offset, true) << 16 | readShort(data, offset + 2, true);
+        }
+        return readShort(data, offset + 2, false) << 16 | readShort(data, offset, false);
+    }
+
+    static void writeShort(byte[] data, int offset, int value, boolean bigEndian) {
+        if (bigEndian) {
+            data[offset] = (byte) (value >> 8);
+            data[offset + 1] = (byte) value;
+        } else {
+            data[offset] = (byte) value;
+            data[offset + 1] = (byte) (value >> 8);
+        }
+    }
+
+    static void writeInt(byte[] data, int offset, int value, boolean bigEndian) {
+        if (bigEndian) {
+            writeShort(data, offset, value >>> 16, true);
+            writeShort(data, offset + 2, value, true);
+        } else {
+            writeShort(data, offset, value, false);
+            writeShort(data, offset + 2, value >>> 16, false);
+        }
+    }
+
+    static int readUnsignedShort(InputStream in) throws IOException {
+        int high = in.read();
+        int low = in.read();
+        if ((high | low) < 0) {
+            throw new EOFException();
+        }
+        return (high << 8) | low;
+    }
+
+    static void readFully(InputStream in, byte[] buffer) throws IOException {
+        readFully(in, buffer, 0, buffer.length);
+    }
+
+    static void readFully(InputStream in, byte[] buffer, int offset, int length) throws IOException {
+        int end = offset + length;
+        while (offset < end) {
+            int read = in.read(buffer, offset, end - offset);
+            if (read < 0) {
+                throw new EOFException();
+            }
+            offset += read;
+        }
+    }
+
+    static void skipFully(InputStream in, long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException();
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+}
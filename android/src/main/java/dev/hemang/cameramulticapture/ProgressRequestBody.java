@@ -0,0 +1,71 @@
+package dev.hemang.cameramulticapture;
+
+import java.io.IOException;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.ForwardingSink;
+import okio.Okio;
+
+/**
+ * Request body wrapper that counts the bytes handed to the network.
+ */
+public class ProgressRequestBody extends RequestBody {
+    /**
+     * Called from the uploading thread as the body is written
+     */
+    public interface Listener {
+        /**
+         * @param bytesWritten Bytes of this body written so far; restarts at 0 if OkHttp re-sends the body
+         */
+        void onBytesWritten(long bytesWritten);
+    }
+
+    private final RequestBody delegate;
+    private final Listener listener;
+
+    public ProgressRequestBody(RequestBody delegate, Listener listener) {
+        this.delegate = delegate;
+        this.listener = listener;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return delegate.contentType();
+    }
+
+    @Override
+    public long contentLength() throws IOException {
+        return delegate.contentLength();
+    }
+
+    @Override
+    public boolean isOneShot() {
+        return delegate.isOneShot();
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        CountingSink counting = new CountingSink(sink);
+        BufferedSink buffered = Okio.buffer(counting);
+        delegate.writeTo(buffered);
+        buffered.flush();
+    }
+
+    private final class CountingSink extends ForwardingSink {
+        private long written = 0;
+
+        CountingSink(BufferedSink delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void write(Buffer source, long byteCount) throws IOException {
+            super.write(source, byteCount);
+            written += byteCount;
+            listener.onBytesWritten(written);
+        }
+    }
+}
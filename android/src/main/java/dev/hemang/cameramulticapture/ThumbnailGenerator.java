@@ -1,16 +1,29 @@
 package dev.hemang.cameramulticapture;
 
+import android.content.Context;
 import android.graphics.Bitmap;
-import android.util.Base64;
+import android.net.Uri;
 import android.util.Log;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
 
 public class ThumbnailGenerator {
     
     private static final String TAG = "ThumbnailGenerator";
-    private static final int DEFAULT_THUMBNAIL_SIZE = 200;
+    public static final int DEFAULT_THUMBNAIL_SIZE = 200;
+    
+    /** Thumbnails returned inline as Base64 data URIs (legacy) */
+    public static final int FORMAT_BASE64 = 0;
+    /** Thumbnails written to the on-disk thumbnail cache and returned as file URIs */
+    public static final int FORMAT_FILE = 1;
+    
+    private static final String CACHE_DIR_NAME = "thumbnails";
+    private static final long MAX_CACHE_BYTES = 32L * 1024 * 1024;
+    private static final int THUMBNAIL_QUALITY = 85;
     
     /**
      * Generate a thumbnail from an already orientation-corrected image file
@@ -38,11 +51,83 @@ public class ThumbnailGenerator {
      * @return Base64 data URI string
      */
     public static String bitmapToBase64(Bitmap bitmap, int quality) {
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.JPEG, quality, outputStream);
-        byte[] bytes = outputStream.toByteArray();
+        return DataUriEncoder.encodeJpeg(bitmap, quality);
+    }
+    
+    /**
+     * Encode a thumbnail for the JS side in the requested format.
+     * File output falls back to Base64 if the cache can't be written.
+     * @param context Context used to locate the cache directory
+     * @param thumbnail Thumbnail bitmap (not recycled)
+     * @param format FORMAT_BASE64 or FORMAT_FILE
+     * @param sourceName File name of the photo or video the thumbnail belongs to
+     * @return Base64 data URI or file URI of the thumbnail
+     */
+    public static String encode(Context context, Bitmap thumbnail, int format, String sourceName) {
+        if (format == FORMAT_FILE) {
+            try {
+                return Uri.fromFile(writeToCache(context, thumbnail, sourceName)).toString();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to write thumbnail to cache, returning Base64: " + e.getMessage());
+            }
+        }
+        return bitmapToBase64(thumbnail, THUMBNAIL_QUALITY);
+    }
+    
+    /**
+     * @return Directory holding cached thumbnail files
+     */
+    public static File getCacheDir(Context context) {
+        return new File(context.getCacheDir(), CACHE_DIR_NAME);
+    }
+    
+    /**
+     * Delete the oldest cached thumbnails until the cache fits its size cap
+     * @param context Context used to locate the cache directory
+     */
+    public static void trimCache(Context context) {
+        File[] files = getCacheDir(context).listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= MAX_CACHE_BYTES) {
+            return;
+        }
+        
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (total <= MAX_CACHE_BYTES) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+        Log.d(TAG, "Trimmed thumbnail cache to " + total + " bytes");
+    }
+    
+    private static File writeToCache(Context context, Bitmap thumbnail, String sourceName) throws IOException {
+        File dir = getCacheDir(context);
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Failed to create " + dir.getAbsolutePath());
+        }
         
-        String base64 = Base64.encodeToString(bytes, Base64.NO_WRAP);
-        return "data:image/jpeg;base64," + base64;
+        String baseName = sourceName;
+        int dot = baseName.lastIndexOf('.');
+        if (dot > 0) {
+            baseName = baseName.substring(0, dot);
+        }
+        File file = new File(dir, baseName + "_thumb.jpg");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            if (!thumbnail.compress(Bitmap.CompressFormat.JPEG, THUMBNAIL_QUALITY, out)) {
+                throw new IOException("Failed to compress thumbnail");
+            }
+        }
+        return file;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,80 @@
+package dev.hemang.cameramulticapture;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+
+/**
+ * Persisted progress of chunked uploads, so a retried or rescheduled job
+ * resumes from the last chunk the server acknowledged.
+ *
+ * A checkpoint is only valid for the exact file it was taken for; if the file's
+ * size or modification time changed, the upload starts over. Checkpoints live
+ * in the job's row of {@link UploadJobStore}.
+ */
+public class UploadCheckpoints {
+    private static final String TAG = "UploadCheckpoints";
+
+    private final UploadJobStore store;
+
+    public UploadCheckpoints(Context context) {
+        this(UploadJobStore.get(context));
+    }
+
+    UploadCheckpoints(UploadJobStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Progress of one upload
+     */
+    public static class Checkpoint {
+        /** Bytes acknowledged by the server */
+        public final long offset;
+        /** Chunks acknowledged by the server (block ids 0..chunks-1 for block lists) */
+        public final int chunks;
+
+        public Checkpoint(long offset, int chunks) {
+            this.offset = offset;
+            this.chunks = chunks;
+        }
+    }
+
+    /**
+     * @param jobId Upload job
+     * @param file File being uploaded
+     * @param chunkSize Chunk size the checkpoint must have been taken with
+     * @return Saved progress, or a checkpoint at 0 if there is none or it no longer applies
+     */
+    public Checkpoint load(String jobId, File file, int chunkSize) {
+        UploadJobStore.Checkpoint saved = store.getCheckpoint(jobId);
+        if (saved == null) {
+            return new Checkpoint(0, 0);
+        }
+        if (saved.fileLength != file.length()
+            || saved.fileModified != file.lastModified()
+            || saved.chunkSize != chunkSize) {
+            Log.d(TAG, "Checkpoint for " + jobId + " is stale, starting over");
+            clear(jobId);
+            return new Checkpoint(0, 0);
+        }
+        return new Checkpoint(saved.offset, saved.chunks);
+    }
+
+    /**
+     * Record that the server acknowledged everything up to offset. The write is
+     * synchronous: the process may be killed right after a chunk.
+     */
+    public void save(String jobId, File file, int chunkSize, Checkpoint checkpoint) {
+        boolean saved = store.putCheckpoint(jobId, new UploadJobStore.Checkpoint(
+            file.length(), file.lastModified(), chunkSize, checkpoint.offset, checkpoint.chunks));
+        if (!saved) {
+            Log.w(TAG, "Failed to save checkpoint for " + jobId + ": job not in store");
+        }
+    }
+
+    public void clear(String jobId) {
+        store.clearCheckpoint(jobId);
+    }
+}
@@ -0,0 +1,159 @@
+package dev.hemang.cameramulticapture;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import okio.ByteString;
+
+/**
+ * Running checksum of the bytes of an upload.
+ *
+ * Bytes are fed by writing to this stream, which is what
+ * {@link ChecksumRequestBody} does as the body goes out, so the file is read once
+ * for both the transfer and the checksum. MD5 and SHA-256 come from
+ * MessageDigest; CRC32C (Castagnoli, as used by Google Cloud Storage) is computed
+ * here because java.util.zip.CRC32C needs API 26.
+ */
+public class UploadChecksum extends OutputStream {
+    public static final String ALGORITHM_MD5 = "md5";
+    public static final String ALGORITHM_SHA256 = "sha256";
+    public static final String ALGORITHM_CRC32C = "crc32c";
+
+    public static final String ENCODING_BASE64 = "base64";
+    public static final String ENCODING_HEX = "hex";
+
+    private static final int[] CRC32C_TABLE = new int[256];
+
+    static {
+        for (int n = 0; n < 256; n++) {
+            int c = n;
+            for (int k = 0; k < 8; k++) {
+                c = (c & 1) != 0 ? (c >>> 1) ^ 0x82F63B78 : c >>> 1;
+            }
+            CRC32C_TABLE[n] = c;
+        }
+    }
+
+    private final String algorithm;
+    private final MessageDigest digest;
+    private int crc = 0xFFFFFFFF;
+    private byte[] value;
+
+    /**
+     * @param algorithm One of the ALGORITHM_* values
+     * @throws IllegalArgumentException for an unknown algorithm
+     */
+    public UploadChecksum(String algorithm) {
+        this.algorithm = algorithm;
+        try {
+            if (ALGORITHM_MD5.equals(algorithm)) {
+                digest = MessageDigest.getInstance("MD5");
+            } else if (ALGORITHM_SHA256.equals(algorithm)) {
+                digest = MessageDigest.getInstance("SHA-256");
+            } else if (ALGORITHM_CRC32C.equals(algorithm)) {
+                digest = null;
+            } else {
+                throw new IllegalArgumentException("Unknown checksum algorithm: " + algorithm);
+            }
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    public String getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Start over, e.g. when a body is written again
+     */
+    public void reset() {
+        if (digest != null) {
+            digest.reset();
+        }
+        crc = 0xFFFFFFFF;
+        value = null;
+    }
+
+    @Override
+    public void write(int b) {
+        write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        if (value != null) {
+            throw new IllegalStateException("Checksum already finished");
+        }
+        if (digest != null) {
+            digest.update(bytes, offset, length);
+            return;
+        }
+        int c = crc;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            c = CRC32C_TABLE[(c ^ bytes[i]) & 0xFF] ^ (c >>> 8);
+        }
+        crc = c;
+    }
+
+    /**
+     * Feed a byte range of a file, for the parts that aren't streamed through a body
+     */
+    public void update(File file, long offset, long length) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        try (FileInputStream in = new FileInputStream(file)) {
+            in.getChannel().position(offset);
+            long remaining = length;
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read == -1) {
+                    throw new IOException("Unexpected end of " + file.getName());
+                }
+                write(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+    }
+
+    /**
+     * Finish and return the checksum; later calls return the same value until reset
+     */
+    public byte[] digest() {
+        if (value == null) {
+            if (digest != null) {
+                value = digest.digest();
+            } else {
+                int c = ~crc;
+                value = new byte[] { (byte) (c >>> 24), (byte) (c >>> 16), (byte) (c >>> 8), (byte) c };
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @param encoding ENCODING_BASE64 or ENCODING_HEX
+     */
+    public String encode(String encoding) {
+        byte[] bytes = digest();
+        if (ENCODING_HEX.equals(encoding)) {
+            StringBuilder hex = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        }
+        return ByteString.of(bytes).base64();
+    }
+
+    /**
+     * Length of {@link #encode}'s result, known before any byte is written
+     */
+    public int encodedLength(String encoding) {
+        int size = digest != null ? digest.getDigestLength() : 4;
+        return ENCODING_HEX.equals(encoding) ? size * 2 : (size + 2) / 3 * 4;
+    }
+}
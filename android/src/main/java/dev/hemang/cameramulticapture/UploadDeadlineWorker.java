@@ -0,0 +1,61 @@
+package dev.hemang.cameramulticapture;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.WorkInfo;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.util.UUID;
+
+/**
+ * Sweeps the store when the earliest bulk deadline passes. Every bulk upload past its
+ * deadline that is still waiting for an unmetered network has its request updated in
+ * place to run on any network; the sweep then schedules itself for the next deadline.
+ */
+public class UploadDeadlineWorker extends Worker {
+    private static final String TAG = "UploadDeadlineWorker";
+
+    public UploadDeadlineWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        Context context = getApplicationContext();
+        UploadJobStore store = UploadJobStore.get(context);
+        WorkManager workManager = WorkManager.getInstance(context);
+        boolean failed = false;
+        for (UploadJob job : store.getDueDeadlines(System.currentTimeMillis())) {
+            try {
+                relax(workManager, job);
+                store.clearDeadline(job.jobId);
+            } catch (Exception e) {
+                Log.w(TAG, "Failed to relax constraints of " + job.jobId + ": " + e.getMessage());
+                failed = true;
+            }
+        }
+        if (failed) {
+            return Result.retry();
+        }
+        // Runs after this sweep finishes instead of cancelling it
+        UploadScheduler.scheduleDeadlineSweep(context, ExistingWorkPolicy.APPEND_OR_REPLACE);
+        return Result.success();
+    }
+
+    private static void relax(WorkManager workManager, UploadJob job) throws Exception {
+        if (job.workId == null) {
+            return;
+        }
+        WorkInfo workInfo = workManager.getWorkInfoById(UUID.fromString(job.workId)).get();
+        if (workInfo == null || workInfo.getState() != WorkInfo.State.ENQUEUED) {
+            return;
+        }
+        WorkManager.UpdateResult result = workManager.updateWork(UploadScheduler.newRequest(job, true)).get();
+        Log.d(TAG, "Deadline reached for " + job.jobId + ", allowing any network: " + result);
+    }
+}
@@ -0,0 +1,70 @@
+package dev.hemang.cameramulticapture;
+
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Finds queued or completed uploads of the same content to the same endpoint.
+ *
+ * Content is identified by its SHA-256. Hashes are cached in the job store by
+ * path, size and modification time, so re-queuing an unchanged file doesn't read
+ * it again.
+ */
+public class UploadDeduplicator {
+    private static final String TAG = "UploadDeduplicator";
+
+    private final UploadJobStore store;
+
+    public UploadDeduplicator(UploadJobStore store) {
+        this.store = store;
+    }
+
+    /**
+     * @return Hex SHA-256 of the file at imageUri, or null if it can't be read
+     */
+    public String contentHash(String imageUri) {
+        String path = Uri.parse(imageUri).getPath();
+        if (path == null) {
+            return null;
+        }
+        File file = new File(path);
+        if (!file.isFile()) {
+            return null;
+        }
+        long size = file.length();
+        long modified = file.lastModified();
+        String hash = store.getContentHash(path, size, modified);
+        if (hash != null) {
+            return hash;
+        }
+        try {
+            UploadChecksum checksum = new UploadChecksum(UploadChecksum.ALGORITHM_SHA256);
+            checksum.update(file, 0, size);
+            hash = checksum.encode(UploadChecksum.ENCODING_HEX);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to hash " + path + ": " + e.getMessage());
+            return null;
+        }
+        store.putContentHash(path, size, modified, hash);
+        return hash;
+    }
+
+    /**
+     * Set the job's content hash and look for an existing job with the same content
+     * @return Id of the existing job, or null if the job is new or its file can't be read
+     */
+    public String findDuplicate(UploadJob job) {
+        job.contentHash = contentHash(job.imageUri);
+        if (job.contentHash == null) {
+            return null;
+        }
+        String existing = store.findJobByContent(job.contentHash, job.uploadEndpoint);
+        if (existing != null) {
+            Log.d(TAG, "Upload of " + job.imageUri + " already queued as " + existing);
+        }
+        return existing;
+    }
+}
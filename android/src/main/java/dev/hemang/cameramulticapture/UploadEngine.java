@@ -0,0 +1,254 @@
+package dev.hemang.cameramulticapture;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Process-wide HTTP engine shared by all upload jobs.
+ *
+ * One OkHttpClient means one connection pool, so consecutive uploads to the same
+ * host reuse warm TCP/TLS connections, and servers that speak HTTP/2 multiplex
+ * concurrent uploads over a single connection. Uploads to a host are additionally
+ * gated by a per-host limit so a large queue doesn't open a socket per job, and
+ * all requests share a global limit that adapts to measured throughput (see
+ * {@link AdaptiveConcurrencyLimit}). High-priority requests skip the global limit.
+ * Jobs of a queueBatchUpload call also hold a slot of their batch's own limit for
+ * each attempt (see {@link #acquireBatchSlot}), which leaves other batches and
+ * the per-host limit alone.
+ */
+public class UploadEngine {
+    private static final String TAG = "UploadEngine";
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 4;
+
+    private static volatile UploadEngine instance;
+
+    private final OkHttpClient client;
+    private final Map<String, HostLimit> hostLimits = new HashMap<>();
+    /** Limits of batches with a job waiting or running; guarded by itself */
+    private final Map<String, BatchLimit> batchLimits = new HashMap<>();
+    private final AdaptiveConcurrencyLimit globalLimit = new AdaptiveConcurrencyLimit((oldLimit, newLimit, bytesPerSecond) ->
+        Log.d(TAG, "Global upload limit " + oldLimit + " -> " + newLimit + " at " + bytesPerSecond + " B/s"));
+
+    /**
+     * @return The shared engine
+     */
+    public static UploadEngine get() {
+        if (instance == null) {
+            synchronized (UploadEngine.class) {
+                if (instance == null) {
+                    instance = new UploadEngine();
+                }
+            }
+        }
+        return instance;
+    }
+
+    private UploadEngine() {
+        client = new OkHttpClient.Builder()
+            .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+            .connectionPool(new ConnectionPool(DEFAULT_MAX_CONNECTIONS_PER_HOST * 2, 5, TimeUnit.MINUTES))
+            .connectTimeout(45, TimeUnit.SECONDS)
+            .writeTimeout(120, TimeUnit.SECONDS)
+            .readTimeout(90, TimeUnit.SECONDS)
+            .retryOnConnectionFailure(true)
+            .build();
+    }
+
+    /**
+     * @return The shared client, for callers that manage concurrency themselves
+     */
+    public OkHttpClient getClient() {
+        return client;
+    }
+
+    /**
+     * Handles a response while its host slot is still held
+     */
+    public interface ResponseHandler<T> {
+        T handle(Response response) throws IOException;
+    }
+
+    /**
+     * Execute a request once a slot for its host is free. The response is closed
+     * and the slot released when the handler returns.
+     *
+     * @param request Request to execute
+     * @param maxPerHost Concurrent requests allowed to the request's host; the latest value wins
+     * @param handler Consumes the response
+     * @return The handler's result
+     * @throws IOException if the call fails or the waiting thread is interrupted
+     */
+    public <T> T execute(Request request, int maxPerHost, ResponseHandler<T> handler) throws IOException {
+        return execute(request, maxPerHost, false, handler);
+    }
+
+    /**
+     * @param highPriority Skip the global limit; the per-host limit still applies
+     * @see #execute(Request, int, ResponseHandler)
+     */
+    public <T> T execute(Request request, int maxPerHost, boolean highPriority, ResponseHandler<T> handler)
+            throws IOException {
+        HostLimit limit = limitFor(request.url().host(), maxPerHost);
+        boolean global = false;
+        try {
+            // Host slot first, so a global slot is only held by a request that can go
+            limit.acquire();
+            if (!highPriority) {
+                try {
+                    globalLimit.acquire(SystemClock.elapsedRealtime());
+                    global = true;
+                } catch (InterruptedException e) {
+                    limit.release();
+                    throw e;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a connection slot");
+        }
+        long bytes = 0;
+        boolean congestion = false;
+        try (Response response = client.newCall(request).execute()) {
+            int code = response.code();
+            congestion = code == 429 || code >= 500;
+            if (request.body() != null) {
+                bytes = Math.max(0, request.body().contentLength());
+            }
+            return handler.handle(response);
+        } catch (InterruptedIOException e) {
+            // Timeouts: the path is saturated
+            congestion = true;
+            throw e;
+        } finally {
+            limit.release();
+            if (global) {
+                globalLimit.release(bytes, congestion, SystemClock.elapsedRealtime());
+            }
+        }
+    }
+
+    /**
+     * Wait for one of a batch's slots. Every job of a batch passes the same maxParallel;
+     * the first one to arrive sizes the limit, which lives while any of them holds or
+     * waits for a slot.
+     *
+     * @param batchId Batch the job belongs to
+     * @param maxParallel Jobs of the batch allowed to upload at once
+     * @return Slot to close once the attempt is over
+     * @throws InterruptedIOException if the waiting thread is interrupted
+     */
+    public BatchSlot acquireBatchSlot(String batchId, int maxParallel) throws InterruptedIOException {
+        BatchLimit limit;
+        synchronized (batchLimits) {
+            limit = batchLimits.get(batchId);
+            if (limit == null) {
+                limit = new BatchLimit(Math.max(1, maxParallel));
+                batchLimits.put(batchId, limit);
+            }
+            limit.users++;
+        }
+        try {
+            limit.permits.acquire();
+        } catch (InterruptedException e) {
+            leaveBatch(batchId, limit);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a batch slot");
+        }
+        return new BatchSlot(batchId, limit);
+    }
+
+    private void leaveBatch(String batchId, BatchLimit limit) {
+        synchronized (batchLimits) {
+            if (--limit.users == 0) {
+                batchLimits.remove(batchId);
+            }
+        }
+    }
+
+    /**
+     * Slot in a batch's limit, released by {@link #close()}
+     */
+    public final class BatchSlot implements Closeable {
+        private final String batchId;
+        private final BatchLimit limit;
+        private boolean closed = false;
+
+        private BatchSlot(String batchId, BatchLimit limit) {
+            this.batchId = batchId;
+            this.limit = limit;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                limit.permits.release();
+                leaveBatch(batchId, limit);
+            }
+        }
+    }
+
+    private static final class BatchLimit {
+        final Semaphore permits;
+        /** Jobs holding or waiting for a permit */
+        int users = 0;
+
+        BatchLimit(int maxParallel) {
+            permits = new Semaphore(maxParallel, true);
+        }
+    }
+
+    private synchronized HostLimit limitFor(String host, int maxPerHost) {
+        HostLimit limit = hostLimits.get(host);
+        if (limit == null) {
+            limit = new HostLimit();
+            hostLimits.put(host, limit);
+        }
+        limit.setMax(Math.max(1, maxPerHost));
+        return limit;
+    }
+
+    /**
+     * Counting gate whose capacity can change while requests are in flight
+     */
+    private static final class HostLimit {
+        private int max = DEFAULT_MAX_CONNECTIONS_PER_HOST;
+        private int active = 0;
+
+        synchronized void setMax(int max) {
+            if (this.max != max) {
+                Log.d(TAG, "Per-host upload limit " + this.max + " -> " + max);
+                this.max = max;
+                notifyAll();
+            }
+        }
+
+        synchronized void acquire() throws InterruptedException {
+            while (active >= max) {
+                wait();
+            }
+            active++;
+        }
+
+        synchronized void release() {
+            active--;
+            notifyAll();
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package dev.hemang.cameramulticapture;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.util.Log;
+import androidx.work.Data;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import okhttp3.MediaType;
+
+/**
+ * Optional resize/recompress stage run by the upload worker before transfer.
+ *
+ * The image is decoded subsampled and scaled to a maximum long edge, then encoded
+ * at a fixed quality or, with a byte budget, at the highest quality that fits
+ * (binary search). Search probes only count their output; the one encode that
+ * is kept goes straight to the cache file. EXIF is carried over through {@link ExifWrapper}. The result
+ * is written once per job to the cache and reused by retries, so a resumed
+ * chunked upload sees the same bytes.
+ */
+public class UploadImageTransform {
+    private static final String TAG = "UploadImageTransform";
+    private static final String CACHE_DIR_NAME = "upload_transforms";
+
+    public static final int FORMAT_JPEG = 0;
+    public static final int FORMAT_WEBP = 1;
+
+    public static final int DEFAULT_QUALITY = 90;
+    /** Lowest quality the byte budget search will go to */
+    public static final int MIN_QUALITY = 30;
+
+    public static final MediaType MEDIA_TYPE_JPEG = MediaType.parse("image/jpeg");
+    public static final MediaType MEDIA_TYPE_WEBP = MediaType.parse("image/webp");
+
+    /** Input data keys of requests enqueued before the job store existed */
+    static final String KEY_MAX_DIMENSION = "resizeMaxDimension";
+    static final String KEY_QUALITY = "resizeQuality";
+    static final String KEY_FORMAT = "resizeFormat";
+    static final String KEY_TARGET_BYTES = "resizeTargetBytes";
+
+    private final int maxDimension;
+    private final int quality;
+    private final int format;
+    private final long targetBytes;
+
+    /**
+     * @param maxDimension Maximum long edge in pixels, 0 to keep the size
+     * @param quality Encoding quality, or -1 for the default (the upper bound when searching)
+     * @param format FORMAT_JPEG or FORMAT_WEBP
+     * @param targetBytes Byte budget, 0 for none
+     */
+    public UploadImageTransform(int maxDimension, int quality, int format, long targetBytes) {
+        this.maxDimension = Math.max(0, maxDimension);
+        this.quality = quality;
+        this.format = format;
+        this.targetBytes = Math.max(0, targetBytes);
+    }
+
+    /**
+     * @return The transform described by legacy worker input, or null if none was requested
+     */
+    public static UploadImageTransform fromInputData(Data data) {
+        int maxDimension = data.getInt(KEY_MAX_DIMENSION, 0);
+        int quality = data.getInt(KEY_QUALITY, -1);
+        int format = data.getInt(KEY_FORMAT, FORMAT_JPEG);
+        long targetBytes = data.getLong(KEY_TARGET_BYTES, 0);
+        if (maxDimension <= 0 && quality < 0 && format == FORMAT_JPEG && targetBytes <= 0) {
+            return null;
+        }
+        return new UploadImageTransform(maxDimension, quality, format, targetBytes);
+    }
+
+    public int getMaxDimension() {
+        return maxDimension;
+    }
+
+    public int getQuality() {
+        return quality;
+    }
+
+    public int getFormat() {
+        return format;
+    }
+
+    public long getTargetBytes() {
+        return targetBytes;
+    }
+
+    public MediaType getMediaType() {
+        return format == FORMAT_WEBP ? MEDIA_TYPE_WEBP : MEDIA_TYPE_JPEG;
+    }
+
+    public String getExtension() {
+        return format == FORMAT_WEBP ? ".webp" : ".jpg";
+    }
+
+    /**
+     * @return Where the transformed file of a job is kept
+     */
+    public File outputFile(Context context, String jobId) {
+        return new File(new File(context.getCacheDir(), CACHE_DIR_NAME), jobId + getExtension());
+    }
+
+    /**
+     * Produce the file to upload
+     * @param source Original image
+     * @param output Destination for the transformed image, reused if already up to date
+     * @return output, or source when it already satisfies every option
+     * @throws IOException if the image can't be decoded or written
+     */
+    public File apply(File source, File output) throws IOException {
+        if (output.exists() && output.lastModified() >= source.lastModified()) {
+            Log.d(TAG, "Reusing transformed " + output.getName());
+            return output;
+        }
+
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(source.getAbsolutePath(), bounds);
+        boolean oversized = maxDimension > 0 && Math.max(bounds.outWidth, bounds.outHeight) > maxDimension;
+        boolean overBudget = targetBytes > 0 && source.length() > targetBytes;
+        boolean reencode = quality >= 0 || format != FORMAT_JPEG;
+        if (!oversized && !overBudget && !reencode) {
+            return source;
+        }
+
+        Bitmap bitmap = ImageUtils.decodeScaled(source, maxDimension);
+        if (bitmap == null) {
+            throw new IOException("Failed to decode " + source.getName());
+        }
+        File dir = output.getParentFile();
+        File temp = new File(dir, output.getName() + ".tmp");
+        try {
+            if (dir != null && !dir.exists() && !dir.mkdirs()) {
+                throw new IOException("Failed to create " + dir);
+            }
+            int encodeQuality = targetBytes > 0 ? qualityWithinBudget(bitmap) : qualityOrDefault();
+            boolean encoded;
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024)) {
+                encoded = encode(bitmap, encodeQuality, out);
+            }
+            if (!encoded) {
+                temp.delete();
+                throw new IOException("Failed to encode " + source.getName());
+            }
+        } finally {
+            BitmapPool.get().release(bitmap);
+        }
+        new ExifWrapper(source.getAbsolutePath()).copyExif(temp.getAbsolutePath());
+        // The pixels are already upright; an attribute-copy fallback would keep the source orientation
+        new ExifWrapper(temp.getAbsolutePath()).resetOrientation();
+        if (!temp.renameTo(output)) {
+            temp.delete();
+            throw new IOException("Failed to write " + output.getName());
+        }
+        Log.d(TAG, "Transformed " + source.getName() + ": " + source.length() + " -> " + output.length() + " bytes");
+        return output;
+    }
+
+    private int qualityOrDefault() {
+        return quality >= 0 ? Math.min(100, quality) : DEFAULT_QUALITY;
+    }
+
+    /**
+     * Highest quality between MIN_QUALITY and the configured quality whose output
+     * fits the budget, or MIN_QUALITY if nothing fits
+     */
+    private int qualityWithinBudget(Bitmap bitmap) {
+        int low = MIN_QUALITY;
+        int high = Math.max(MIN_QUALITY, qualityOrDefault());
+        int best = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (encode(bitmap, mid, new BudgetStream(targetBytes))) {
+                best = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (best < 0) {
+            Log.w(TAG, "Target of " + targetBytes + " bytes not reachable, using quality " + MIN_QUALITY);
+            return MIN_QUALITY;
+        }
+        return best;
+    }
+
+    /**
+     * @return false if the encoder failed or the stream refused the output
+     */
+    @SuppressWarnings("deprecation")
+    private boolean encode(Bitmap bitmap, int quality, OutputStream out) {
+        Bitmap.CompressFormat compressFormat;
+        if (format == FORMAT_WEBP) {
+            compressFormat = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? Bitmap.CompressFormat.WEBP_LOSSY
+                : Bitmap.CompressFormat.WEBP;
+        } else {
+            compressFormat = Bitmap.CompressFormat.JPEG;
+        }
+        return bitmap.compress(compressFormat, quality, out);
+    }
+
+    /**
+     * Discards a probe's output and only counts it. Writing past the budget fails,
+     * which makes compress() stop and return false instead of finishing an encode
+     * that is already known not to fit.
+     */
+    private static final class BudgetStream extends OutputStream {
+        private final long budget;
+        private long count;
+
+        BudgetStream(long budget) {
+            this.budget = budget;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            add(1);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            add(length);
+        }
+
+        private void add(long bytes) throws IOException {
+            count += bytes;
+            if (count > budget) {
+                throw new IOException("Over budget of " + budget + " bytes");
+            }
+        }
+    }
+}
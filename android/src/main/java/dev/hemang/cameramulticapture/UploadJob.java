@@ -0,0 +1,87 @@
+package dev.hemang.cameramulticapture;
+
+import androidx.work.Data;
+
+/**
+ * Metadata and state of one background upload, as kept in {@link UploadJobStore}.
+ */
+public class UploadJob {
+    public static final String STATUS_PENDING = "pending";
+    public static final String STATUS_UPLOADING = "uploading";
+    public static final String STATUS_COMPLETED = "completed";
+    public static final String STATUS_FAILED = "failed";
+
+    /** The only key WorkManager requests carry */
+    public static final String KEY_JOB_ID = "jobId";
+
+    public String jobId;
+    public String batchId;
+    /** Jobs of the batch allowed to upload at once, 0 for no batch limit */
+    public int maxParallel = 0;
+    public String imageUri;
+    public String uploadEndpoint;
+    /** Headers as a JSON object string */
+    public String headers = "{}";
+    /** Form fields as a JSON object string */
+    public String formData = "{}";
+    public String method = "POST";
+    public String fileName;
+    public boolean deleteAfterUpload = true;
+    public int maxConnectionsPerHost = UploadEngine.DEFAULT_MAX_CONNECTIONS_PER_HOST;
+    public int chunkSize = 0;
+    public int chunkProtocol = ChunkedUpload.PROTOCOL_CONTENT_RANGE;
+    /** Pre-upload resize/recompress, or null */
+    public UploadImageTransform transform;
+    /** One of the UploadScheduler.PRIORITY_* values */
+    public String priority = UploadScheduler.PRIORITY_NORMAL;
+    /** When a bulk job stops waiting for an unmetered network, 0 for never */
+    public long deadlineAt = 0;
+    /** Id of the WorkManager request running this job */
+    public String workId;
+    /** One of the UploadChecksum.ALGORITHM_* values, or null for no checksum */
+    public String checksumAlgorithm;
+    /** Header carrying the checksum, or null */
+    public String checksumHeader;
+    /** Trailing multipart form field carrying the checksum, or null */
+    public String checksumFormField;
+    public String checksumEncoding = UploadChecksum.ENCODING_BASE64;
+    /** Encoded checksum of the uploaded bytes, set once the upload completed */
+    public String checksum;
+    /** SHA-256 of the source file when the job was enqueued with deduplication, or null */
+    public String contentHash;
+
+    public String status = STATUS_PENDING;
+    public int attempts = 0;
+    public int maxAttempts = UploadRetryPolicy.DEFAULT_MAX_ATTEMPTS;
+    /** Earliest time the next attempt may start, 0 for any time */
+    public long nextAttemptAt = 0;
+    /** Bytes acknowledged by the server for chunked uploads */
+    public long bytesOffset = 0;
+    public String error;
+    public long createdAt;
+    public long updatedAt;
+
+    /**
+     * Read a job from the input of a request enqueued before the job store existed,
+     * when everything was passed through Data
+     */
+    public static UploadJob fromLegacyData(Data data) {
+        UploadJob job = new UploadJob();
+        job.jobId = data.getString(KEY_JOB_ID);
+        job.imageUri = data.getString("imageUri");
+        job.uploadEndpoint = data.getString("uploadEndpoint");
+        String headers = data.getString("headers");
+        job.headers = headers != null ? headers : "{}";
+        String formData = data.getString("formData");
+        job.formData = formData != null ? formData : "{}";
+        String method = data.getString("method");
+        job.method = method != null ? method : "POST";
+        job.fileName = data.getString("fileName");
+        job.deleteAfterUpload = data.getBoolean("deleteAfterUpload", true);
+        job.maxConnectionsPerHost = data.getInt("maxConnectionsPerHost", UploadEngine.DEFAULT_MAX_CONNECTIONS_PER_HOST);
+        job.chunkSize = data.getInt("chunkSize", 0);
+        job.chunkProtocol = data.getInt("chunkProtocol", ChunkedUpload.PROTOCOL_CONTENT_RANGE);
+        job.transform = UploadImageTransform.fromInputData(data);
+        return job;
+    }
+}
@@ -0,0 +1,536 @@
+package dev.hemang.cameramulticapture;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SQLite index of upload jobs.
+ *
+ * Holds everything a job needs (endpoint, headers, form data, options) plus its
+ * status, attempt count and chunk checkpoint, so WorkManager requests only carry
+ * the job id and lookups don't go through WorkManager tags. Indexed by job id
+ * (primary key) and batch id. The outcome of every attempt is kept in a
+ * separate table.
+ */
+public class UploadJobStore extends SQLiteOpenHelper {
+    private static final String TAG = "UploadJobStore";
+    private static final String DATABASE_NAME = "camera_multicapture_uploads.db";
+    private static final int DATABASE_VERSION = 1;
+    /** Completed and failed jobs are dropped once they are this old */
+    private static final long RETENTION_MS = 7L * 24 * 60 * 60 * 1000;
+
+    private static final String TABLE_JOBS = "upload_jobs";
+    private static final String TABLE_ATTEMPTS = "upload_attempts";
+    private static final String TABLE_CONTENT_HASHES = "content_hashes";
+
+    private static final String COL_JOB_ID = "job_id";
+    private static final String COL_BATCH_ID = "batch_id";
+    private static final String COL_MAX_PARALLEL = "max_parallel";
+    private static final String COL_IMAGE_URI = "image_uri";
+    private static final String COL_ENDPOINT = "endpoint";
+    private static final String COL_HEADERS = "headers";
+    private static final String COL_FORM_DATA = "form_data";
+    private static final String COL_METHOD = "method";
+    private static final String COL_FILE_NAME = "file_name";
+    private static final String COL_DELETE_AFTER_UPLOAD = "delete_after_upload";
+    private static final String COL_MAX_CONNECTIONS = "max_connections";
+    private static final String COL_CHUNK_SIZE = "chunk_size";
+    private static final String COL_CHUNK_PROTOCOL = "chunk_protocol";
+    private static final String COL_RESIZE_MAX_DIMENSION = "resize_max_dimension";
+    private static final String COL_RESIZE_QUALITY = "resize_quality";
+    private static final String COL_RESIZE_FORMAT = "resize_format";
+    private static final String COL_RESIZE_TARGET_BYTES = "resize_target_bytes";
+    private static final String COL_STATUS = "status";
+    private static final String COL_ATTEMPTS = "attempts";
+    private static final String COL_ERROR = "error";
+    private static final String COL_BYTES_OFFSET = "bytes_offset";
+    private static final String COL_CHUNK_COUNT = "chunk_count";
+    /** File length, mtime and chunk size the checkpoint was taken for */
+    private static final String COL_CHECKPOINT_LENGTH = "checkpoint_length";
+    private static final String COL_CHECKPOINT_MODIFIED = "checkpoint_modified";
+    private static final String COL_CHECKPOINT_CHUNK_SIZE = "checkpoint_chunk_size";
+    private static final String COL_MAX_ATTEMPTS = "max_attempts";
+    /** Earliest time the next attempt may start, for Retry-After longer than WorkManager's backoff */
+    private static final String COL_NEXT_ATTEMPT_AT = "next_attempt_at";
+    private static final String COL_PRIORITY = "priority";
+    private static final String COL_DEADLINE_AT = "deadline_at";
+    private static final String COL_WORK_ID = "work_id";
+    private static final String COL_CHECKSUM_ALGORITHM = "checksum_algorithm";
+    private static final String COL_CHECKSUM_HEADER = "checksum_header";
+    private static final String COL_CHECKSUM_FORM_FIELD = "checksum_form_field";
+    private static final String COL_CHECKSUM_ENCODING = "checksum_encoding";
+    private static final String COL_CHECKSUM = "checksum";
+    private static final String COL_CONTENT_HASH = "content_hash";
+    private static final String COL_CREATED_AT = "created_at";
+    private static final String COL_UPDATED_AT = "updated_at";
+
+    private static final String COL_ATTEMPT = "attempt";
+    private static final String COL_STARTED_AT = "started_at";
+    private static final String COL_DURATION_MS = "duration_ms";
+    private static final String COL_OUTCOME = "outcome";
+    private static final String COL_HTTP_CODE = "http_code";
+
+    private static final String COL_PATH = "path";
+    private static final String COL_SIZE = "size";
+    private static final String COL_MODIFIED = "modified";
+    private static final String COL_HASH = "hash";
+    private static final String COL_CACHED_AT = "cached_at";
+
+    /** Selection of bulk jobs still waiting for their deadline */
+    private static final String DEADLINE_WAITING = COL_STATUS + " = ? AND " + COL_PRIORITY + " = ? AND "
+        + COL_DEADLINE_AT + " > 0";
+
+    private static volatile UploadJobStore instance;
+
+    /**
+     * @return The process-wide store
+     */
+    public static UploadJobStore get(Context context) {
+        if (instance == null) {
+            synchronized (UploadJobStore.class) {
+                if (instance == null) {
+                    instance = new UploadJobStore(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private UploadJobStore(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onConfigure(SQLiteDatabase db) {
+        // Workers and the plugin read while other workers write
+        db.enableWriteAheadLogging();
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_JOBS + " ("
+            + COL_JOB_ID + " TEXT PRIMARY KEY NOT NULL, "
+            + COL_BATCH_ID + " TEXT, "
+            + COL_MAX_PARALLEL + " INTEGER NOT NULL DEFAULT 0, "
+            + COL_IMAGE_URI + " TEXT NOT NULL, "
+            + COL_ENDPOINT + " TEXT NOT NULL, "
+            + COL_HEADERS + " TEXT NOT NULL, "
+            + COL_FORM_DATA + " TEXT NOT NULL, "
+            + COL_METHOD + " TEXT NOT NULL, "
+            + COL_FILE_NAME + " TEXT, "
+            + COL_DELETE_AFTER_UPLOAD + " INTEGER NOT NULL, "
+            + COL_MAX_CONNECTIONS + " INTEGER NOT NULL, "
+            + COL_CHUNK_SIZE + " INTEGER NOT NULL, "
+            + COL_CHUNK_PROTOCOL + " INTEGER NOT NULL, "
+            + COL_RESIZE_MAX_DIMENSION + " INTEGER, "
+            + COL_RESIZE_QUALITY + " INTEGER, "
+            + COL_RESIZE_FORMAT + " INTEGER, "
+            + COL_RESIZE_TARGET_BYTES + " INTEGER, "
+            + COL_STATUS + " TEXT NOT NULL, "
+            + COL_ATTEMPTS + " INTEGER NOT NULL DEFAULT 0, "
+            + COL_MAX_ATTEMPTS + " INTEGER NOT NULL DEFAULT " + UploadRetryPolicy.DEFAULT_MAX_ATTEMPTS + ", "
+            + COL_NEXT_ATTEMPT_AT + " INTEGER NOT NULL DEFAULT 0, "
+            + COL_ERROR + " TEXT, "
+            + COL_BYTES_OFFSET + " INTEGER NOT NULL DEFAULT 0, "
+            + COL_CHUNK_COUNT + " INTEGER NOT NULL DEFAULT 0, "
+            + COL_CHECKPOINT_LENGTH + " INTEGER, "
+            + COL_CHECKPOINT_MODIFIED + " INTEGER, "
+            + COL_CHECKPOINT_CHUNK_SIZE + " INTEGER, "
+            + COL_PRIORITY + " TEXT NOT NULL DEFAULT '" + UploadScheduler.PRIORITY_NORMAL + "', "
+            + COL_DEADLINE_AT + " INTEGER NOT NULL DEFAULT 0, "
+            + COL_WORK_ID + " TEXT, "
+            + COL_CHECKSUM_ALGORITHM + " TEXT, "
+            + COL_CHECKSUM_HEADER + " TEXT, "
+            + COL_CHECKSUM_FORM_FIELD + " TEXT, "
+            + COL_CHECKSUM_ENCODING + " TEXT NOT NULL DEFAULT '" + UploadChecksum.ENCODING_BASE64 + "', "
+            + COL_CHECKSUM + " TEXT, "
+            + COL_CONTENT_HASH + " TEXT, "
+            + COL_CREATED_AT + " INTEGER NOT NULL, "
+            + COL_UPDATED_AT + " INTEGER NOT NULL)");
+        db.execSQL("CREATE INDEX idx_upload_jobs_batch ON " + TABLE_JOBS + " (" + COL_BATCH_ID + ")");
+        db.execSQL("CREATE INDEX idx_upload_jobs_status ON " + TABLE_JOBS
+            + " (" + COL_STATUS + ", " + COL_UPDATED_AT + ")");
+        db.execSQL("CREATE INDEX idx_upload_jobs_content ON " + TABLE_JOBS
+            + " (" + COL_CONTENT_HASH + ", " + COL_ENDPOINT + ")");
+
+        db.execSQL("CREATE TABLE " + TABLE_ATTEMPTS + " ("
+            + COL_JOB_ID + " TEXT NOT NULL, "
+            + COL_ATTEMPT + " INTEGER NOT NULL, "
+            + COL_STARTED_AT + " INTEGER NOT NULL, "
+            + COL_DURATION_MS + " INTEGER NOT NULL, "
+            + COL_OUTCOME + " TEXT NOT NULL, "
+            + COL_HTTP_CODE + " INTEGER, "
+            + COL_ERROR + " TEXT, "
+            + "PRIMARY KEY (" + COL_JOB_ID + ", " + COL_ATTEMPT + "))");
+
+        db.execSQL("CREATE TABLE " + TABLE_CONTENT_HASHES + " ("
+            + COL_PATH + " TEXT PRIMARY KEY NOT NULL, "
+            + COL_SIZE + " INTEGER NOT NULL, "
+            + COL_MODIFIED + " INTEGER NOT NULL, "
+            + COL_HASH + " TEXT NOT NULL, "
+            + COL_CACHED_AT + " INTEGER NOT NULL)");
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        if (!db.isReadOnly()) {
+            String finished = "(" + COL_STATUS + " = ? OR " + COL_STATUS + " = ?) AND " + COL_UPDATED_AT + " < ?";
+            String[] args = new String[] { UploadJob.STATUS_COMPLETED, UploadJob.STATUS_FAILED,
+                String.valueOf(System.currentTimeMillis() - RETENTION_MS) };
+            db.beginTransaction();
+            try {
+                db.delete(TABLE_ATTEMPTS, COL_JOB_ID + " IN (SELECT " + COL_JOB_ID + " FROM " + TABLE_JOBS
+                    + " WHERE " + finished + ")", args);
+                int pruned = db.delete(TABLE_JOBS, finished, args);
+                db.delete(TABLE_CONTENT_HASHES, COL_CACHED_AT + " < ?", new String[] { args[2] });
+                db.setTransactionSuccessful();
+                if (pruned > 0) {
+                    Log.d(TAG, "Pruned " + pruned + " finished upload jobs");
+                }
+            } finally {
+                db.endTransaction();
+            }
+        }
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // First released schema; later versions add their steps here
+    }
+
+    @Override
+    public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Only pre-release builds numbered the schema higher; start over
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_JOBS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_ATTEMPTS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_CONTENT_HASHES);
+        onCreate(db);
+    }
+
+    /**
+     * Insert jobs in a single transaction
+     */
+    public void insert(List<UploadJob> jobs) {
+        SQLiteDatabase db = getWritableDatabase();
+        long now = System.currentTimeMillis();
+        db.beginTransaction();
+        try {
+            for (UploadJob job : jobs) {
+                job.createdAt = now;
+                job.updatedAt = now;
+                db.insertOrThrow(TABLE_JOBS, null, toValues(job));
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * @return The job, or null if it isn't in the store
+     */
+    public UploadJob get(String jobId) {
+        try (Cursor cursor = getReadableDatabase().query(TABLE_JOBS, null, COL_JOB_ID + " = ?",
+                new String[] { jobId }, null, null, null)) {
+            return cursor.moveToFirst() ? fromCursor(cursor) : null;
+        }
+    }
+
+    /**
+     * @return Id of the newest job that isn't failed and uploads the same content to
+     *         the same endpoint, or null
+     */
+    public String findJobByContent(String contentHash, String endpoint) {
+        try (Cursor cursor = getReadableDatabase().query(TABLE_JOBS, new String[] { COL_JOB_ID },
+                COL_CONTENT_HASH + " = ? AND " + COL_ENDPOINT + " = ? AND " + COL_STATUS + " != ?",
+                new String[] { contentHash, endpoint, UploadJob.STATUS_FAILED },
+                null, null, COL_CREATED_AT + " DESC", "1")) {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        }
+    }
+
+    /**
+     * @return Pending bulk jobs whose deadline is at or before the given time
+     */
+    public List<UploadJob> getDueDeadlines(long now) {
+        List<UploadJob> jobs = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE_JOBS, null,
+                DEADLINE_WAITING + " AND " + COL_DEADLINE_AT + " <= ?",
+                new String[] { UploadJob.STATUS_PENDING, UploadScheduler.PRIORITY_BULK, String.valueOf(now) },
+                null, null, COL_DEADLINE_AT)) {
+            while (cursor.moveToNext()) {
+                jobs.add(fromCursor(cursor));
+            }
+        }
+        return jobs;
+    }
+
+    /**
+     * @return Earliest deadline of a pending bulk job, or 0 if none is waiting
+     */
+    public long getNextDeadline() {
+        try (Cursor cursor = getReadableDatabase().query(TABLE_JOBS, new String[] { "MIN(" + COL_DEADLINE_AT + ")" },
+                DEADLINE_WAITING, new String[] { UploadJob.STATUS_PENDING, UploadScheduler.PRIORITY_BULK },
+                null, null, null)) {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : 0;
+        }
+    }
+
+    /**
+     * Forget a job's deadline once the sweep has dealt with it
+     */
+    public void clearDeadline(String jobId) {
+        ContentValues values = new ContentValues();
+        values.put(COL_DEADLINE_AT, 0);
+        update(jobId, values);
+    }
+
+    /**
+     * @return Cached content hash of a file, or null if the file changed or was never hashed
+     */
+    public String getContentHash(String path, long size, long modified) {
+        try (Cursor cursor = getReadableDatabase().query(TABLE_CONTENT_HASHES, new String[] { COL_HASH },
+                COL_PATH + " = ? AND " + COL_SIZE + " = ? AND " + COL_MODIFIED + " = ?",
+                new String[] { path, String.valueOf(size), String.valueOf(modified) }, null, null, null)) {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        }
+    }
+
+    public void putContentHash(String path, long size, long modified, String hash) {
+        ContentValues values = new ContentValues();
+        values.put(COL_PATH, path);
+        values.put(COL_SIZE, size);
+        values.put(COL_MODIFIED, modified);
+        values.put(COL_HASH, hash);
+        values.put(COL_CACHED_AT, System.currentTimeMillis());
+        getWritableDatabase().insertWithOnConflict(TABLE_CONTENT_HASHES, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Record the start of an attempt
+     */
+    public void markStarted(String jobId) {
+        getWritableDatabase().execSQL("UPDATE " + TABLE_JOBS + " SET "
+                + COL_STATUS + " = ?, " + COL_ATTEMPTS + " = " + COL_ATTEMPTS + " + 1, "
+                + COL_UPDATED_AT + " = ? WHERE " + COL_JOB_ID + " = ?",
+            new Object[] { UploadJob.STATUS_UPLOADING, System.currentTimeMillis(), jobId });
+    }
+
+    /**
+     * @param status One of the UploadJob.STATUS_* values
+     * @param error Error message, or null
+     */
+    public void updateStatus(String jobId, String status, String error) {
+        ContentValues values = new ContentValues();
+        values.put(COL_STATUS, status);
+        values.put(COL_ERROR, error);
+        values.put(COL_UPDATED_AT, System.currentTimeMillis());
+        update(jobId, values);
+    }
+
+    /**
+     * Mark a job completed
+     * @param checksum Encoded checksum of the uploaded bytes, or null
+     */
+    public void markCompleted(String jobId, String checksum) {
+        ContentValues values = new ContentValues();
+        values.put(COL_STATUS, UploadJob.STATUS_COMPLETED);
+        values.putNull(COL_ERROR);
+        values.put(COL_CHECKSUM, checksum);
+        values.put(COL_UPDATED_AT, System.currentTimeMillis());
+        update(jobId, values);
+    }
+
+    /**
+     * Put a job back to pending until the given time
+     * @param error Why the last attempt failed
+     */
+    public void scheduleRetry(String jobId, long nextAttemptAt, String error) {
+        ContentValues values = new ContentValues();
+        values.put(COL_STATUS, UploadJob.STATUS_PENDING);
+        values.put(COL_ERROR, error);
+        values.put(COL_NEXT_ATTEMPT_AT, nextAttemptAt);
+        values.put(COL_UPDATED_AT, System.currentTimeMillis());
+        update(jobId, values);
+    }
+
+    /**
+     * Record the outcome of one attempt
+     * @param outcome One of the UploadRetryPolicy.OUTCOME_* values
+     * @param httpCode Response status, or 0 if there was no response
+     * @param error Error message, or null
+     */
+    public void recordAttempt(String jobId, int attempt, long startedAt, long durationMs, String outcome,
+                              int httpCode, String error) {
+        ContentValues values = new ContentValues();
+        values.put(COL_JOB_ID, jobId);
+        values.put(COL_ATTEMPT, attempt);
+        values.put(COL_STARTED_AT, startedAt);
+        values.put(COL_DURATION_MS, durationMs);
+        values.put(COL_OUTCOME, outcome);
+        if (httpCode > 0) {
+            values.put(COL_HTTP_CODE, httpCode);
+        }
+        values.put(COL_ERROR, error);
+        getWritableDatabase().insertWithOnConflict(TABLE_ATTEMPTS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    /**
+     * Chunk checkpoint of a job
+     */
+    public static class Checkpoint {
+        public final long fileLength;
+        public final long fileModified;
+        public final int chunkSize;
+        public final long offset;
+        public final int chunks;
+
+        public Checkpoint(long fileLength, long fileModified, int chunkSize, long offset, int chunks) {
+            this.fileLength = fileLength;
+            this.fileModified = fileModified;
+            this.chunkSize = chunkSize;
+            this.offset = offset;
+            this.chunks = chunks;
+        }
+    }
+
+    /**
+     * @return The saved checkpoint, or null if there is none
+     */
+    public Checkpoint getCheckpoint(String jobId) {
+        try (Cursor cursor = getReadableDatabase().query(TABLE_JOBS,
+                new String[] { COL_CHECKPOINT_LENGTH, COL_CHECKPOINT_MODIFIED, COL_CHECKPOINT_CHUNK_SIZE,
+                    COL_BYTES_OFFSET, COL_CHUNK_COUNT },
+                COL_JOB_ID + " = ? AND " + COL_CHECKPOINT_LENGTH + " IS NOT NULL",
+                new String[] { jobId }, null, null, null)) {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            return new Checkpoint(cursor.getLong(0), cursor.getLong(1), cursor.getInt(2),
+                cursor.getLong(3), cursor.getInt(4));
+        }
+    }
+
+    /**
+     * @return false if the job isn't in the store
+     */
+    public boolean putCheckpoint(String jobId, Checkpoint checkpoint) {
+        ContentValues values = new ContentValues();
+        values.put(COL_CHECKPOINT_LENGTH, checkpoint.fileLength);
+        values.put(COL_CHECKPOINT_MODIFIED, checkpoint.fileModified);
+        values.put(COL_CHECKPOINT_CHUNK_SIZE, checkpoint.chunkSize);
+        values.put(COL_BYTES_OFFSET, checkpoint.offset);
+        values.put(COL_CHUNK_COUNT, checkpoint.chunks);
+        values.put(COL_UPDATED_AT, System.currentTimeMillis());
+        return update(jobId, values);
+    }
+
+    public void clearCheckpoint(String jobId) {
+        ContentValues values = new ContentValues();
+        values.putNull(COL_CHECKPOINT_LENGTH);
+        values.putNull(COL_CHECKPOINT_MODIFIED);
+        values.putNull(COL_CHECKPOINT_CHUNK_SIZE);
+        values.put(COL_BYTES_OFFSET, 0);
+        values.put(COL_CHUNK_COUNT, 0);
+        update(jobId, values);
+    }
+
+    private boolean update(String jobId, ContentValues values) {
+        int rows = getWritableDatabase().update(TABLE_JOBS, values, COL_JOB_ID + " = ?", new String[] { jobId });
+        if (rows == 0) {
+            Log.d(TAG, "No stored job " + jobId);
+        }
+        return rows > 0;
+    }
+
+    private static ContentValues toValues(UploadJob job) {
+        ContentValues values = new ContentValues();
+        values.put(COL_JOB_ID, job.jobId);
+        values.put(COL_BATCH_ID, job.batchId);
+        values.put(COL_MAX_PARALLEL, job.maxParallel);
+        values.put(COL_IMAGE_URI, job.imageUri);
+        values.put(COL_ENDPOINT, job.uploadEndpoint);
+        values.put(COL_HEADERS, job.headers);
+        values.put(COL_FORM_DATA, job.formData);
+        values.put(COL_METHOD, job.method);
+        values.put(COL_FILE_NAME, job.fileName);
+        values.put(COL_DELETE_AFTER_UPLOAD, job.deleteAfterUpload ? 1 : 0);
+        values.put(COL_MAX_CONNECTIONS, job.maxConnectionsPerHost);
+        values.put(COL_CHUNK_SIZE, job.chunkSize);
+        values.put(COL_CHUNK_PROTOCOL, job.chunkProtocol);
+        if (job.transform != null) {
+            values.put(COL_RESIZE_MAX_DIMENSION, job.transform.getMaxDimension());
+            values.put(COL_RESIZE_QUALITY, job.transform.getQuality());
+            values.put(COL_RESIZE_FORMAT, job.transform.getFormat());
+            values.put(COL_RESIZE_TARGET_BYTES, job.transform.getTargetBytes());
+        }
+        values.put(COL_STATUS, job.status);
+        values.put(COL_ATTEMPTS, job.attempts);
+        values.put(COL_ERROR, job.error);
+        values.put(COL_BYTES_OFFSET, job.bytesOffset);
+        values.put(COL_MAX_ATTEMPTS, job.maxAttempts);
+        values.put(COL_NEXT_ATTEMPT_AT, job.nextAttemptAt);
+        values.put(COL_PRIORITY, job.priority);
+        values.put(COL_DEADLINE_AT, job.deadlineAt);
+        values.put(COL_WORK_ID, job.workId);
+        values.put(COL_CHECKSUM_ALGORITHM, job.checksumAlgorithm);
+        values.put(COL_CHECKSUM_HEADER, job.checksumHeader);
+        values.put(COL_CHECKSUM_FORM_FIELD, job.checksumFormField);
+        values.put(COL_CHECKSUM_ENCODING, job.checksumEncoding);
+        values.put(COL_CHECKSUM, job.checksum);
+        values.put(COL_CONTENT_HASH, job.contentHash);
+        values.put(COL_CREATED_AT, job.createdAt);
+        values.put(COL_UPDATED_AT, job.updatedAt);
+        return values;
+    }
+
+    private static UploadJob fromCursor(Cursor cursor) {
+        UploadJob job = new UploadJob();
+        job.jobId = cursor.getString(cursor.getColumnIndexOrThrow(COL_JOB_ID));
+        job.batchId = cursor.getString(cursor.getColumnIndexOrThrow(COL_BATCH_ID));
+        job.maxParallel = cursor.getInt(cursor.getColumnIndexOrThrow(COL_MAX_PARALLEL));
+        job.imageUri = cursor.getString(cursor.getColumnIndexOrThrow(COL_IMAGE_URI));
+        job.uploadEndpoint = cursor.getString(cursor.getColumnIndexOrThrow(COL_ENDPOINT));
+        job.headers = cursor.getString(cursor.getColumnIndexOrThrow(COL_HEADERS));
+        job.formData = cursor.getString(cursor.getColumnIndexOrThrow(COL_FORM_DATA));
+        job.method = cursor.getString(cursor.getColumnIndexOrThrow(COL_METHOD));
+        job.fileName = cursor.getString(cursor.getColumnIndexOrThrow(COL_FILE_NAME));
+        job.deleteAfterUpload = cursor.getInt(cursor.getColumnIndexOrThrow(COL_DELETE_AFTER_UPLOAD)) != 0;
+        job.maxConnectionsPerHost = cursor.getInt(cursor.getColumnIndexOrThrow(COL_MAX_CONNECTIONS));
+        job.chunkSize = cursor.getInt(cursor.getColumnIndexOrThrow(COL_CHUNK_SIZE));
+        job.chunkProtocol = cursor.getInt(cursor.getColumnIndexOrThrow(COL_CHUNK_PROTOCOL));
+        int resizeFormat = cursor.getColumnIndexOrThrow(COL_RESIZE_FORMAT);
+        if (!cursor.isNull(resizeFormat)) {
+            job.transform = new UploadImageTransform(
+                cursor.getInt(cursor.getColumnIndexOrThrow(COL_RESIZE_MAX_DIMENSION)),
+                cursor.getInt(cursor.getColumnIndexOrThrow(COL_RESIZE_QUALITY)),
+                cursor.getInt(resizeFormat),
+                cursor.getLong(cursor.getColumnIndexOrThrow(COL_RESIZE_TARGET_BYTES)));
+        }
+        job.status = cursor.getString(cursor.getColumnIndexOrThrow(COL_STATUS));
+        job.attempts = cursor.getInt(cursor.getColumnIndexOrThrow(COL_ATTEMPTS));
+        job.error = cursor.getString(cursor.getColumnIndexOrThrow(COL_ERROR));
+        job.bytesOffset = cursor.getLong(cursor.getColumnIndexOrThrow(COL_BYTES_OFFSET));
+        job.maxAttempts = cursor.getInt(cursor.getColumnIndexOrThrow(COL_MAX_ATTEMPTS));
+        job.nextAttemptAt = cursor.getLong(cursor.getColumnIndexOrThrow(COL_NEXT_ATTEMPT_AT));
+        job.priority = cursor.getString(cursor.getColumnIndexOrThrow(COL_PRIORITY));
+        job.deadlineAt = cursor.getLong(cursor.getColumnIndexOrThrow(COL_DEADLINE_AT));
+        job.workId = cursor.getString(cursor.getColumnIndexOrThrow(COL_WORK_ID));
+        job.checksumAlgorithm = cursor.getString(cursor.getColumnIndexOrThrow(COL_CHECKSUM_ALGORITHM));
+        job.checksumHeader = cursor.getString(cursor.getColumnIndexOrThrow(COL_CHECKSUM_HEADER));
+        job.checksumFormField = cursor.getString(cursor.getColumnIndexOrThrow(COL_CHECKSUM_FORM_FIELD));
+        job.checksumEncoding = cursor.getString(cursor.getColumnIndexOrThrow(COL_CHECKSUM_ENCODING));
+        job.checksum = cursor.getString(cursor.getColumnIndexOrThrow(COL_CHECKSUM));
+        job.contentHash = cursor.getString(cursor.getColumnIndexOrThrow(COL_CONTENT_HASH));
+        job.createdAt = cursor.getLong(cursor.getColumnIndexOrThrow(COL_CREATED_AT));
+        job.updatedAt = cursor.getLong(cursor.getColumnIndexOrThrow(COL_UPDATED_AT));
+        return job;
+    }
+}
@@ -0,0 +1,76 @@
+package dev.hemang.cameramulticapture;
+
+import android.os.SystemClock;
+
+/**
+ * Turns a stream of byte counts into throttled progress updates.
+ *
+ * An update is published at most every {@link #MIN_INTERVAL_MS} and only once
+ * progress moved by at least {@link #MIN_PERCENT_STEP} percent, except for the
+ * final update, which is always published. Throughput is measured over the
+ * interval since the previous update.
+ */
+public class UploadProgressReporter {
+    public static final long MIN_INTERVAL_MS = 250;
+    public static final double MIN_PERCENT_STEP = 1.0;
+
+    /**
+     * Receives the published updates
+     */
+    public interface Sink {
+        void publish(long bytesSent, long totalBytes, long bytesPerSecond);
+    }
+
+    private final long totalBytes;
+    private final Sink sink;
+    private long lastBytes = -1;
+    private long lastReportedAt = 0;
+    private long bytesPerSecond = 0;
+    private boolean finished = false;
+
+    /**
+     * @param totalBytes Size of the upload
+     * @param sink Receives updates, called on the uploading thread
+     */
+    public UploadProgressReporter(long totalBytes, Sink sink) {
+        this.totalBytes = totalBytes;
+        this.sink = sink;
+    }
+
+    /**
+     * @param bytesSent Bytes of the whole upload sent so far
+     */
+    public synchronized void update(long bytesSent) {
+        if (finished) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        if (lastBytes < 0) {
+            // First call only starts the clock, unless it already completes the upload
+            lastBytes = bytesSent;
+            lastReportedAt = now;
+            if (bytesSent < totalBytes) {
+                sink.publish(bytesSent, totalBytes, 0);
+                return;
+            }
+        }
+
+        finished = bytesSent >= totalBytes;
+        long elapsed = now - lastReportedAt;
+        if (!finished) {
+            if (elapsed < MIN_INTERVAL_MS) {
+                return;
+            }
+            if (totalBytes > 0 && Math.abs(bytesSent - lastBytes) * 100.0 / totalBytes < MIN_PERCENT_STEP) {
+                return;
+            }
+        }
+
+        if (elapsed > 0 && bytesSent >= lastBytes) {
+            bytesPerSecond = (bytesSent - lastBytes) * 1000 / elapsed;
+        }
+        lastBytes = bytesSent;
+        lastReportedAt = now;
+        sink.publish(bytesSent, totalBytes, bytesPerSecond);
+    }
+}
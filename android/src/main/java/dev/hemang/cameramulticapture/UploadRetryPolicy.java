@@ -0,0 +1,113 @@
+package dev.hemang.cameramulticapture;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.security.cert.CertificateException;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.net.ssl.SSLPeerUnverifiedException;
+
+import okhttp3.Headers;
+
+/**
+ * Decides whether a failed upload attempt is worth repeating and when.
+ *
+ * Throttling (429), request timeouts (408), server errors (5xx) and transport
+ * failures such as timeouts and connection resets are retryable; other 4xx
+ * responses, missing files, certificate problems and programming errors are
+ * permanent. Delays grow exponentially from {@link #BASE_DELAY_MS} with jitter
+ * over the upper half of the window, so a batch that failed together doesn't
+ * retry together, and never undercut a server's Retry-After.
+ */
+public class UploadRetryPolicy {
+    public static final int DEFAULT_MAX_ATTEMPTS = 5;
+
+    static final long BASE_DELAY_MS = 2000;
+    static final long MAX_DELAY_MS = 10 * 60 * 1000;
+    /** Longest Retry-After honoured; beyond this the server is treated as saying "later" */
+    static final long MAX_RETRY_AFTER_MS = 60 * 60 * 1000;
+    /** Delays up to this long are waited out inside the running worker */
+    public static final long MAX_IN_WORKER_WAIT_MS = 30 * 1000;
+
+    /** Attempt outcomes recorded in the job store */
+    public static final String OUTCOME_SUCCESS = "success";
+    public static final String OUTCOME_RETRYABLE = "retryable";
+    public static final String OUTCOME_PERMANENT = "permanent";
+
+    private final int maxAttempts;
+
+    /**
+     * @param maxAttempts Attempts allowed per job, including the first
+     */
+    public UploadRetryPolicy(int maxAttempts) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @return true if another attempt is allowed after the given number of attempts
+     */
+    public boolean canRetry(int attempts) {
+        return attempts < maxAttempts;
+    }
+
+    /**
+     * @param attempt Number of the attempt that just failed, starting at 1
+     * @param retryAfterMillis Delay requested by the server, or -1
+     * @return Delay before the next attempt
+     */
+    public long delayMillis(int attempt, long retryAfterMillis) {
+        long window = BASE_DELAY_MS << Math.min(Math.max(0, attempt - 1), 20);
+        window = Math.min(window, MAX_DELAY_MS);
+        long half = window / 2;
+        long delay = half + ThreadLocalRandom.current().nextLong(half + 1);
+        if (retryAfterMillis > 0) {
+            delay = Math.max(delay, Math.min(retryAfterMillis, MAX_RETRY_AFTER_MS));
+        }
+        return delay;
+    }
+
+    public static boolean isRetryableStatus(int code) {
+        return code == 408 || code == 429 || code >= 500;
+    }
+
+    /**
+     * Classify an exception thrown by an attempt
+     */
+    public static boolean isRetryable(Throwable error) {
+        if (error instanceof ChunkedUpload.HttpException) {
+            return isRetryableStatus(((ChunkedUpload.HttpException) error).code);
+        }
+        if (error instanceof FileNotFoundException || error instanceof SSLPeerUnverifiedException) {
+            return false;
+        }
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof CertificateException) {
+                return false;
+            }
+        }
+        // Timeouts, resets, DNS and other transport failures
+        return error instanceof IOException;
+    }
+
+    /**
+     * Read Retry-After as delta seconds or an HTTP date
+     * @return Delay in milliseconds, or -1 if absent or malformed
+     */
+    public static long parseRetryAfter(Headers headers) {
+        String value = headers.get("Retry-After");
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim())) * 1000;
+        } catch (NumberFormatException e) {
+            Date date = headers.getDate("Retry-After");
+            return date != null ? Math.max(0, date.getTime() - System.currentTimeMillis()) : -1;
+        }
+    }
+}
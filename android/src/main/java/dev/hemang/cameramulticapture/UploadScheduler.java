@@ -0,0 +1,119 @@
+package dev.hemang.cameramulticapture;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.WorkRequest;
+
+import java.io.File;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns stored upload jobs into WorkManager requests according to their priority.
+ *
+ * <ul>
+ *   <li>high: any network, and outside the engine's global concurrency limit</li>
+ *   <li>normal: any network</li>
+ *   <li>bulk: unmetered networks only, until the job's deadline; then
+ *       {@link UploadDeadlineWorker} relaxes the request to any network. One
+ *       sweep is scheduled for the earliest deadline in the store, however many
+ *       bulk jobs are waiting.</li>
+ * </ul>
+ * Jobs without an explicit priority are bulk when the file is larger than
+ * {@link #BULK_THRESHOLD_BYTES}, normal otherwise.
+ */
+public class UploadScheduler {
+    private static final String TAG = "UploadScheduler";
+
+    public static final String PRIORITY_HIGH = "high";
+    public static final String PRIORITY_NORMAL = "normal";
+    public static final String PRIORITY_BULK = "bulk";
+
+    public static final long BULK_THRESHOLD_BYTES = 5L * 1024 * 1024;
+    public static final long DEFAULT_BULK_DEADLINE_MS = 24L * 60 * 60 * 1000;
+
+    /** Unique name of the deadline sweep; kept apart from UPLOAD_TAG so the status monitor ignores it */
+    static final String DEADLINE_WORK = "cameraMultiCaptureUploadDeadline";
+
+    private UploadScheduler() {
+    }
+
+    /**
+     * @param requested Priority passed from JS, or null to decide by file size
+     * @return One of the PRIORITY_* values
+     */
+    public static String resolvePriority(String requested, String imageUri) {
+        if (PRIORITY_HIGH.equals(requested) || PRIORITY_NORMAL.equals(requested) || PRIORITY_BULK.equals(requested)) {
+            return requested;
+        }
+        String path = Uri.parse(imageUri).getPath();
+        long size = path != null ? new File(path).length() : 0;
+        return size > BULK_THRESHOLD_BYTES ? PRIORITY_BULK : PRIORITY_NORMAL;
+    }
+
+    /**
+     * Build the work request for a job and record its id on the job. The request
+     * carries only the job id; the worker loads everything else from the store.
+     * @param anyNetwork Ignore the bulk unmetered requirement
+     */
+    public static OneTimeWorkRequest newRequest(UploadJob job, boolean anyNetwork) {
+        boolean unmetered = !anyNetwork && PRIORITY_BULK.equals(job.priority);
+        OneTimeWorkRequest.Builder builder = new OneTimeWorkRequest.Builder(GenericUploadWorker.class)
+            .setInputData(new Data.Builder().putString(UploadJob.KEY_JOB_ID, job.jobId).build())
+            .addTag(job.jobId)
+            .addTag(UploadStatusMonitor.UPLOAD_TAG)
+            // Short waits happen inside the worker; this only paces the longer ones
+            .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, WorkRequest.MIN_BACKOFF_MILLIS, TimeUnit.MILLISECONDS)
+            .setConstraints(new Constraints.Builder()
+                .setRequiredNetworkType(unmetered ? NetworkType.UNMETERED : NetworkType.CONNECTED)
+                .build());
+        if (job.batchId != null) {
+            builder.addTag(UploadStatusMonitor.BATCH_TAG_PREFIX + job.batchId);
+        }
+        if (job.workId != null) {
+            builder.setId(UUID.fromString(job.workId));
+        }
+        OneTimeWorkRequest request = builder.build();
+        job.workId = request.getId().toString();
+        return request;
+    }
+
+    /**
+     * Move the deadline sweep up if one of the new jobs is a bulk job due before it
+     */
+    public static void scheduleDeadlines(Context context, List<UploadJob> jobs) {
+        for (UploadJob job : jobs) {
+            if (PRIORITY_BULK.equals(job.priority) && job.deadlineAt > 0) {
+                scheduleDeadlineSweep(context, ExistingWorkPolicy.REPLACE);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Schedule the deadline sweep for the earliest deadline in the store, or leave
+     * it unscheduled if no bulk job is waiting. Reads the store, so call it
+     * off the main thread.
+     * @param policy REPLACE from the plugin, APPEND_OR_REPLACE from the running sweep
+     */
+    static void scheduleDeadlineSweep(Context context, ExistingWorkPolicy policy) {
+        long next = UploadJobStore.get(context).getNextDeadline();
+        if (next <= 0) {
+            return;
+        }
+        WorkManager.getInstance(context).enqueueUniqueWork(DEADLINE_WORK, policy,
+            new OneTimeWorkRequest.Builder(UploadDeadlineWorker.class)
+                .setInitialDelay(Math.max(0, next - System.currentTimeMillis()), TimeUnit.MILLISECONDS)
+                .build());
+        Log.d(TAG, "Next bulk upload deadline sweep at " + next);
+    }
+}
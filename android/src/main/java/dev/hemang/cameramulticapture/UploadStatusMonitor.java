@@ -0,0 +1,285 @@
+package dev.hemang.cameramulticapture;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.Observer;
+import androidx.work.Data;
+import androidx.work.WorkInfo;
+import androidx.work.WorkManager;
+import androidx.work.WorkQuery;
+
+import com.getcapacitor.JSArray;
+import com.getcapacitor.JSObject;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Keeps an in-memory view of the upload jobs that are still queued or running.
+ *
+ * A single LiveData observer on unfinished work with the shared upload tag
+ * replaces per-call database queries: it refreshes the status cache, forwards
+ * progress, and, while watching, collects status changes and delivers them in
+ * batches at most every {@link #COALESCE_MS}. The query only covers unfinished
+ * work, so a progress tick costs O(active jobs) rather than O(every job
+ * WorkManager still remembers). A job that drops out of the result is looked up
+ * once by id for its terminal status, which is delivered and then evicted from
+ * the cache; finished jobs are answered from {@link UploadJobStore}.
+ */
+public class UploadStatusMonitor {
+    /** Tag added to every upload job */
+    public static final String UPLOAD_TAG = "cameraMultiCaptureUpload";
+    /** Tag shared by all jobs of a queueBatchUpload call, followed by the batch id */
+    public static final String BATCH_TAG_PREFIX = "uploadBatch:";
+
+    static final long COALESCE_MS = 200;
+
+    /**
+     * Receives events on the main thread
+     */
+    public interface Listener {
+        void onUploadProgress(JSObject progress);
+
+        void onUploadStatusChanged(JSArray uploads);
+    }
+
+    private final Listener listener;
+    private final Map<String, JSObject> statuses = new ConcurrentHashMap<>();
+    /** Changes waiting to be delivered; main thread only */
+    private final Map<String, JSObject> pending = new LinkedHashMap<>();
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable flush = this::flush;
+    private final Observer<List<WorkInfo>> observer = this::onWorkInfosChanged;
+    /** WorkManager id of every cached job, to look up its final state; main thread only */
+    private final Map<String, UUID> workIds = new HashMap<>();
+
+    private WorkManager workManager;
+    private LiveData<List<WorkInfo>> liveData;
+    private boolean watching = false;
+    private boolean flushScheduled = false;
+
+    public UploadStatusMonitor(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Start observing; safe to call from any thread and more than once
+     */
+    public void start(Context context) {
+        Context appContext = context.getApplicationContext();
+        handler.post(() -> {
+            if (liveData == null) {
+                workManager = WorkManager.getInstance(appContext);
+                WorkQuery query = WorkQuery.Builder
+                    .fromTags(Arrays.asList(UPLOAD_TAG))
+                    .addStates(Arrays.asList(WorkInfo.State.ENQUEUED, WorkInfo.State.RUNNING, WorkInfo.State.BLOCKED))
+                    .build();
+                liveData = workManager.getWorkInfosLiveData(query);
+                liveData.observeForever(observer);
+            }
+        });
+    }
+
+    public void stop() {
+        handler.post(() -> {
+            if (liveData != null) {
+                liveData.removeObserver(observer);
+                liveData = null;
+            }
+            handler.removeCallbacks(flush);
+            flushScheduled = false;
+            pending.clear();
+        });
+    }
+
+    /**
+     * Enable or disable uploadStatusChanged delivery
+     */
+    public void setWatching(boolean watching) {
+        handler.post(() -> {
+            this.watching = watching;
+            if (!watching) {
+                pending.clear();
+            }
+        });
+    }
+
+    /**
+     * @return Last known status of an unfinished job, or null if the monitor hasn't
+     * seen it or it has finished
+     */
+    public JSObject getStatus(String jobId) {
+        return statuses.get(jobId);
+    }
+
+    /**
+     * @return Snapshot of all unfinished jobs' statuses
+     */
+    public Collection<JSObject> getStatuses() {
+        return new ArrayList<>(statuses.values());
+    }
+
+    private void onWorkInfosChanged(List<WorkInfo> workInfos) {
+        if (workInfos == null) {
+            return;
+        }
+        Set<String> active = new HashSet<>();
+        for (WorkInfo workInfo : workInfos) {
+            String jobId = jobIdOf(workInfo);
+            if (jobId == null) {
+                continue;
+            }
+            active.add(jobId);
+            workIds.put(jobId, workInfo.getId());
+            update(jobId, toStatus(workInfo));
+        }
+
+        // Finished, cancelled or pruned since the last result
+        Iterator<Map.Entry<String, UUID>> it = workIds.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, UUID> entry = it.next();
+            if (!active.contains(entry.getKey())) {
+                it.remove();
+                String jobId = entry.getKey();
+                ListenableFuture<WorkInfo> future = workManager.getWorkInfoById(entry.getValue());
+                future.addListener(() -> onWorkFinished(jobId, future), handler::post);
+            }
+        }
+        scheduleFlush();
+    }
+
+    private void onWorkFinished(String jobId, ListenableFuture<WorkInfo> future) {
+        if (workIds.containsKey(jobId)) {
+            // Re-enqueued under the same job id in the meantime
+            return;
+        }
+        WorkInfo workInfo = null;
+        try {
+            workInfo = future.get();
+        } catch (ExecutionException | InterruptedException e) {
+            // Treated like work WorkManager has already pruned
+        }
+        if (workInfo != null && workInfo.getState().isFinished()) {
+            update(jobId, toStatus(workInfo));
+            scheduleFlush();
+        }
+        // The terminal status now sits in pending if anyone is watching
+        statuses.remove(jobId);
+    }
+
+    private void update(String jobId, JSObject status) {
+        status.put("jobId", jobId);
+        JSObject previous = statuses.put(jobId, status);
+
+        if (status.has("bytesSent")
+            && (previous == null || previous.optLong("bytesSent", -1) != status.optLong("bytesSent"))) {
+            JSObject progress = new JSObject();
+            progress.put("jobId", jobId);
+            progress.put("bytesSent", status.optLong("bytesSent"));
+            progress.put("totalBytes", status.optLong("totalBytes"));
+            progress.put("bytesPerSecond", status.optLong("bytesPerSecond"));
+            listener.onUploadProgress(progress);
+        }
+
+        if (watching && (previous == null || statusChanged(previous, status))) {
+            pending.put(jobId, status);
+        }
+    }
+
+    private void scheduleFlush() {
+        if (!pending.isEmpty() && !flushScheduled) {
+            flushScheduled = true;
+            handler.postDelayed(flush, COALESCE_MS);
+        }
+    }
+
+    private void flush() {
+        flushScheduled = false;
+        if (pending.isEmpty() || !watching) {
+            pending.clear();
+            return;
+        }
+        JSArray uploads = new JSArray();
+        for (JSObject status : pending.values()) {
+            uploads.put(status);
+        }
+        pending.clear();
+        listener.onUploadStatusChanged(uploads);
+    }
+
+    private static boolean statusChanged(JSObject previous, JSObject current) {
+        return !Objects.equals(previous.optString("status"), current.optString("status"))
+            || !Objects.equals(previous.optString("error"), current.optString("error"));
+    }
+
+    /**
+     * @return The plugin job id among a WorkInfo's tags, or null for foreign work
+     */
+    static String jobIdOf(WorkInfo workInfo) {
+        for (String tag : workInfo.getTags()) {
+            // The other tags are the shared tag, batch tags and the worker class name
+            if (!tag.equals(UPLOAD_TAG) && !tag.startsWith(BATCH_TAG_PREFIX) && tag.indexOf('.') < 0) {
+                return tag;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Map a WorkInfo to the status object returned to JS
+     */
+    public static JSObject toStatus(WorkInfo workInfo) {
+        JSObject result = new JSObject();
+        switch (workInfo.getState()) {
+            case ENQUEUED:
+            case BLOCKED:
+                result.put("status", "pending");
+                break;
+            case RUNNING:
+                result.put("status", "uploading");
+                Data progress = workInfo.getProgress();
+                if (progress.getKeyValueMap().containsKey(GenericUploadWorker.PROGRESS_BYTES_SENT)) {
+                    result.put("bytesSent", progress.getLong(GenericUploadWorker.PROGRESS_BYTES_SENT, 0));
+                    result.put("totalBytes", progress.getLong(GenericUploadWorker.PROGRESS_TOTAL_BYTES, 0));
+                    result.put("bytesPerSecond", progress.getLong(GenericUploadWorker.PROGRESS_BYTES_PER_SECOND, 0));
+                }
+                break;
+            case SUCCEEDED:
+                result.put("status", "completed");
+                Data output = workInfo.getOutputData();
+                if (output.getKeyValueMap().containsKey(GenericUploadWorker.OUTPUT_TRANSMITTED_BYTES)) {
+                    result.put("originalBytes", output.getLong(GenericUploadWorker.OUTPUT_ORIGINAL_BYTES, 0));
+                    result.put("transmittedBytes", output.getLong(GenericUploadWorker.OUTPUT_TRANSMITTED_BYTES, 0));
+                }
+                String checksum = output.getString(GenericUploadWorker.OUTPUT_CHECKSUM);
+                if (checksum != null) {
+                    result.put("checksum", checksum);
+                }
+                break;
+            case FAILED:
+            case CANCELLED:
+                result.put("status", "failed");
+                String error = workInfo.getOutputData().getString("error");
+                if (error != null) {
+                    result.put("error", error);
+                }
+                break;
+        }
+        return result;
+    }
+}
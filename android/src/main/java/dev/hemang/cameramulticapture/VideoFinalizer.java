@@ -0,0 +1,146 @@
+package dev.hemang.cameramulticapture;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Background post-recording work for a video: poster frame, metadata and the
+ * optional gallery export.
+ *
+ * The file is opened with a single MediaMetadataRetriever that reads the frame
+ * and all metadata, while the gallery export runs on a second thread, so the two
+ * passes over the file overlap instead of running one after another on the main
+ * thread. Videos are finalized one at a time, in the order they were submitted.
+ */
+public class VideoFinalizer {
+    private static final String TAG = "VideoFinalizer";
+
+    private static final long IDLE_TIMEOUT_SECONDS = 30;
+
+    /**
+     * What was read from a video. Fields the container doesn't report are 0, and
+     * frame is null if no frame could be decoded.
+     */
+    public static class Result {
+        public Bitmap frame;
+        public double durationSeconds;
+        /** Display width, after the rotation in the container is applied */
+        public int width;
+        /** Display height, after the rotation in the container is applied */
+        public int height;
+        /** Bits per second */
+        public int bitrate;
+    }
+
+    public interface Callback {
+        /**
+         * Called on the finalizer thread once extraction and export are both done
+         */
+        void onFinalized(Result result);
+    }
+
+    private final ThreadPoolExecutor extractor = newExecutor();
+    private final ThreadPoolExecutor exporter = newExecutor();
+
+    private static ThreadPoolExecutor newExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            1, 1, IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+        // Recordings are infrequent; don't keep idle threads around between them
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Finalize a recorded video in the background
+     * @param maxFrameWidth Bound for the poster frame; 0 keeps the video's size
+     * @param maxFrameHeight Bound for the poster frame; 0 keeps the video's size
+     * @param export Gallery export to run alongside the extraction, or null
+     */
+    public void submit(Context context, Uri videoUri, int maxFrameWidth, int maxFrameHeight,
+                       Runnable export, Callback callback) {
+        Context appContext = context.getApplicationContext();
+        extractor.execute(() -> {
+            // The exporter never waits on the extractor, so this wait can't deadlock
+            Future<?> exported = export != null ? exporter.submit(export) : null;
+            Result result = extract(appContext, videoUri, maxFrameWidth, maxFrameHeight);
+            if (exported != null) {
+                try {
+                    exported.get();
+                } catch (ExecutionException e) {
+                    Log.w(TAG, "Gallery export failed: " + e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            callback.onFinalized(result);
+        });
+    }
+
+    /**
+     * Read the poster frame and metadata with one retriever
+     */
+    static Result extract(Context context, Uri videoUri, int maxFrameWidth, int maxFrameHeight) {
+        long start = System.currentTimeMillis();
+        Result result = new Result();
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(context, videoUri);
+            result.durationSeconds = parseInt(retriever, MediaMetadataRetriever.METADATA_KEY_DURATION) / 1000.0;
+            result.bitrate = parseInt(retriever, MediaMetadataRetriever.METADATA_KEY_BITRATE);
+            int width = parseInt(retriever, MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH);
+            int height = parseInt(retriever, MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT);
+            int rotation = parseInt(retriever, MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION);
+            boolean swapped = rotation == 90 || rotation == 270;
+            result.width = swapped ? height : width;
+            result.height = swapped ? width : height;
+            result.frame = decodeFrame(retriever, maxFrameWidth, maxFrameHeight);
+        } catch (Exception e) {
+            Log.w(TAG, "Failed to read " + videoUri + ": " + e.getMessage());
+        } finally {
+            try {
+                retriever.release();
+            } catch (IOException ignored) {
+                // best effort cleanup
+            }
+        }
+        Log.d(TAG, "Extracted video metadata in " + (System.currentTimeMillis() - start) + " ms");
+        return result;
+    }
+
+    /**
+     * First sync frame, decoded straight to the requested bounds where the platform
+     * supports it instead of at full video resolution
+     */
+    private static Bitmap decodeFrame(MediaMetadataRetriever retriever, int maxWidth, int maxHeight) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1 && maxWidth > 0 && maxHeight > 0) {
+            Bitmap frame = retriever.getScaledFrameAtTime(0, MediaMetadataRetriever.OPTION_CLOSEST_SYNC, maxWidth, maxHeight);
+            if (frame != null) {
+                return frame;
+            }
+        }
+        return retriever.getFrameAtTime(0, MediaMetadataRetriever.OPTION_CLOSEST_SYNC);
+    }
+
+    private static int parseInt(MediaMetadataRetriever retriever, int key) {
+        String value = retriever.extractMetadata(key);
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package dev.hemang.cameramulticapture;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.ByteString;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Resuming {@link ChunkedUpload} after the connection drops in the middle of a chunk,
+ * against fake resumable servers for both protocols.
+ */
+public class ChunkedUploadTest {
+
+    private static final String JOB_ID = "job-1";
+    private static final int CHUNK_SIZE = ChunkedUpload.MIN_CHUNK_SIZE;
+    // Four full chunks and a short last one
+    private static final int FILE_BYTES = 4 * CHUNK_SIZE + 1000;
+    private static final MediaType MEDIA_TYPE_JPEG = MediaType.parse("image/jpeg");
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+)");
+    private static final Pattern LATEST = Pattern.compile("<Latest>([^<]+)</Latest>");
+
+    private final MockWebServer server = new MockWebServer();
+    private final MemoryCheckpoints checkpoints = new MemoryCheckpoints();
+    private File file;
+    private byte[] content;
+
+    @Before
+    public void setUp() throws Exception {
+        content = new byte[FILE_BYTES];
+        new Random(4).nextBytes(content);
+        file = File.createTempFile("chunked", ".jpg");
+        Files.write(file.toPath(), content);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+        file.delete();
+    }
+
+    @Test
+    public void contentRangeResumesAtStoredOffset() throws Exception {
+        RangeServer fake = new RangeServer();
+        // The server keeps only part of the second chunk, then the connection drops in the third
+        fake.storeLimit = CHUNK_SIZE + CHUNK_SIZE / 3;
+        fake.dropAfter = 2;
+        server.setDispatcher(fake);
+        server.start();
+
+        try {
+            newUpload(ChunkedUpload.PROTOCOL_CONTENT_RANGE).run();
+            fail("expected the dropped connection to fail the run");
+        } catch (IOException expected) {
+            // Interrupted mid-chunk
+        }
+        fake.dropAfter = -1;
+        long acknowledged = CHUNK_SIZE + CHUNK_SIZE / 3;
+        assertEquals(acknowledged, fake.stored.size());
+        UploadCheckpoints.Checkpoint saved = checkpoints.load(JOB_ID, file, CHUNK_SIZE);
+        assertEquals(acknowledged, saved.offset);
+
+        // A short write after resuming makes the in-flight checksum rebuild its prefix
+        fake.storeLimit = acknowledged + CHUNK_SIZE + CHUNK_SIZE / 2;
+        int resumedAt = fake.ranges.size();
+        newUpload(ChunkedUpload.PROTOCOL_CONTENT_RANGE).run();
+
+        assertEquals("bytes " + acknowledged + "-" + (acknowledged + CHUNK_SIZE - 1) + "/" + FILE_BYTES,
+            fake.ranges.get(resumedAt));
+        assertArrayEquals(content, fake.stored.toByteArray());
+        assertEquals(md5(content), fake.checksum);
+        assertFalse(checkpoints.saved.containsKey(JOB_ID));
+    }
+
+    @Test
+    public void contentRangeGivesUpWhenServerStopsStoring() throws Exception {
+        RangeServer fake = new RangeServer();
+        // Accepts the first chunk and a bit of the second, then never stores another byte
+        fake.storeCap = CHUNK_SIZE + 100;
+        server.setDispatcher(fake);
+        server.start();
+
+        try {
+            newUpload(ChunkedUpload.PROTOCOL_CONTENT_RANGE).run();
+            fail("expected the stalled upload to give up");
+        } catch (ChunkedUpload.HttpException expected) {
+            assertEquals(308, expected.code);
+        }
+        assertEquals(2 + ChunkedUpload.MAX_STALLED_CHUNKS, fake.ranges.size());
+        assertEquals(CHUNK_SIZE + 100L, checkpoints.load(JOB_ID, file, CHUNK_SIZE).offset);
+    }
+
+    @Test
+    public void blockListResumesAtNextBlock() throws Exception {
+        BlockServer fake = new BlockServer();
+        fake.dropAfter = 2;
+        server.setDispatcher(fake);
+        server.start();
+
+        try {
+            newUpload(ChunkedUpload.PROTOCOL_BLOCK_LIST).run();
+            fail("expected the dropped connection to fail the run");
+        } catch (IOException expected) {
+            // Interrupted mid-block
+        }
+        fake.dropAfter = -1;
+        UploadCheckpoints.Checkpoint saved = checkpoints.load(JOB_ID, file, CHUNK_SIZE);
+        assertEquals(2, saved.chunks);
+        assertEquals(2L * CHUNK_SIZE, saved.offset);
+        assertNull("nothing may be committed before the last block", fake.committed);
+
+        int resumedAt = fake.blockIds.size();
+        newUpload(ChunkedUpload.PROTOCOL_BLOCK_LIST).run();
+
+        assertEquals(blockId(2), fake.blockIds.get(resumedAt));
+        assertEquals(Arrays.asList(blockId(0), blockId(1), blockId(2), blockId(3), blockId(4)), fake.committedIds);
+        assertArrayEquals(content, fake.committed);
+        assertEquals(md5(content), fake.checksum);
+        assertFalse(checkpoints.saved.containsKey(JOB_ID));
+    }
+
+    private ChunkedUpload newUpload(int protocol) {
+        ChunkedUpload upload = new ChunkedUpload(checkpoints, JOB_ID, file, server.url("/upload").toString(),
+            new Headers.Builder().build(), MEDIA_TYPE_JPEG, CHUNK_SIZE, protocol, 2);
+        // Outside the adaptive global limit, which needs SystemClock
+        upload.setHighPriority(true);
+        upload.setChecksum(new UploadChecksum(UploadChecksum.ALGORITHM_MD5), "Content-MD5",
+            UploadChecksum.ENCODING_BASE64);
+        return upload;
+    }
+
+    private static String md5(byte[] data) throws Exception {
+        return ByteString.of(MessageDigest.getInstance("MD5").digest(data)).base64();
+    }
+
+    private static String blockId(int index) {
+        return ByteString.encodeUtf8(String.format(Locale.US, "block-%08d", index)).base64();
+    }
+
+    /**
+     * Keeps checkpoints in memory instead of the job store
+     */
+    private static final class MemoryCheckpoints extends UploadCheckpoints {
+        final Map<String, Checkpoint> saved = new HashMap<>();
+
+        MemoryCheckpoints() {
+            super((UploadJobStore) null);
+        }
+
+        @Override
+        public Checkpoint load(String jobId, File file, int chunkSize) {
+            Checkpoint checkpoint = saved.get(jobId);
+            return checkpoint != null ? checkpoint : new Checkpoint(0, 0);
+        }
+
+        @Override
+        public void save(String jobId, File file, int chunkSize, Checkpoint checkpoint) {
+            saved.put(jobId, checkpoint);
+        }
+
+        @Override
+        public void clear(String jobId) {
+            saved.remove(jobId);
+        }
+    }
+
+    /**
+     * Drops the connection halfway through the request body that follows the
+     * given number of complete requests. Requests cut short are never acknowledged.
+     */
+    private abstract static class DroppingServer extends Dispatcher {
+        volatile int dropAfter = -1;
+        private int complete = 0;
+
+        @Override
+        public synchronized MockResponse peek() {
+            if (dropAfter >= 0 && complete >= dropAfter) {
+                return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_DURING_REQUEST_BODY);
+            }
+            return super.peek();
+        }
+
+        @Override
+        public synchronized MockResponse dispatch(RecordedRequest request) {
+            String contentLength = request.getHeader("Content-Length");
+            if (contentLength != null && Long.parseLong(contentLength) != request.getBodySize()) {
+                return new MockResponse().setResponseCode(500);
+            }
+            complete++;
+            return handle(request);
+        }
+
+        abstract MockResponse handle(RecordedRequest request);
+    }
+
+    /**
+     * Content-Range server that answers intermediate chunks with 308 and the stored range
+     */
+    private static final class RangeServer extends DroppingServer {
+        final ByteArrayOutputStream stored = new ByteArrayOutputStream();
+        final List<String> ranges = new ArrayList<>();
+        /** Stop storing beyond this many bytes for the first chunk that crosses it, or -1 */
+        long storeLimit = -1;
+        /** Never store beyond this many bytes, or -1 */
+        long storeCap = -1;
+        String checksum;
+
+        @Override
+        MockResponse handle(RecordedRequest request) {
+            String range = request.getHeader("Content-Range");
+            ranges.add(range);
+            Matcher matcher = CONTENT_RANGE.matcher(range);
+            assertTrue(range, matcher.matches());
+            long start = Long.parseLong(matcher.group(1));
+            long total = Long.parseLong(matcher.group(3));
+            if (start != stored.size()) {
+                return new MockResponse().setResponseCode(400).setBody("expected offset " + stored.size());
+            }
+
+            byte[] body = request.getBody().readByteArray();
+            int keep = body.length;
+            if (storeLimit >= 0 && start + body.length > storeLimit) {
+                keep = (int) (storeLimit - start);
+                storeLimit = -1;
+            }
+            if (storeCap >= 0) {
+                keep = (int) Math.max(0, Math.min(keep, storeCap - start));
+            }
+            stored.write(body, 0, keep);
+
+            if (stored.size() == total) {
+                checksum = request.getHeader("Content-MD5");
+                return new MockResponse().setResponseCode(200);
+            }
+            return new MockResponse().setResponseCode(308).setHeader("Range", "bytes=0-" + (stored.size() - 1));
+        }
+    }
+
+    /**
+     * Block blob server: stages blocks by id and assembles them on commit
+     */
+    private static final class BlockServer extends DroppingServer {
+        final Map<String, byte[]> blocks = new HashMap<>();
+        final List<String> blockIds = new ArrayList<>();
+        List<String> committedIds;
+        byte[] committed;
+        String checksum;
+
+        @Override
+        MockResponse handle(RecordedRequest request) {
+            String comp = request.getRequestUrl().queryParameter("comp");
+            if ("block".equals(comp)) {
+                String id = request.getRequestUrl().queryParameter("blockid");
+                blockIds.add(id);
+                blocks.put(id, request.getBody().readByteArray());
+                return new MockResponse().setResponseCode(201);
+            }
+            assertEquals("blocklist", comp);
+            committedIds = new ArrayList<>();
+            ByteArrayOutputStream blob = new ByteArrayOutputStream();
+            Matcher matcher = LATEST.matcher(request.getBody().readUtf8());
+            while (matcher.find()) {
+                byte[] block = blocks.get(matcher.group(1));
+                if (block == null) {
+                    return new MockResponse().setResponseCode(400).setBody("unknown block " + matcher.group(1));
+                }
+                committedIds.add(matcher.group(1));
+                blob.write(block, 0, block.length);
+            }
+            committed = blob.toByteArray();
+            checksum = request.getHeader("Content-MD5");
+            return new MockResponse().setResponseCode(201);
+        }
+    }
+}
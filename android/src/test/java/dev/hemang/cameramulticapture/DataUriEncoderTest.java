@@ -0,0 +1,80 @@
+package dev.hemang.cameramulticapture;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Base64;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Output of {@link DataUriEncoder} and bytes allocated per thumbnail compared with
+ * the toByteArray + Base64.encodeToString path it replaced.
+ */
+public class DataUriEncoderTest {
+
+    private static final int THUMBNAIL_BYTES = 24 * 1024;
+    private static final int ITERATIONS = 2_000;
+
+    @Test
+    public void base64MatchesJdkForEveryTailLength() throws Exception {
+        Random random = new Random(1);
+        for (int length = 0; length < 200; length++) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            String expected = "data:image/jpeg;base64," + Base64.getEncoder().encodeToString(data);
+            assertEquals(expected, DataUriEncoder.encode(out -> out.write(data)));
+        }
+    }
+
+    @Test
+    public void allocatesLessPerThumbnailThanCopyingPath() throws Exception {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        byte[] jpeg = new byte[THUMBNAIL_BYTES];
+        new Random(2).nextBytes(jpeg);
+        DataUriEncoder.JpegWriter compress = out -> out.write(jpeg);
+
+        // Warm up both paths so class loading and the thread-local buffer aren't counted
+        for (int i = 0; i < 200; i++) {
+            copyingEncode(compress);
+            DataUriEncoder.encode(compress);
+        }
+
+        long thread = Thread.currentThread().getId();
+        long start = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < ITERATIONS; i++) {
+            copyingEncode(compress);
+        }
+        long before = (threads.getThreadAllocatedBytes(thread) - start) / ITERATIONS;
+
+        start = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < ITERATIONS; i++) {
+            DataUriEncoder.encode(compress);
+        }
+        long after = (threads.getThreadAllocatedBytes(thread) - start) / ITERATIONS;
+
+        assertEquals(copyingEncode(compress), DataUriEncoder.encode(compress));
+        assertTrue("bytes allocated per " + THUMBNAIL_BYTES / 1024 + " KB thumbnail: expected fewer than "
+            + before + " (copying path), got " + after, after < before);
+    }
+
+    /**
+     * The previous ThumbnailGenerator.bitmapToBase64, with java.util.Base64 standing in for android.util.Base64
+     */
+    private static String copyingEncode(DataUriEncoder.JpegWriter writer) throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        writer.writeTo(outputStream);
+        byte[] bytes = outputStream.toByteArray();
+
+        String base64 = Base64.getEncoder().encodeToString(bytes);
+        return "data:image/jpeg;base64," + base64;
+    }
+}
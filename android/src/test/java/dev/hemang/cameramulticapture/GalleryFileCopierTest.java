@@ -0,0 +1,99 @@
+package dev.hemang.cameramulticapture;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Throughput of {@link GalleryFileCopier#copy} into a file-backed stand-in for a
+ * MediaStore descriptor, on the transferTo path and on the direct-buffer path a
+ * stream-only provider gets.
+ */
+public class GalleryFileCopierTest {
+
+    // Not a multiple of the buffer size, so the last buffered read is partial
+    private static final int FILE_BYTES = 48 * 1024 * 1024 + 12345;
+    private static final int ROUNDS = 3;
+    /** transferTo may lose to the buffered copy by noise, not by a whole extra pass over the data */
+    private static final double MAX_SLOWDOWN = 1.5;
+
+    private File source;
+    private File target;
+
+    @Before
+    public void setUp() throws Exception {
+        source = File.createTempFile("gallery-source", ".mp4");
+        target = File.createTempFile("gallery-target", ".mp4");
+        byte[] chunk = new byte[GalleryFileCopier.BUFFER_SIZE];
+        Random random = new Random(3);
+        try (FileOutputStream out = new FileOutputStream(source)) {
+            for (int written = 0; written < FILE_BYTES; written += chunk.length) {
+                random.nextBytes(chunk);
+                out.write(chunk, 0, Math.min(chunk.length, FILE_BYTES - written));
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        source.delete();
+        target.delete();
+    }
+
+    @Test
+    public void transferToKeepsUpWithDirectBuffer() throws Exception {
+        double transferTo = 0;
+        double directBuffer = 0;
+        // Interleaved, so both paths see the same page cache and CPU state
+        for (int i = 0; i < ROUNDS; i++) {
+            try (FileOutputStream out = new FileOutputStream(target)) {
+                transferTo = Math.max(transferTo, timedCopy(out.getChannel()));
+            }
+            assertCopied("transferTo path");
+            try (FileOutputStream out = new FileOutputStream(target)) {
+                directBuffer = Math.max(directBuffer, timedCopy(Channels.newChannel(out)));
+            }
+            assertCopied("direct buffer path");
+        }
+        String report = String.format(Locale.ROOT, "%d MB: transferTo %.0f MB/s, direct buffer %.0f MB/s",
+            FILE_BYTES / (1024 * 1024), transferTo, directBuffer);
+        assertTrue(report, transferTo * MAX_SLOWDOWN >= directBuffer);
+    }
+
+    @Test
+    public void transferToContinuesAtChannelPosition() throws Exception {
+        byte[] prefix = { 1, 2, 3, 4 };
+        try (FileOutputStream out = new FileOutputStream(target)) {
+            out.write(prefix);
+            assertEquals(FILE_BYTES, GalleryFileCopier.copy(source, out.getChannel()));
+        }
+        assertEquals(prefix.length + (long) FILE_BYTES, target.length());
+    }
+
+    /**
+     * @return Throughput of one copy in MB/s
+     */
+    private double timedCopy(WritableByteChannel channel) throws IOException {
+        long start = System.nanoTime();
+        long copied = GalleryFileCopier.copy(source, channel);
+        long elapsed = Math.max(1, System.nanoTime() - start);
+        assertEquals(FILE_BYTES, copied);
+        return copied / (1024.0 * 1024.0) / (elapsed / 1e9);
+    }
+
+    private void assertCopied(String message) throws IOException {
+        assertEquals(message, FILE_BYTES, target.length());
+        assertEquals(message, -1L, Files.mismatch(source.toPath(), target.toPath()));
+    }
+}
@@ -0,0 +1,313 @@
+package dev.hemang.cameramulticapture;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JpegExifOrientationTest {
+
+    private static final int TAG_IMAGE_WIDTH = 0x0100;
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TAG_THUMBNAIL_OFFSET = 0x0201;
+    private static final int TAG_THUMBNAIL_LENGTH = 0x0202;
+
+    /** TIFF offsets of IFD1 and the thumbnail written by {@link #exif} */
+    private static final int IFD1 = 8 + 2 + 2 * 12 + 4;
+    private static final int THUMBNAIL = IFD1 + 2 + 2 * 12 + 4;
+
+    private static final int ROUNDS = 5;
+    /** Reading the header must stay well clear of streaming the whole file */
+    private static final int MIN_SPEEDUP = 4;
+    private static final long TIMING_SLACK_MS = 2;
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("orientation", ".jpg");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void readsBigEndianOrientation() throws Exception {
+        byte[] jpeg = jpeg(exif(true, 6), false);
+        assertEquals(6, JpegExifOrientation.readOrientation(jpeg));
+        Files.write(file.toPath(), jpeg);
+        assertEquals(6, JpegExifOrientation.readOrientation(file));
+    }
+
+    @Test
+    public void readsLittleEndianOrientation() throws Exception {
+        byte[] jpeg = jpeg(exif(false, 8), false);
+        assertEquals(8, JpegExifOrientation.readOrientation(jpeg));
+        Files.write(file.toPath(), jpeg);
+        assertEquals(8, JpegExifOrientation.readOrientation(file));
+    }
+
+    @Test
+    public void resetsBigEndianInPlace() throws Exception {
+        assertResetInPlace(true);
+    }
+
+    @Test
+    public void resetsLittleEndianInPlace() throws Exception {
+        assertResetInPlace(false);
+    }
+
+    @Test
+    public void skipsNonExifApp1Segments() throws Exception {
+        byte[] jpeg = jpeg(exif(false, 3), true);
+        assertEquals(3, JpegExifOrientation.readOrientation(jpeg));
+    }
+
+    @Test
+    public void reportsMissingOrientation() throws Exception {
+        byte[] jpeg = jpeg(null, false);
+        assertEquals(JpegExifOrientation.NOT_PRESENT, JpegExifOrientation.readOrientation(jpeg));
+        Files.write(file.toPath(), jpeg);
+        assertFalse(JpegExifOrientation.writeOrientation(file, 1));
+        assertArrayEquals(jpeg, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void readsEmbeddedThumbnailBigEndian() throws Exception {
+        assertThumbnailRead(true);
+    }
+
+    @Test
+    public void readsEmbeddedThumbnailLittleEndian() throws Exception {
+        assertThumbnailRead(false);
+    }
+
+    @Test
+    public void readsHeaderWithoutThumbnail() throws Exception {
+        JpegExifOrientation.Header header = JpegExifOrientation.readHeader(jpeg(exif(true, 6), false));
+        assertEquals(6, header.orientation);
+        assertNull(header.thumbnail);
+
+        header = JpegExifOrientation.readHeader(jpeg(null, false));
+        assertEquals(JpegExifOrientation.NOT_PRESENT, header.orientation);
+        assertNull(header.thumbnail);
+    }
+
+    @Test
+    public void readsHeaderOfFourMegabyteFileWithoutScanning() throws Exception {
+        assertHeaderReadWithoutScanning(4 * 1024 * 1024);
+    }
+
+    @Test
+    public void readsHeaderOfTwentyMegabyteFileWithoutScanning() throws Exception {
+        assertHeaderReadWithoutScanning(20 * 1024 * 1024);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsNonJpeg() throws Exception {
+        JpegExifOrientation.readOrientation("not a jpeg".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private void assertThumbnailRead(boolean bigEndian) throws Exception {
+        byte[] thumbnail = jpeg(null, false);
+        byte[] jpeg = jpeg(exif(bigEndian, 8, thumbnail), true);
+        JpegExifOrientation.Header header = JpegExifOrientation.readHeader(jpeg);
+        assertEquals(8, header.orientation);
+        assertArrayEquals(thumbnail, header.thumbnail);
+
+        Files.write(file.toPath(), jpeg);
+        header = JpegExifOrientation.readHeader(file);
+        assertEquals(8, header.orientation);
+        assertArrayEquals(thumbnail, header.thumbnail);
+    }
+
+    /**
+     * Time {@link JpegExifOrientation#readHeader(File)} on a camera-sized file against a
+     * plain buffered read of the same file, the floor for a parser that walks the whole
+     * stream. ExifInterface is an Android library and can't run in JVM unit tests.
+     */
+    private void assertHeaderReadWithoutScanning(int scanBytes) throws Exception {
+        byte[] thumbnail = jpeg(null, false);
+        Files.write(file.toPath(), largeJpeg(exif(true, 6, thumbnail), scanBytes));
+
+        long headerNanos = Long.MAX_VALUE;
+        long readNanos = Long.MAX_VALUE;
+        JpegExifOrientation.Header header = null;
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            header = JpegExifOrientation.readHeader(file);
+            headerNanos = Math.min(headerNanos, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            readAll(file);
+            readNanos = Math.min(readNanos, System.nanoTime() - start);
+        }
+        String report = String.format(Locale.ROOT, "%d MB: header %.3f ms, full read %.3f ms",
+            scanBytes / (1024 * 1024), headerNanos / 1e6, readNanos / 1e6);
+        assertEquals(report, 6, header.orientation);
+        assertArrayEquals(report, thumbnail, header.thumbnail);
+        assertTrue(report, headerNanos <= readNanos / MIN_SPEEDUP + TIMING_SLACK_MS * 1_000_000);
+    }
+
+    private static long readAll(File file) throws IOException {
+        long total = 0;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 65536)) {
+            byte[] buffer = new byte[65536];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                total += read;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * JPEG whose scan is scanBytes of stuffing-free filler
+     */
+    private static byte[] largeJpeg(byte[] exif, int scanBytes) throws IOException {
+        byte[] small = jpeg(exif, false);
+        byte[] filler = new byte[scanBytes];
+        new Random(7).nextBytes(filler);
+        for (int i = 0; i < filler.length; i++) {
+            if (filler[i] == (byte) 0xFF) {
+                filler[i] = 0;
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(small.length + scanBytes);
+        out.write(small, 0, small.length - 2);
+        out.write(filler);
+        out.write(0xFF);
+        out.write(0xD9);
+        return out.toByteArray();
+    }
+
+    private void assertResetInPlace(boolean bigEndian) throws Exception {
+        byte[] original = jpeg(exif(bigEndian, 6), false);
+        Files.write(file.toPath(), original);
+
+        assertTrue(JpegExifOrientation.writeOrientation(file, 1));
+
+        byte[] written = Files.readAllBytes(file.toPath());
+        assertEquals(1, JpegExifOrientation.readOrientation(written));
+        assertEquals(original.length, written.length);
+        int changed = 0;
+        for (int i = 0; i < original.length; i++) {
+            if (original[i] != written[i]) {
+                changed++;
+            }
+        }
+        // Only the low byte of the SHORT differs between 6 and 1
+        assertEquals(1, changed);
+    }
+
+    /**
+     * SOI, APP0, optional XMP APP1, optional Exif APP1, DQT, SOS, scan data, EOI
+     */
+    private static byte[] jpeg(byte[] exif, boolean xmpFirst) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xFF);
+        out.write(0xD8);
+        segment(out, 0xE0, "JFIF\0\1\1\0\0\1\0\1\0\0".getBytes(StandardCharsets.ISO_8859_1));
+        if (xmpFirst) {
+            segment(out, 0xE1, "http://ns.adobe.com/xap/1.0/\0<x:xmpmeta/>".getBytes(StandardCharsets.ISO_8859_1));
+        }
+        if (exif != null) {
+            segment(out, 0xE1, exif);
+        }
+        segment(out, 0xDB, new byte[65]);
+        segment(out, 0xDA, new byte[] { 1, 1, 0, 0, 63, 0 });
+        out.write(new byte[] { 0x12, 0x34, (byte) 0xFF, 0x00, 0x56 });
+        out.write(0xFF);
+        out.write(0xD9);
+        return out.toByteArray();
+    }
+
+    private static void segment(ByteArrayOutputStream out, int marker, byte[] payload) {
+        out.write(0xFF);
+        out.write(marker);
+        out.write((payload.length + 2) >> 8);
+        out.write(payload.length + 2);
+        out.write(payload, 0, payload.length);
+    }
+
+    private static byte[] exif(boolean bigEndian, int orientation) {
+        return exif(bigEndian, orientation, null);
+    }
+
+    /**
+     * Exif APP1 payload whose IFD0 holds ImageWidth followed by Orientation, and whose
+     * IFD1 points at the thumbnail when there is one
+     */
+    private static byte[] exif(boolean bigEndian, int orientation, byte[] thumbnail) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write('E');
+        out.write('x');
+        out.write('i');
+        out.write('f');
+        out.write(0);
+        out.write(0);
+        out.write(bigEndian ? 'M' : 'I');
+        out.write(bigEndian ? 'M' : 'I');
+        writeShort(out, 42, bigEndian);
+        writeInt(out, 8, bigEndian);
+        writeShort(out, 2, bigEndian);
+        writeShort(out, TAG_IMAGE_WIDTH, bigEndian);
+        writeShort(out, 4, bigEndian);
+        writeInt(out, 1, bigEndian);
+        writeInt(out, 4000, bigEndian);
+        writeShort(out, TAG_ORIENTATION, bigEndian);
+        writeShort(out, 3, bigEndian);
+        writeInt(out, 1, bigEndian);
+        writeShort(out, orientation, bigEndian);
+        writeShort(out, 0, bigEndian);
+        writeInt(out, thumbnail != null ? IFD1 : 0, bigEndian);
+        if (thumbnail != null) {
+            writeShort(out, 2, bigEndian);
+            writeShort(out, TAG_THUMBNAIL_OFFSET, bigEndian);
+            writeShort(out, 4, bigEndian);
+            writeInt(out, 1, bigEndian);
+            writeInt(out, THUMBNAIL, bigEndian);
+            writeShort(out, TAG_THUMBNAIL_LENGTH, bigEndian);
+            writeShort(out, 4, bigEndian);
+            writeInt(out, 1, bigEndian);
+            writeInt(out, thumbnail.length, bigEndian);
+            writeInt(out, 0, bigEndian);
+            out.write(thumbnail, 0, thumbnail.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value, boolean bigEndian) {
+        if (bigEndian) {
+            out.write(value >> 8);
+            out.write(value);
+        } else {
+            out.write(value);
+            out.write(value >> 8);
+        }
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value, boolean bigEndian) {
+        if (bigEndian) {
+            writeShort(out, value >>> 16, true);
+            writeShort(out, value, true);
+        } else {
+            writeShort(out, value, false);
+            writeShort(out, value >>> 16, false);
+        }
+    }
+}
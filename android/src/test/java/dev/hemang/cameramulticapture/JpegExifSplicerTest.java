@@ -0,0 +1,397 @@
+package dev.hemang.cameramulticapture;
+
+import static org.junit.Assert.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JpegExifSplicerTest {
+
+    private static final int TAG_IMAGE_WIDTH = 0x0100;
+    private static final int TAG_IMAGE_LENGTH = 0x0101;
+    private static final int TAG_COMPRESSION = 0x0103;
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TAG_EXIF_IFD = 0x8769;
+    private static final int TAG_PIXEL_X_DIMENSION = 0xA002;
+    private static final int TAG_PIXEL_Y_DIMENSION = 0xA003;
+
+    private static final int TYPE_SHORT = 3;
+    private static final int TYPE_LONG = 4;
+
+    /** TIFF offsets of the IFDs written by {@link #exif} */
+    private static final int IFD0 = 8;
+    private static final int EXIF_IFD = IFD0 + 2 + 4 * 12 + 4;
+    private static final int IFD1 = EXIF_IFD + 2 + 2 * 12 + 4;
+
+    private static final byte[] SCAN = { 0x12, 0x34, (byte) 0xFF, 0x00, 0x56, (byte) 0xFF, (byte) 0xD0, 0x78 };
+
+    private static final int ROUNDS = 3;
+    /** A splice streams the file once, like the rewrite every saveAttributes ends with */
+    private static final int MAX_REWRITE_FACTOR = 2;
+    private static final long TIMING_SLACK_MS = 25;
+
+    private File source;
+    private File destination;
+
+    @Before
+    public void setUp() throws Exception {
+        source = File.createTempFile("splice-source", ".jpg");
+        destination = File.createTempFile("splice-destination", ".jpg");
+    }
+
+    @After
+    public void tearDown() {
+        source.delete();
+        destination.delete();
+    }
+
+    @Test
+    public void splicesBigEndianSegment() throws Exception {
+        assertSpliced(true);
+    }
+
+    @Test
+    public void splicesLittleEndianSegment() throws Exception {
+        assertSpliced(false);
+    }
+
+    @Test
+    public void replacesExistingExifAndKeepsOtherSegments() throws Exception {
+        byte[] segment = segment(0xE1, exif(true, 6, 4000, 3000));
+        byte[] jpeg = jpeg(640, 480, exif(false, 1, 1, 1), true);
+
+        byte[] spliced = splice(segment, jpeg);
+
+        int exifSegments = 0;
+        boolean xmp = false;
+        for (int p = 2; (spliced[p + 1] & 0xFF) != 0xDA; p += 2 + readU16(spliced, p + 2)) {
+            if ((spliced[p + 1] & 0xFF) == 0xE1) {
+                if (spliced[p + 4] == 'E') {
+                    exifSegments++;
+                } else {
+                    xmp = true;
+                }
+            }
+        }
+        assertEquals(1, exifSegments);
+        assertTrue(xmp);
+        assertTrue(isBigEndian(JpegExifSplicer.readExifSegment(spliced)));
+    }
+
+    @Test
+    public void copyReplacesDestinationFile() throws Exception {
+        Files.write(source.toPath(), jpeg(4000, 3000, exif(false, 8, 4000, 3000), false));
+        byte[] original = jpeg(320, 240, null, false);
+        Files.write(destination.toPath(), original);
+
+        assertTrue(JpegExifSplicer.copy(source, destination));
+
+        byte[] written = Files.readAllBytes(destination.toPath());
+        byte[] segment = JpegExifSplicer.readExifSegment(destination);
+        assertNotNull(segment);
+        assertEquals(1, entryValue(segment, IFD0, TAG_ORIENTATION));
+        assertEquals(320, entryValue(segment, IFD0, TAG_IMAGE_WIDTH));
+        assertEquals(original.length + segment.length, written.length);
+        assertEquals(1, JpegExifOrientation.readOrientation(written));
+    }
+
+    @Test
+    public void copyWithoutSourceExifLeavesDestinationAlone() throws Exception {
+        Files.write(source.toPath(), jpeg(4000, 3000, null, true));
+        byte[] original = jpeg(320, 240, exif(true, 3, 320, 240), false);
+        Files.write(destination.toPath(), original);
+
+        assertFalse(JpegExifSplicer.copy(source, destination));
+        assertArrayEquals(original, Files.readAllBytes(destination.toPath()));
+    }
+
+    @Test
+    public void leavesForeignSegmentUntouched() {
+        byte[] segment = segment(0xE1, "http://ns.adobe.com/xap/1.0/\0<x:xmpmeta/>".getBytes(StandardCharsets.ISO_8859_1));
+        byte[] copy = segment.clone();
+        JpegExifSplicer.patchSegment(copy, 640, 480);
+        assertArrayEquals(segment, copy);
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsNonJpegDestination() throws Exception {
+        splice(segment(0xE1, exif(true, 6, 4000, 3000)), "not a jpeg".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void splicesFourMegabyteFileInOnePass() throws Exception {
+        assertSplicedInOnePass(4 * 1024 * 1024);
+    }
+
+    @Test
+    public void splicesTwentyMegabyteFileInOnePass() throws Exception {
+        assertSplicedInOnePass(20 * 1024 * 1024);
+    }
+
+    /**
+     * Time {@link JpegExifSplicer#copy} on a camera-sized file against a plain buffered
+     * rewrite of the same file, the floor for any in-place EXIF update. ExifInterface
+     * needs android.system.Os to save, which the JVM stubs don't provide.
+     */
+    private void assertSplicedInOnePass(int scanBytes) throws Exception {
+        Files.write(source.toPath(), jpeg(4000, 3000, exif(true, 6, 4000, 3000), true));
+        byte[] original = largeJpeg(scanBytes);
+        byte[] segment = JpegExifSplicer.readExifSegment(source);
+
+        long spliceNanos = Long.MAX_VALUE;
+        long rewriteNanos = Long.MAX_VALUE;
+        for (int i = 0; i < ROUNDS; i++) {
+            Files.write(destination.toPath(), original);
+            long start = System.nanoTime();
+            assertTrue(JpegExifSplicer.copy(source, destination));
+            spliceNanos = Math.min(spliceNanos, System.nanoTime() - start);
+
+            Files.write(destination.toPath(), original);
+            start = System.nanoTime();
+            rewrite(destination);
+            rewriteNanos = Math.min(rewriteNanos, System.nanoTime() - start);
+        }
+        assertArrayEquals(original, Files.readAllBytes(destination.toPath()));
+
+        Files.write(destination.toPath(), original);
+        JpegExifSplicer.copy(source, destination);
+        long rewritten = destination.length();
+        String report = String.format(Locale.ROOT,
+            "%d MB: splice %.1f ms rewrote %d bytes (%d Exif), plain rewrite %.1f ms",
+            scanBytes / (1024 * 1024), spliceNanos / 1e6, rewritten, segment.length, rewriteNanos / 1e6);
+        assertEquals(report, original.length + segment.length, rewritten);
+        assertEquals(report, 1, JpegExifOrientation.readOrientation(destination));
+        assertTrue(report, spliceNanos / 1_000_000 <= MAX_REWRITE_FACTOR * rewriteNanos / 1_000_000 + TIMING_SLACK_MS);
+    }
+
+    private static void rewrite(File file) throws IOException {
+        File temp = new File(file.getParentFile(), file.getName() + ".rewrite.tmp");
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file), 65536);
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(temp), 65536)) {
+            byte[] buffer = new byte[65536];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        assertTrue(temp.renameTo(file));
+    }
+
+    /**
+     * JPEG without Exif whose scan is scanBytes of stuffing-free filler
+     */
+    private static byte[] largeJpeg(int scanBytes) throws IOException {
+        byte[] small = jpeg(4000, 3000, null, false);
+        byte[] filler = new byte[scanBytes];
+        new Random(11).nextBytes(filler);
+        for (int i = 0; i < filler.length; i++) {
+            if (filler[i] == (byte) 0xFF) {
+                filler[i] = 0;
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(small.length + scanBytes);
+        out.write(small, 0, small.length - 2);
+        out.write(filler);
+        out.write(0xFF);
+        out.write(0xD9);
+        return out.toByteArray();
+    }
+
+    private void assertSpliced(boolean bigEndian) throws Exception {
+        byte[] sourceJpeg = jpeg(4000, 3000, exif(bigEndian, 6, 4000, 3000), false);
+        byte[] segment = JpegExifSplicer.readExifSegment(sourceJpeg);
+        assertNotNull(segment);
+        byte[] before = segment.clone();
+
+        byte[] spliced = splice(segment, jpeg(640, 480, null, false));
+
+        assertArrayEquals("source segment must not be modified", before, segment);
+        // SOI, then the leading JFIF APP0, then the spliced Exif APP1
+        assertEquals(0xD8, spliced[1] & 0xFF);
+        assertEquals(0xE0, spliced[3] & 0xFF);
+        int app1 = 2 + 2 + readU16(spliced, 4);
+        assertEquals(0xE1, spliced[app1 + 1] & 0xFF);
+
+        byte[] patched = JpegExifSplicer.readExifSegment(spliced);
+        assertNotNull(patched);
+        assertEquals(segment.length, patched.length);
+        assertEquals(bigEndian, isBigEndian(patched));
+        assertEquals(1, entryValue(patched, IFD0, TAG_ORIENTATION));
+        assertEquals(640, entryValue(patched, IFD0, TAG_IMAGE_WIDTH));
+        assertEquals(480, entryValue(patched, IFD0, TAG_IMAGE_LENGTH));
+        assertEquals(640, entryValue(patched, EXIF_IFD, TAG_PIXEL_X_DIMENSION));
+        assertEquals(480, entryValue(patched, EXIF_IFD, TAG_PIXEL_Y_DIMENSION));
+        assertEquals("IFD1 must be detached", 0, nextIfd(patched, IFD0));
+        assertEquals(IFD1, nextIfd(segment, IFD0));
+
+        byte[] tail = Arrays.copyOfRange(spliced, spliced.length - SCAN.length - 2, spliced.length - 2);
+        assertArrayEquals(SCAN, tail);
+        assertEquals(1, JpegExifOrientation.readOrientation(spliced));
+    }
+
+    private static byte[] splice(byte[] segment, byte[] jpeg) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JpegExifSplicer.splice(segment, new ByteArrayInputStream(jpeg), out);
+        return out.toByteArray();
+    }
+
+    /**
+     * SOI, APP0, optional XMP APP1, optional Exif APP1, DQT, SOF0, SOS, scan data, EOI
+     */
+    private static byte[] jpeg(int width, int height, byte[] exif, boolean xmp) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xFF);
+        out.write(0xD8);
+        out.write(segment(0xE0, "JFIF\0\1\1\0\0\1\0\1\0\0".getBytes(StandardCharsets.ISO_8859_1)));
+        if (xmp) {
+            out.write(segment(0xE1, "http://ns.adobe.com/xap/1.0/\0<x:xmpmeta/>".getBytes(StandardCharsets.ISO_8859_1)));
+        }
+        if (exif != null) {
+            out.write(segment(0xE1, exif));
+        }
+        out.write(segment(0xDB, new byte[65]));
+        out.write(segment(0xC0, new byte[] {
+            8, (byte) (height >> 8), (byte) height, (byte) (width >> 8), (byte) width, 1, 1, 0x11, 0
+        }));
+        out.write(segment(0xDA, new byte[] { 1, 1, 0, 0, 63, 0 }));
+        out.write(SCAN);
+        out.write(0xFF);
+        out.write(0xD9);
+        return out.toByteArray();
+    }
+
+    private static byte[] segment(int marker, byte[] payload) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xFF);
+        out.write(marker);
+        out.write((payload.length + 2) >> 8);
+        out.write(payload.length + 2);
+        out.write(payload, 0, payload.length);
+        return out.toByteArray();
+    }
+
+    /**
+     * Exif APP1 payload: IFD0 with width (LONG), length (SHORT), orientation and an
+     * Exif IFD link, an Exif IFD with the pixel dimensions, and a thumbnail IFD1
+     */
+    private static byte[] exif(boolean bigEndian, int orientation, int width, int height) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write('E');
+        out.write('x');
+        out.write('i');
+        out.write('f');
+        out.write(0);
+        out.write(0);
+        out.write(bigEndian ? 'M' : 'I');
+        out.write(bigEndian ? 'M' : 'I');
+        writeShort(out, 42, bigEndian);
+        writeInt(out, IFD0, bigEndian);
+
+        writeShort(out, 4, bigEndian);
+        entry(out, TAG_IMAGE_WIDTH, TYPE_LONG, width, bigEndian);
+        entry(out, TAG_IMAGE_LENGTH, TYPE_SHORT, height, bigEndian);
+        entry(out, TAG_ORIENTATION, TYPE_SHORT, orientation, bigEndian);
+        entry(out, TAG_EXIF_IFD, TYPE_LONG, EXIF_IFD, bigEndian);
+        writeInt(out, IFD1, bigEndian);
+
+        writeShort(out, 2, bigEndian);
+        entry(out, TAG_PIXEL_X_DIMENSION, TYPE_LONG, width, bigEndian);
+        entry(out, TAG_PIXEL_Y_DIMENSION, TYPE_SHORT, height, bigEndian);
+        writeInt(out, 0, bigEndian);
+
+        writeShort(out, 1, bigEndian);
+        entry(out, TAG_COMPRESSION, TYPE_SHORT, 6, bigEndian);
+        writeInt(out, 0, bigEndian);
+        return out.toByteArray();
+    }
+
+    private static void entry(ByteArrayOutputStream out, int tag, int type, int value, boolean bigEndian) {
+        writeShort(out, tag, bigEndian);
+        writeShort(out, type, bigEndian);
+        writeInt(out, 1, bigEndian);
+        if (type == TYPE_SHORT) {
+            writeShort(out, value, bigEndian);
+            writeShort(out, 0, bigEndian);
+        } else {
+            writeInt(out, value, bigEndian);
+        }
+    }
+
+    private static boolean isBigEndian(byte[] segment) {
+        return segment[10] == 'M';
+    }
+
+    /**
+     * Value of a SHORT or LONG entry in the IFD at the given TIFF offset
+     */
+    private static int entryValue(byte[] segment, int ifd, int tag) {
+        boolean bigEndian = isBigEndian(segment);
+        int start = 10 + ifd;
+        int count = read(segment, start, 2, bigEndian);
+        for (int i = 0; i < count; i++) {
+            int entry = start + 2 + i * 12;
+            if (read(segment, entry, 2, bigEndian) == tag) {
+                int size = read(segment, entry + 2, 2, bigEndian) == TYPE_SHORT ? 2 : 4;
+                return read(segment, entry + 8, size, bigEndian);
+            }
+        }
+        throw new AssertionError("tag " + Integer.toHexString(tag) + " not found");
+    }
+
+    private static int nextIfd(byte[] segment, int ifd) {
+        boolean bigEndian = isBigEndian(segment);
+        int start = 10 + ifd;
+        int count = read(segment, start, 2, bigEndian);
+        return read(segment, start + 2 + count * 12, 4, bigEndian);
+    }
+
+    private static int read(byte[] data, int offset, int size, boolean bigEndian) {
+        int value = 0;
+        for (int i = 0; i < size; i++) {
+            int b = data[offset + (bigEndian ? i : size - 1 - i)] & 0xFF;
+            value = (value << 8) | b;
+        }
+        return value;
+    }
+
+    private static int readU16(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
+
+    private static void writeShort(ByteArrayOutputStream out, int value, boolean bigEndian) {
+        if (bigEndian) {
+            out.write(value >> 8);
+            out.write(value);
+        } else {
+            out.write(value);
+            out.write(value >> 8);
+        }
+    }
+
+    private static void writeInt(ByteArrayOutputStream out, int value, boolean bigEndian) {
+        if (bigEndian) {
+            writeShort(out, value >>> 16, true);
+            writeShort(out, value, true);
+        } else {
+            writeShort(out, value, false);
+            writeShort(out, value >>> 16, false);
+        }
+    }
+}
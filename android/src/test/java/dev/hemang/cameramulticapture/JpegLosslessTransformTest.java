@@ -0,0 +1,215 @@
+package dev.hemang.cameramulticapture;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.junit.Test;
+
+/**
+ * {@link JpegLosslessTransform} output decoded with ImageIO and compared against the
+ * source decoded and re-oriented in the pixel domain. Chroma upsampling and IDCT
+ * rounding are not symmetric under rotation, so pixels are compared with a tolerance
+ * that a misplaced or wrongly signed block blows through.
+ */
+public class JpegLosslessTransformTest {
+
+    private static final double MAX_MEAN_ERROR = 1.5;
+    private static final int MAX_PIXEL_ERROR = 24;
+
+    @Test
+    public void appliesAllOrientationsToMcuAlignedImage() throws Exception {
+        byte[] jpeg = encode(64, 48, false, 0);
+        for (int orientation = 2; orientation <= 8; orientation++) {
+            assertTransformed(jpeg, orientation, 64, 48);
+        }
+    }
+
+    @Test
+    public void trimsPartialMcusOnMirroredAxes() throws Exception {
+        // 4:2:0 has 16px MCUs: 70 keeps 64 when mirrored, 50 keeps 48
+        byte[] jpeg = encode(70, 50, false, 0);
+        for (int orientation = 2; orientation <= 8; orientation++) {
+            assertTransformed(jpeg, orientation, 70 - (mirrorsX(orientation) ? 6 : 0),
+                50 - (mirrorsY(orientation) ? 2 : 0));
+        }
+    }
+
+    @Test
+    public void rotatesCameraSizeWithPartialMcuRow() throws Exception {
+        // 1080 is not a multiple of 16, so rotating by 90 trims the last 8 rows
+        byte[] jpeg = encode(1920, 1080, false, 0);
+        assertTransformed(jpeg, JpegLosslessTransform.ORIENTATION_ROTATE_90, 1920, 1072);
+    }
+
+    @Test
+    public void trimsGrayscaleToWholeBlocks() throws Exception {
+        byte[] jpeg = encode(70, 50, true, 0);
+        for (int orientation = 2; orientation <= 8; orientation++) {
+            assertTransformed(jpeg, orientation, 70 - (mirrorsX(orientation) ? 6 : 0),
+                50 - (mirrorsY(orientation) ? 2 : 0));
+        }
+    }
+
+    @Test
+    public void readsRestartIntervals() throws Exception {
+        byte[] jpeg = encode(70, 50, false, 3);
+        assertTrue("encoder should have written a DRI segment", indexOfMarker(jpeg, 0xDD) > 0);
+        for (int orientation = 2; orientation <= 8; orientation++) {
+            assertTransformed(jpeg, orientation, 70 - (mirrorsX(orientation) ? 6 : 0),
+                50 - (mirrorsY(orientation) ? 2 : 0));
+        }
+    }
+
+    @Test
+    public void rejectsImageNarrowerThanOneMcu() throws Exception {
+        byte[] jpeg = encode(12, 40, false, 0);
+        // Nothing is mirrored horizontally, so the narrow width is carried over as padding
+        assertTransformed(jpeg, JpegLosslessTransform.ORIENTATION_FLIP_VERTICAL, 12, 32);
+        assertFallback(jpeg, JpegLosslessTransform.ORIENTATION_FLIP_HORIZONTAL);
+        assertFallback(jpeg, JpegLosslessTransform.ORIENTATION_ROTATE_270);
+    }
+
+    @Test
+    public void rejectsProgressiveImage() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(pattern(32, 32, false), null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        assertFallback(out.toByteArray(), JpegLosslessTransform.ORIENTATION_ROTATE_90);
+    }
+
+    private static void assertFallback(byte[] jpeg, int orientation) throws IOException {
+        try {
+            JpegLosslessTransform.transform(jpeg, orientation);
+            fail("orientation " + orientation + " should fall back to pixel rotation");
+        } catch (JpegLosslessTransform.UnsupportedJpegException expected) {
+            // Callers catch this and rotate pixels instead
+        }
+    }
+
+    /**
+     * @param keptWidth Source width expected to survive trimming
+     * @param keptHeight Source height expected to survive trimming
+     */
+    private static void assertTransformed(byte[] jpeg, int orientation, int keptWidth, int keptHeight)
+            throws IOException {
+        BufferedImage source = ImageIO.read(new ByteArrayInputStream(jpeg));
+        BufferedImage output = ImageIO.read(new ByteArrayInputStream(JpegLosslessTransform.transform(jpeg, orientation)));
+        String label = "orientation " + orientation + " of " + source.getWidth() + "x" + source.getHeight();
+        boolean transpose = JpegLosslessTransform.isTransposing(orientation);
+        assertEquals(label, transpose ? keptHeight : keptWidth, output.getWidth());
+        assertEquals(label, transpose ? keptWidth : keptHeight, output.getHeight());
+
+        long total = 0;
+        int worst = 0;
+        for (int y = 0; y < output.getHeight(); y++) {
+            for (int x = 0; x < output.getWidth(); x++) {
+                int sx;
+                int sy;
+                switch (orientation) {
+                    case 2: sx = keptWidth - 1 - x; sy = y; break;
+                    case 3: sx = keptWidth - 1 - x; sy = keptHeight - 1 - y; break;
+                    case 4: sx = x; sy = keptHeight - 1 - y; break;
+                    case 5: sx = y; sy = x; break;
+                    case 6: sx = y; sy = keptHeight - 1 - x; break;
+                    case 7: sx = keptWidth - 1 - y; sy = keptHeight - 1 - x; break;
+                    default: sx = keptWidth - 1 - y; sy = x; break;
+                }
+                int expected = source.getRGB(sx, sy);
+                int actual = output.getRGB(x, y);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    int error = Math.abs(((expected >> shift) & 0xFF) - ((actual >> shift) & 0xFF));
+                    total += error;
+                    worst = Math.max(worst, error);
+                }
+            }
+        }
+        double mean = total / (3.0 * output.getWidth() * output.getHeight());
+        assertTrue(label + ": mean error " + mean, mean <= MAX_MEAN_ERROR);
+        assertTrue(label + ": max error " + worst, worst <= MAX_PIXEL_ERROR);
+    }
+
+    private static boolean mirrorsX(int orientation) {
+        return orientation == 2 || orientation == 3 || orientation == 7 || orientation == 8;
+    }
+
+    private static boolean mirrorsY(int orientation) {
+        return orientation == 3 || orientation == 4 || orientation == 6 || orientation == 7;
+    }
+
+    /**
+     * Baseline JPEG from ImageIO: 4:2:0 YCbCr for color, one component for gray
+     * @param restartInterval MCUs between restart markers, or 0 for none
+     */
+    private static byte[] encode(int width, int height, boolean gray, int restartInterval) throws IOException {
+        BufferedImage image = pattern(width, height, gray);
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(0.95f);
+        IIOMetadata metadata = writer.getDefaultImageMetadata(new ImageTypeSpecifier(image), param);
+        if (restartInterval > 0) {
+            String format = "javax_imageio_jpeg_image_1.0";
+            IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(format);
+            IIOMetadataNode dri = new IIOMetadataNode("dri");
+            dri.setAttribute("interval", Integer.toString(restartInterval));
+            IIOMetadataNode markers = (IIOMetadataNode) root.getElementsByTagName("markerSequence").item(0);
+            markers.insertBefore(dri, markers.getFirstChild());
+            metadata.setFromTree(format, root);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, metadata), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Smooth gradients with hard-edged squares, so every 8x8 block differs from its
+     * neighbours and its mirror image
+     */
+    private static BufferedImage pattern(int width, int height, boolean gray) {
+        BufferedImage image = new BufferedImage(width, height,
+            gray ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = x * 255 / width;
+                int g = y * 255 / height;
+                int b = ((x / 12) + (y / 20)) % 2 == 0 ? 40 : 210;
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        return image;
+    }
+
+    private static int indexOfMarker(byte[] jpeg, int marker) {
+        for (int i = 0; i + 1 < jpeg.length; i++) {
+            if ((jpeg[i] & 0xFF) == 0xFF && (jpeg[i + 1] & 0xFF) == marker) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
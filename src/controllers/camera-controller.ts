@@ -62,6 +62,16 @@ export class CameraController {
         maxRecordingDuration: this.options.maxRecordingDuration,
         enableSaving: this.options.enableSaving,
         galleryAlbumName: this.options.galleryAlbumName,
+        gallerySaveMode: this.options.gallerySaveMode,
+        galleryBatchSize: this.options.galleryBatchSize,
+        galleryFlushInterval: this.options.galleryFlushInterval,
+        processingWorkers: this.options.processingWorkers,
+        processingQueueSize: this.options.processingQueueSize,
+        processingBackpressure: this.options.processingBackpressure,
+        processingBlockTimeoutMs: this.options.processingBlockTimeoutMs,
+        orientationCorrection: this.options.orientationCorrection,
+        captureOutput: this.options.captureOutput,
+        thumbnailFormat: this.options.thumbnailFormat,
       };
 
       await this.plugin.start(startOptions);
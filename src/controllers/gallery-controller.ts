@@ -11,6 +11,14 @@ type CaptureEntry =
   | { type: 'image'; item: CapturedImage }
   | { type: 'video'; item: CapturedVideo };
 
+/**
+ * Thumbnails come back as data URIs or, with `thumbnailFormat: 'file'`,
+ * as native file URIs that the web view can only load once converted.
+ */
+function toDisplaySrc(thumbnail: string): string {
+  return thumbnail.startsWith('file://') ? Capacitor.convertFileSrc(thumbnail) : thumbnail;
+}
+
 /**
  * Manages gallery operations and captured images
  */
@@ -366,14 +374,15 @@ export class GalleryController {
       if (entry.type === 'image') {
         const image = entry.item;
         const src = image.data.webPath || image.data.uri;
+        const thumbnail = toDisplaySrc(image.data.thumbnail);
         const thumbnailContainer = createThumbnailContainer(
-          image.data.thumbnail,
+          thumbnail,
           this.thumbnailStyle,
           () => this.removeImage(image.id),
           {
             onTap: () => openImagePreview(
               src,
-              image.data.thumbnail,
+              thumbnail,
               this.enableEditing ? () => this.handleEditImage(image) : undefined,
             ),
           }
@@ -382,14 +391,15 @@ export class GalleryController {
       } else {
         const video = entry.item;
         const src = video.data.webPath || video.data.uri;
+        const thumbnail = toDisplaySrc(video.data.thumbnail);
         const thumbnailContainer = createThumbnailContainer(
-          video.data.thumbnail,
+          thumbnail,
           this.thumbnailStyle,
           () => this.removeVideo(video.id),
           {
             isVideo: true,
             duration: video.data.duration,
-            onTap: () => openVideoPreview(src, video.data.thumbnail),
+            onTap: () => openVideoPreview(src, thumbnail),
           }
         );
         this.galleryElement.appendChild(thumbnailContainer);
@@ -1,4 +1,4 @@
-import type { PermissionState } from '@capacitor/core';
+import type { PermissionState, PluginListenerHandle } from '@capacitor/core';
 
 export interface ThumbnailStyle {
   width?: string;
@@ -139,6 +139,75 @@ export interface CameraOverlayOptions {
    * @default "Camera"
    */
   galleryAlbumName?: string;
+  /**
+   * How photos are saved when `enableSaving` is true.
+   * `immediate` saves each photo before its capture resolves.
+   * `deferred` queues photos and commits them to the gallery in batches,
+   * reporting the gallery URIs through `gallerySaved` events.
+   * Queued photos are committed when `galleryBatchSize` is reached,
+   * `galleryFlushInterval` passes, or the session stops. Android only.
+   * @default "immediate"
+   */
+  gallerySaveMode?: 'immediate' | 'deferred';
+  /**
+   * Number of queued photos that triggers a gallery commit in `deferred` mode. Android only.
+   * @default 10
+   */
+  galleryBatchSize?: number;
+  /**
+   * Milliseconds after the first queued photo before a partial batch is committed
+   * in `deferred` mode. 0 waits for the batch size or the end of the session. Android only.
+   * @default 2000
+   */
+  galleryFlushInterval?: number;
+  /**
+   * Number of background workers processing captured photos
+   * (orientation, gallery save, thumbnail). Android only.
+   * @default 2
+   */
+  processingWorkers?: number;
+  /**
+   * Number of captured photos allowed to wait for a free processing worker. Android only.
+   * @default 4
+   */
+  processingQueueSize?: number;
+  /**
+   * What `capture()` does when the processing queue is full:
+   * `block` waits for a free slot, `reject` fails the call with code `BUSY`. Android only.
+   * @default "block"
+   */
+  processingBackpressure?: 'block' | 'reject';
+  /**
+   * How long a blocked `capture()` waits for a processing slot before failing
+   * with code `BUSY`. `0` waits until a slot frees or the camera stops. Android only.
+   * @default 10000
+   */
+  processingBlockTimeoutMs?: number;
+  /**
+   * How captured photos are rotated upright.
+   * `lossless` transforms the JPEG data without re-encoding, trimming up to one
+   * partial 16px block row/column from an edge the rotation mirrors, and only
+   * falls back to pixel rotation for unsupported encodings;
+   * `pixel` always decodes, rotates and re-encodes. Android only.
+   * @default "lossless"
+   */
+  orientationCorrection?: 'lossless' | 'pixel';
+  /**
+   * How photos travel from the camera to disk.
+   * `file` lets CameraX write the JPEG, which is then re-read for orientation and thumbnail;
+   * `memory` receives the JPEG in memory, writes the upright file once and
+   * builds the thumbnail from the same data. Android only.
+   * @default "file"
+   */
+  captureOutput?: 'file' | 'memory';
+  /**
+   * How thumbnails are returned.
+   * `base64` inlines a JPEG data URI in every result;
+   * `file` writes it to an on-disk thumbnail cache and returns its file URI,
+   * which keeps the image bytes off the bridge. Android only.
+   * @default "base64"
+   */
+  thumbnailFormat?: 'base64' | 'file';
 }
 
 
@@ -155,6 +224,7 @@ export interface CapturedImage {
  */
 export interface CameraImageData {
   uri: string;
+  /** Base64 data URI, or a file URI when `thumbnailFormat` is `file` */
   thumbnail: string;
   webPath?: string;
   /**
@@ -176,9 +246,12 @@ export interface CameraImageData {
  */
 export interface CameraVideoData {
   uri: string;
-  thumbnail: string; // Optimized thumbnail as Base64 data URI
+  thumbnail: string; // Base64 data URI, or a file URI when `thumbnailFormat` is `file`
   webPath?: string;
   duration: number; // Duration in seconds
+  width?: number; // Display width in pixels, when the container reports it
+  height?: number; // Display height in pixels, when the container reports it
+  bitrate?: number; // Bits per second, when the container reports it
 }
 
 /**
@@ -253,6 +326,233 @@ export interface CameraOverlayResult {
   cancelled: boolean;
 }
 
+export interface BurstOptions {
+  /**
+   * Number of capture requests kept waiting on the camera at once.
+   * @default 2
+   */
+  maxInFlight?: number;
+  /**
+   * Minimum time between two shots in milliseconds. 0 shoots as fast as the camera allows.
+   * @default 0
+   */
+  intervalMs?: number;
+  /**
+   * Upper bound on the capture rate. Combined with `intervalMs`, the slower of the two wins.
+   */
+  maxFps?: number;
+  /**
+   * Stop automatically after this many frames. 0 means until `stopBurst()`.
+   * @default 0
+   */
+  maxFrames?: number;
+}
+
+export interface BurstStats {
+  burstId: string;
+  /** Frames delivered by the camera */
+  frames: number;
+  /** Frames the camera failed to deliver or that failed processing */
+  failed: number;
+  /** Frames skipped because the processing queue was full (`processingBackpressure: 'reject'`) */
+  dropped: number;
+  durationMs: number;
+  /** Sustained capture rate between the first and last delivered frame */
+  fps: number;
+}
+
+/**
+ * Native `photoAdded` event emitted for every frame of a burst
+ */
+export interface BurstFrameEvent {
+  burstId: string;
+  /** Zero-based frame index within the burst */
+  index: number;
+  value: CameraImageData;
+}
+
+/**
+ * Native `gallerySaved` event emitted for every committed batch in `deferred` gallery mode
+ */
+export interface GallerySavedEvent {
+  items: {
+    /** Capture URI, as returned by `capture` or `photoAdded` */
+    uri: string;
+    /** MediaStore URI, absent if the photo could not be saved */
+    galleryUri?: string;
+  }[];
+}
+
+/**
+ * Latency of one capture pipeline stage, in milliseconds
+ */
+export interface CaptureStageMetrics {
+  count: number;
+  mean: number;
+  p50: number;
+  p95: number;
+  p99: number;
+  max: number;
+}
+
+export interface CaptureMetrics {
+  stages: {
+    /** takePicture request until the camera delivered the frame */
+    shutter: CaptureStageMetrics;
+    /** Orientation correction (with `captureOutput: 'memory'` also the file write and thumbnail decode) */
+    orientation: CaptureStageMetrics;
+    /** Gallery insert, only recorded when `enableSaving` is on */
+    gallery: CaptureStageMetrics;
+    thumbnail: CaptureStageMetrics;
+    /** Waiting for in-order delivery and resolving */
+    resolve: CaptureStageMetrics;
+    /** Request until resolved */
+    total: CaptureStageMetrics;
+  };
+  bitmapPool: {
+    hits: number;
+    misses: number;
+    pooledBytes: number;
+  };
+}
+
+/**
+ * Integrity checksum computed while the upload streams, so the file is read once.
+ *
+ * Where it is sent:
+ * - multipart POST: a trailing form field (`formField`, default `checksum`), or `header` if only that is set
+ * - PUT: `header`, default `Content-MD5` for md5 (the file is hashed before sending)
+ * - chunked 'content-range': `header` on the last chunk, default `Content-MD5` for md5
+ * - chunked 'azure-block': `header` on the block list commit, default `x-ms-blob-content-md5` for md5
+ * The value is also returned as `checksum` in the upload status.
+ */
+export interface UploadChecksumOptions {
+  /** @default 'md5' */
+  algorithm?: 'md5' | 'sha256' | 'crc32c';
+  /** Header that carries the checksum */
+  header?: string;
+  /** Multipart form field that carries the checksum, sent after the file */
+  formField?: string;
+  /** @default 'base64' */
+  encoding?: 'base64' | 'hex';
+}
+
+/**
+ * Resize/recompress applied on the device before an upload. EXIF is kept,
+ * with the orientation applied to the pixels.
+ */
+export interface UploadResizeOptions {
+  /** Maximum long edge in pixels; smaller images keep their size */
+  maxDimension?: number;
+  /**
+   * Encoding quality (0-100). With `targetBytes` this is the upper bound of the search.
+   * @default 90
+   */
+  quality?: number;
+  /** @default 'jpeg' */
+  format?: 'jpeg' | 'webp';
+  /** Byte budget; the highest quality (down to 30) that fits is used */
+  targetBytes?: number;
+}
+
+/**
+ * Options of a single background upload. iOS only reads `imageUri`, `uploadEndpoint`,
+ * `headers`, `formData`, `method` and `deleteAfterUpload`; every other option is
+ * Android only.
+ */
+export interface UploadOptions {
+  imageUri: string;
+  uploadEndpoint: string;
+  headers: Record<string, string>;
+  formData?: Record<string, string>;
+  method?: 'POST' | 'PUT';
+  deleteAfterUpload?: boolean; // Default: true
+  /**
+   * Maximum concurrent uploads to the endpoint's host, shared by all queued jobs.
+   * Uploads reuse pooled connections (HTTP/2 where the server supports it).
+   * @default 4
+   */
+  maxConnectionsPerHost?: number;
+  /**
+   * Upload in chunks of this many bytes (minimum 256 KB). Each acknowledged chunk is
+   * checkpointed, so an interrupted upload resumes instead of starting over.
+   * Chunked uploads always use PUT; `method` and `formData` are ignored.
+   * @default 0 (single request)
+   */
+  chunkSize?: number;
+  /**
+   * How chunks are sent when `chunkSize` is set.
+   * - 'content-range': PUT with `Content-Range: bytes start-end/total`; the server answers 308 until the last chunk
+   * - 'azure-block': Azure block blob Put Block per chunk, then Put Block List
+   * @default 'content-range'
+   */
+  chunkProtocol?: 'content-range' | 'azure-block';
+  /** Resize/recompress before uploading; the original file is left untouched */
+  resize?: UploadResizeOptions;
+  /**
+   * Attempts allowed before the job fails, including the first. Only throttling (429),
+   * server errors (5xx), timeouts and connection failures are retried, with exponential
+   * backoff, jitter and the server's `Retry-After`; other 4xx responses fail at once.
+   * @default 5
+   */
+  maxAttempts?: number;
+  /**
+   * Scheduling class.
+   * - 'high': any network, and not held back by the global concurrency limit
+   * - 'normal': any network
+   * - 'bulk': waits for an unmetered network until `bulkDeadline` has passed
+   * @default 'bulk' for files over 5 MB, 'normal' otherwise
+   */
+  priority?: 'high' | 'normal' | 'bulk';
+  /**
+   * Milliseconds a bulk upload waits for an unmetered network before it may use any
+   * network; 0 waits indefinitely.
+   * @default 86400000 (24 hours)
+   */
+  bulkDeadline?: number;
+  /** Compute and send a checksum of the uploaded bytes */
+  checksum?: UploadChecksumOptions;
+  /**
+   * Skip the upload if the same content (by SHA-256) is already queued, uploading or
+   * uploaded to the same endpoint, and return that job's id with `duplicate: true`.
+   * Hashes are cached by path, size and modification time.
+   * @default false
+   */
+  dedupe?: boolean;
+}
+
+/**
+ * iOS only reports `status` and `error`; the other fields are Android only.
+ */
+export interface UploadStatus {
+  /** Set in lists and events */
+  jobId?: string;
+  status: 'pending' | 'uploading' | 'completed' | 'failed';
+  error?: string;
+  /** Set while uploading, once the upload has reported progress */
+  bytesSent?: number;
+  totalBytes?: number;
+  bytesPerSecond?: number;
+  /** Set when completed: size of the original file and of what was sent */
+  originalBytes?: number;
+  transmittedBytes?: number;
+  /** Attempts made so far, when known */
+  attempts?: number;
+  /** Set when completed with `checksum` enabled: checksum of the bytes sent */
+  checksum?: string;
+}
+
+/**
+ * Native `uploadProgress` event, emitted while a background upload is running. Android only.
+ */
+export interface UploadProgressEvent {
+  jobId: string;
+  bytesSent: number;
+  totalBytes: number;
+  /** Throughput since the previous event */
+  bytesPerSecond: number;
+}
+
 /**
  * Permission status for the camera multi-capture plugin
  */
@@ -269,9 +569,55 @@ export interface CameraMultiCapturePlugin {
 
   /**
    * Captures a single frame.
+   * Rejects with code `BUSY` when the processing queue is full and
+   * `processingBackpressure` is `reject`.
    */
   capture(): Promise<{ value: CameraImageData }>;
 
+  /**
+   * Starts continuous capture, keeping several capture requests in flight.
+   * Every processed frame is delivered as a `photoAdded` event, in capture order.
+   * Android only; rejects with code `UNIMPLEMENTED` on iOS.
+   */
+  startBurst(options?: BurstOptions): Promise<{ burstId: string }>;
+
+  /**
+   * Stops the running burst. Frames still being processed keep arriving as
+   * `photoAdded` events; `burstStopped` fires once the camera is done.
+   * Android only; rejects with code `UNIMPLEMENTED` on iOS.
+   */
+  stopBurst(): Promise<BurstStats>;
+
+  /**
+   * Listens for frames captured during a burst.
+   * Android only; never emitted on iOS.
+   */
+  addListener(eventName: 'photoAdded', listenerFunc: (event: BurstFrameEvent) => void): Promise<PluginListenerHandle>;
+
+  /**
+   * Listens for the end of a burst, whether stopped or finished after `maxFrames`.
+   * Android only; never emitted on iOS.
+   */
+  addListener(eventName: 'burstStopped', listenerFunc: (stats: BurstStats) => void): Promise<PluginListenerHandle>;
+
+  /**
+   * Listens for photos committed to the gallery when `gallerySaveMode` is `deferred`.
+   * Android only; never emitted on iOS.
+   */
+  addListener(eventName: 'gallerySaved', listenerFunc: (event: GallerySavedEvent) => void): Promise<PluginListenerHandle>;
+
+  /**
+   * Returns per-stage latency histograms for all captures since the last reset.
+   * Android only; rejects with code `UNIMPLEMENTED` on iOS.
+   */
+  getCaptureMetrics(): Promise<CaptureMetrics>;
+
+  /**
+   * Clears the capture latency histograms.
+   * Android only; rejects with code `UNIMPLEMENTED` on iOS.
+   */
+  resetCaptureMetrics(): Promise<void>;
+
   /**
    * Starts recording video.
    */
@@ -363,24 +709,66 @@ export interface CameraMultiCapturePlugin {
   requestPermissions(): Promise<PermissionStatus>;
 
   /**
-   * Generic background upload - works with any backend
+   * Generic background upload - works with any backend.
+   * `duplicate` is only ever set on Android, where `dedupe` is supported.
    */
-  queueBackgroundUpload(options: {
-    imageUri: string;
-    uploadEndpoint: string;
-    headers: Record<string, string>;
-    formData?: Record<string, string>;
-    method?: 'POST' | 'PUT';
-    deleteAfterUpload?: boolean; // Default: true
-  }): Promise<{ jobId: string }>;
+  queueBackgroundUpload(options: UploadOptions): Promise<{ jobId: string; duplicate?: boolean }>;
+
+  /**
+   * Enqueue many uploads as one scheduled unit (a single WorkManager transaction).
+   * Items upload in parallel, at most `maxParallel` of the batch at a time, and a
+   * failed item doesn't affect the others. Job ids are in item order and work
+   * with `getUploadStatus` like those from `queueBackgroundUpload`. Items with
+   * `dedupe` that match an existing job, or an earlier item, get that job's id.
+   * Android only; rejects with code `UNIMPLEMENTED` on iOS.
+   */
+  queueBatchUpload(options: {
+    items: UploadOptions[];
+    /**
+     * Concurrent uploads of this batch. Other batches and uploads are not affected;
+     * each item's `maxConnectionsPerHost` still applies.
+     * @default 4
+     */
+    maxParallel?: number;
+  }): Promise<{ batchId: string; jobIds: string[] }>;
 
   /**
    * Check upload job status
    */
-  getUploadStatus(options: { jobId: string }): Promise<{
-    status: 'pending' | 'uploading' | 'completed' | 'failed';
-    error?: string;
-  }>;
+  getUploadStatus(options: { jobId: string }): Promise<UploadStatus>;
+
+  /**
+   * Statuses of several jobs. Queued and running jobs are answered from an in-memory
+   * cache; finished ones come from the plugin's job store. Unknown jobs are left out.
+   * Android only; rejects with code `UNIMPLEMENTED` on iOS.
+   */
+  getUploadStatuses(options: { jobIds: string[] }): Promise<{ uploads: UploadStatus[] }>;
+
+  /**
+   * Starts emitting `uploadStatusChanged` events. Resolves with the status of every queued or running job.
+   * Android only; rejects with code `UNIMPLEMENTED` on iOS.
+   */
+  watchUploads(): Promise<{ uploads: UploadStatus[] }>;
+
+  /**
+   * Stops emitting `uploadStatusChanged` events.
+   * Android only; rejects with code `UNIMPLEMENTED` on iOS.
+   */
+  unwatchUploads(): Promise<void>;
+
+  /**
+   * Listens for upload status changes while watching. Changes are coalesced
+   * and delivered at most every 200 ms.
+   * Android only; never emitted on iOS.
+   */
+  addListener(eventName: 'uploadStatusChanged', listenerFunc: (event: { uploads: UploadStatus[] }) => void): Promise<PluginListenerHandle>;
+
+  /**
+   * Listens for background upload progress. Events are throttled to at most
+   * one per 250 ms and per 1% of the upload.
+   * Android only; never emitted on iOS.
+   */
+  addListener(eventName: 'uploadProgress', listenerFunc: (event: UploadProgressEvent) => void): Promise<PluginListenerHandle>;
 
   /**
    * Returns the current plugin version string.
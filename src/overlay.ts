@@ -39,6 +39,16 @@ export const initialize = (options: CameraOverlayOptions): Promise<CameraOverlay
     enableEditing: options.enableEditing,
     enableSaving: options.enableSaving,
     galleryAlbumName: options.galleryAlbumName,
+    gallerySaveMode: options.gallerySaveMode,
+    galleryBatchSize: options.galleryBatchSize,
+    galleryFlushInterval: options.galleryFlushInterval,
+    processingWorkers: options.processingWorkers,
+    processingQueueSize: options.processingQueueSize,
+    processingBackpressure: options.processingBackpressure,
+    processingBlockTimeoutMs: options.processingBlockTimeoutMs,
+    orientationCorrection: options.orientationCorrection,
+    captureOutput: options.captureOutput,
+    thumbnailFormat: options.thumbnailFormat,
   };
   
   const overlayManager = new OverlayManager(plugin, uiOptions);
@@ -86,4 +86,14 @@ export interface CameraOverlayUIOptions {
   enableEditing?: boolean | { markerJsLicenseKey?: string };
   enableSaving?: boolean;
   galleryAlbumName?: string;
+  gallerySaveMode?: 'immediate' | 'deferred';
+  galleryBatchSize?: number;
+  galleryFlushInterval?: number;
+  processingWorkers?: number;
+  processingQueueSize?: number;
+  processingBackpressure?: 'block' | 'reject';
+  processingBlockTimeoutMs?: number;
+  orientationCorrection?: 'lossless' | 'pixel';
+  captureOutput?: 'file' | 'memory';
+  thumbnailFormat?: 'base64' | 'file';
 }
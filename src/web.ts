@@ -1,5 +1,5 @@
 import { WebPlugin } from '@capacitor/core';
-import type { CameraImageData, CameraMultiCapturePlugin, CameraOverlayOptions, CameraOverlayResult, CameraPreviewRect, CameraVideoData, PermissionStatus } from './definitions';
+import type { BurstOptions, BurstStats, CameraImageData, CaptureMetrics, CameraMultiCapturePlugin, CameraOverlayOptions, CameraOverlayResult, CameraPreviewRect, CameraVideoData, PermissionStatus, UploadOptions, UploadStatus } from './definitions';
 import { PLUGIN_VERSION } from './version';
 
 export class CameraMultiCaptureWeb extends WebPlugin implements CameraMultiCapturePlugin {
@@ -8,6 +8,29 @@ export class CameraMultiCaptureWeb extends WebPlugin implements CameraMultiCaptu
     return { value: { uri: '', thumbnail: '', webPath: '' } };
   }
 
+  async startBurst(_options?: BurstOptions): Promise<{ burstId: string }> {
+    console.warn('[CameraMultiCapture] startBurst() not available on web.');
+    return { burstId: '' };
+  }
+
+  async stopBurst(): Promise<BurstStats> {
+    console.warn('[CameraMultiCapture] stopBurst() not available on web.');
+    return { burstId: '', frames: 0, failed: 0, dropped: 0, durationMs: 0, fps: 0 };
+  }
+
+  async getCaptureMetrics(): Promise<CaptureMetrics> {
+    console.warn('[CameraMultiCapture] getCaptureMetrics() not available on web.');
+    const empty = { count: 0, mean: 0, p50: 0, p95: 0, p99: 0, max: 0 };
+    return {
+      stages: { shutter: empty, orientation: empty, gallery: empty, thumbnail: empty, resolve: empty, total: empty },
+      bitmapPool: { hits: 0, misses: 0, pooledBytes: 0 },
+    };
+  }
+
+  async resetCaptureMetrics(): Promise<void> {
+    console.warn('[CameraMultiCapture] resetCaptureMetrics() not available on web.');
+  }
+
   async stop(): Promise<void> {
     console.warn('[CameraMultiCapture] stop() not available on web.');
   }
@@ -135,26 +158,38 @@ export class CameraMultiCaptureWeb extends WebPlugin implements CameraMultiCaptu
     }
   }
 
-  async queueBackgroundUpload(_options: {
-    imageUri: string;
-    uploadEndpoint: string;
-    headers: Record<string, string>;
-    formData?: Record<string, string>;
-    method?: 'POST' | 'PUT';
-    deleteAfterUpload?: boolean;
-  }): Promise<{ jobId: string }> {
+  async queueBackgroundUpload(_options: UploadOptions): Promise<{ jobId: string }> {
     console.warn('[CameraMultiCapture] queueBackgroundUpload() not available on web.');
     return { jobId: 'web-not-supported' };
   }
 
-  async getUploadStatus(_options: { jobId: string }): Promise<{
-    status: 'pending' | 'uploading' | 'completed' | 'failed';
-    error?: string;
-  }> {
+  async queueBatchUpload(_options: {
+    items: UploadOptions[];
+    maxParallel?: number;
+  }): Promise<{ batchId: string; jobIds: string[] }> {
+    console.warn('[CameraMultiCapture] queueBatchUpload() not available on web.');
+    return { batchId: 'web-not-supported', jobIds: [] };
+  }
+
+  async getUploadStatus(_options: { jobId: string }): Promise<UploadStatus> {
     console.warn('[CameraMultiCapture] getUploadStatus() not available on web.');
     return { status: 'failed', error: 'Web platform not supported' };
   }
 
+  async getUploadStatuses(_options: { jobIds: string[] }): Promise<{ uploads: UploadStatus[] }> {
+    console.warn('[CameraMultiCapture] getUploadStatuses() not available on web.');
+    return { uploads: [] };
+  }
+
+  async watchUploads(): Promise<{ uploads: UploadStatus[] }> {
+    console.warn('[CameraMultiCapture] watchUploads() not available on web.');
+    return { uploads: [] };
+  }
+
+  async unwatchUploads(): Promise<void> {
+    console.warn('[CameraMultiCapture] unwatchUploads() not available on web.');
+  }
+
   async getVersion(): Promise<{ version: string }> {
     return { version: PLUGIN_VERSION };
   }